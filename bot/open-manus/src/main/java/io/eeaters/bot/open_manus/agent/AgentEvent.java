@@ -0,0 +1,39 @@
+package io.eeaters.bot.open_manus.agent;
+
+/**
+ * 流式执行过程中推送给调用方的事件
+ *
+ * @param type    事件类型
+ * @param name    工具名，仅工具事件有值
+ * @param content 模型输出片段、工具参数/输出/结果、最终回答或错误信息
+ */
+public record AgentEvent(Type type, String name, String content) {
+
+    public enum Type {
+        TOKEN, TOOL_START, TOOL_OUTPUT, TOOL_END, DONE, ERROR
+    }
+
+    public static AgentEvent token(String text) {
+        return new AgentEvent(Type.TOKEN, null, text);
+    }
+
+    public static AgentEvent toolStart(String tool, String input) {
+        return new AgentEvent(Type.TOOL_START, tool, input);
+    }
+
+    public static AgentEvent toolOutput(String tool, String chunk) {
+        return new AgentEvent(Type.TOOL_OUTPUT, tool, chunk);
+    }
+
+    public static AgentEvent toolEnd(String tool, String result) {
+        return new AgentEvent(Type.TOOL_END, tool, result);
+    }
+
+    public static AgentEvent done(String answer) {
+        return new AgentEvent(Type.DONE, null, answer);
+    }
+
+    public static AgentEvent error(String message) {
+        return new AgentEvent(Type.ERROR, null, message);
+    }
+}
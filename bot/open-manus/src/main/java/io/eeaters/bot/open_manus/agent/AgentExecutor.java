@@ -0,0 +1,121 @@
+package io.eeaters.bot.open_manus.agent;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 执行 agent 任务的专用线程池。每个任务一个虚拟线程，同时执行的任务数由 max-concurrent 限制，
+ * 其余任务排队等待；排队数超过 max-queued 时直接拒绝，避免模型调用堆积拖垮进程。
+ */
+@Component
+public class AgentExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentExecutor.class);
+
+    private final ExecutorService executor;
+
+    private final Semaphore permits;
+
+    private final int maxConcurrent;
+
+    private final int maxQueued;
+
+    /**
+     * 已接受但未结束的任务数（排队 + 执行中），用于准入判断
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AgentExecutor(@Value("${openmanus.executor.max-concurrent:4}") int maxConcurrent,
+                         @Value("${openmanus.executor.max-queued:32}") int maxQueued) {
+        if (maxConcurrent <= 0 || maxQueued < 0) {
+            throw new IllegalArgumentException("Invalid executor limits: max-concurrent=" + maxConcurrent
+                    + ", max-queued=" + maxQueued);
+        }
+        ThreadFactory threadFactory = Thread.ofVirtual().name("manus-agent-", 0).factory();
+        this.executor = Executors.newThreadPerTaskExecutor(threadFactory);
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * 提交任务。队列已满时返回以 RejectedExecutionException 失败的 future，不会阻塞调用方。
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        if (inFlight.incrementAndGet() > maxConcurrent + maxQueued) {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            logger.warn("Agent task rejected, queue depth: {}", queued.get());
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "任务队列已满，请稍后重试（排队 " + maxQueued + "，并发 " + maxConcurrent + "）"));
+        }
+        queued.incrementAndGet();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    queued.decrementAndGet();
+                    inFlight.decrementAndGet();
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Agent executor is shutting down", e);
+                }
+                queued.decrementAndGet();
+                running.incrementAndGet();
+                try {
+                    return task.get();
+                } finally {
+                    running.decrementAndGet();
+                    completed.incrementAndGet();
+                    permits.release();
+                    inFlight.decrementAndGet();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(queued.get(), running.get(), completed.get(), rejected.get(), maxConcurrent, maxQueued);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("Agent tasks still running after shutdown, running: {}", running.get());
+        }
+    }
+
+    /**
+     * 队列深度和执行情况的快照
+     */
+    public record Stats(int queued, int running, long completed, long rejected, int maxConcurrent, int maxQueued) {
+    }
+}
@@ -0,0 +1,47 @@
+package io.eeaters.bot.open_manus.agent;
+
+import java.util.List;
+
+/**
+ * 一次 agent 执行的结果和逐步记录
+ *
+ * @param answer       最终回答；预算耗尽时为最后一次模型输出加上停止原因
+ * @param stopReason   停止原因
+ * @param steps        每一步的耗时和 token 用量
+ * @param cacheHits    只读工具结果缓存命中次数
+ * @param cacheMisses  只读工具实际执行次数
+ * @param elapsedMillis 总耗时
+ */
+public record AgentRun(String answer, StopReason stopReason, List<Step> steps, int cacheHits, int cacheMisses,
+                       long elapsedMillis) {
+
+    public enum StopReason {
+        /** 模型不再调用工具，给出了回答 */
+        COMPLETED,
+        /** 连续多步以相同参数调用相同工具，判定为原地打转 */
+        STALLED,
+        MAX_STEPS,
+        TOKEN_BUDGET,
+        TIMEOUT
+    }
+
+    /**
+     * @param index            从 1 开始的步序号
+     * @param modelMillis      模型调用耗时
+     * @param toolMillis       本步工具执行耗时
+     * @param tools            本步调用的工具名
+     * @param promptTokens     本步输入 token
+     * @param completionTokens 本步输出 token
+     */
+    public record Step(int index, long modelMillis, long toolMillis, List<String> tools, int promptTokens,
+                       int completionTokens) {
+    }
+
+    public int totalTokens() {
+        int total = 0;
+        for (Step step : steps) {
+            total += step.promptTokens() + step.completionTokens();
+        }
+        return total;
+    }
+}
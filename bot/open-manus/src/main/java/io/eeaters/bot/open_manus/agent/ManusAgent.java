@@ -1,31 +1,74 @@
 package io.eeaters.bot.open_manus.agent;
 
+import io.eeaters.bot.open_manus.process.ShellSessionPool;
 import io.eeaters.bot.open_manus.tool.CodeEditorTools;
 import io.eeaters.bot.open_manus.tool.FileOperationTools;
+import io.eeaters.bot.open_manus.tool.JobTools;
+import io.eeaters.bot.open_manus.tool.SearchTools;
 import io.eeaters.bot.open_manus.tool.SystemTools;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 public class ManusAgent {
 
     private static final Logger logger = LoggerFactory.getLogger(ManusAgent.class);
 
-    @Autowired
-    private ChatClient.Builder chatClientBuilder;
-
     @Value("${openmanus.workspace:.}")
     private String workspace;
 
     @Value("${openmanus.max-steps:20}")
     private int maxSteps;
 
+    @Value("${openmanus.max-tokens:200000}")
+    private int maxTokens;
+
+    @Value("${openmanus.timeout:10m}")
+    private Duration timeout;
+
+    // 连续多少步调用完全相同的工具和参数视为原地打转
+    private static final int STALL_STEPS = 3;
+
+    @Autowired
+    private ChatModel chatModel;
 
     @Autowired
     FileOperationTools fileOperationTools;
@@ -36,6 +79,42 @@ public class ManusAgent {
     @Autowired
     SystemTools systemTools;
 
+    @Autowired
+    JobTools jobTools;
+
+    @Autowired
+    SearchTools searchTools;
+
+    @Autowired
+    AgentExecutor agentExecutor;
+
+    @Autowired
+    ShellSessionPool shellSessionPool;
+
+    // 系统提示词和工具定义在启动时固定，构建一次后所有请求共用
+    private ToolCallback[] toolCallbacks;
+
+    private ToolCallRunner toolCallRunner;
+
+    private String systemPrompt;
+
+    // 非流式的模型调用在这里执行，调用线程按截止时间等待，超时后中断
+    private final ExecutorService modelCalls = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PostConstruct
+    public void init() {
+        this.toolCallbacks = ObservedToolCallback.wrap(
+                ToolCallbacks.from(fileOperationTools, codeEditorTools, systemTools, jobTools, searchTools));
+        this.toolCallRunner = new ToolCallRunner(toolCallbacks, fileOperationTools, codeEditorTools, systemTools,
+                jobTools, searchTools);
+        this.systemPrompt = buildSystemPrompt();
+        logger.info("Agent initialized with {} tools", toolCallbacks.length);
+    }
+
+    @PreDestroy
+    public void close() {
+        modelCalls.shutdownNow();
+    }
 
     private String buildSystemPrompt() {
         return """
@@ -57,22 +136,33 @@ public class ManusAgent {
             7. strReplace - 精确的字符串替换（需要完全匹配）
             8. insertText - 在指定行后插入内容
             9. undoEdit - 撤销最后一次编辑操作
+            10. redoEdit - 重做最近一次被撤销的编辑
 
             系统工具:
-            10. pythonExecute - 执行 Python 代码
-            11. executeBash - 执行bash命令（支持文件操作、进程管理等）
-            12. executeDocker - 执行Docker命令（容器管理、镜像操作等）
-            13. manageProcess - 管理系统进程（查看、终止进程等）
-            14. networkDiagnostic - 网络诊断工具（ping、curl、nslookup等）
+            11. pythonExecute - 执行 Python 代码
+            12. executeBash - 执行bash命令（支持文件操作、进程管理等）
+            13. executeDocker - 执行Docker命令（容器管理、镜像操作等）
+            14. manageProcess - 管理系统进程（按条件查看进程、终止进程、查看端口占用）
+            15. networkDiagnostic - 网络诊断工具（ping、curl、nslookup、telnet，可并发探测多个目标）
+
+            后台任务工具:
+            16. listJobs - 列出后台任务的状态、退出码和资源占用
+            17. tailJob - 查看后台任务日志的最后若干行
+            18. readJobLog - 按偏移增量读取后台任务日志
+            19. killJob - 终止后台任务
+
+            代码搜索工具:
+            20. searchCode - 在工作空间中按字面量或正则搜索代码，可按文件 glob 过滤，返回带行号的匹配行
 
             指导原则:
             - 仔细分析用户的请求，选择合适的工具来完成任务
             - 如果任务复杂，可以分解为多个步骤
-            - 使用代码编辑工具进行精确的文件修改，支持撤销操作
+            - 使用代码编辑工具进行精确的文件修改，支持多级撤销和重做
             - 执行系统命令前考虑安全性，避免危险操作
-            - 长时间运行的命令应使用后台执行模式
+            - 长时间运行的命令应使用后台执行模式，启动后用 tailJob 查看输出，不再需要时用 killJob 终止
             - 对于文件修改，优先使用strReplace而不是重写整个文件
             - 在不确定文件内容时，先用viewFile查看
+            - 查找代码位置时使用searchCode，不要用bash执行grep或find
 
             限制:
             - 最大执行步数: %d
@@ -82,24 +172,14 @@ public class ManusAgent {
     }
 
     public CompletableFuture<String> run(String userPrompt) {
-        return CompletableFuture.supplyAsync(() -> {
+        return agentExecutor.submit(() -> {
             try {
                 logger.info("Executing task: {}", userPrompt);
-
-                String response = chatClientBuilder
-                        .defaultSystem(buildSystemPrompt())
-                        .defaultTools(
-                                fileOperationTools,
-                                codeEditorTools,
-                                systemTools
-                        ).build()
-                        .prompt()
-                        .user(userPrompt)
-                        .call()
-                        .content();
-
-                logger.info("Task completed successfully");
-                return response;
+                AgentRun run = execute(userPrompt, null);
+                logger.info("Task finished: {}, {} steps, {} tokens, tool cache {}/{} hits, {} ms", run.stopReason(),
+                        run.steps().size(), run.totalTokens(), run.cacheHits(), run.cacheHits() + run.cacheMisses(),
+                        run.elapsedMillis());
+                return run.answer();
 
             } catch (Exception e) {
                 logger.error("Error executing task", e);
@@ -108,4 +188,256 @@ public class ManusAgent {
         });
     }
 
+    /**
+     * 逐步驱动工具调用：每一步调用一次模型，模型请求工具时由这里执行并把结果追加到对话中，
+     * 同一轮中互不影响的只读调用并发执行。
+     * 步数、累计 token 和总耗时任一超出预算即停止；模型不再调用工具或原地打转时提前结束。
+     * 模型和工具调用只等到截止时间，超时的调用被取消，不会越过总耗时预算。
+     * 有监听器时每一步流式调用模型，输出片段以 TOKEN 事件推送。
+     *
+     * @param listener 模型输出和工具事件的监听器，可为 null
+     */
+    public AgentRun execute(String userPrompt, Consumer<AgentEvent> listener) {
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        ToolCallingChatOptions options = ToolCallingChatOptions.builder()
+                .toolCallbacks(toolCallbacks)
+                .internalToolExecutionEnabled(false)
+                .build();
+        String shellSession = UUID.randomUUID().toString();
+        Map<String, Object> context = new HashMap<>();
+        context.put(ObservedToolCallback.SHELL_SESSION, shellSession);
+        if (listener != null) {
+            context.put(ObservedToolCallback.LISTENER, listener);
+        }
+        ToolContext toolContext = new ToolContext(context);
+        try {
+            return loop(userPrompt, options, toolContext, listener, start, deadline);
+        } finally {
+            shellSessionPool.release(shellSession);
+        }
+    }
+
+    private AgentRun loop(String userPrompt, ToolCallingChatOptions options, ToolContext toolContext,
+                          Consumer<AgentEvent> listener, long start, long deadline) {
+
+        ToolResultCache cache = new ToolResultCache();
+
+        List<Message> conversation = new ArrayList<>();
+        conversation.add(new SystemMessage(systemPrompt));
+        conversation.add(new UserMessage(userPrompt));
+
+        List<AgentRun.Step> steps = new ArrayList<>();
+        int tokens = 0;
+        String lastText = null;
+        List<AssistantMessage.ToolCall> lastCalls = null;
+        int repeated = 0;
+        AgentRun.StopReason stopReason = AgentRun.StopReason.MAX_STEPS;
+
+        for (int index = 1; index <= maxSteps; index++) {
+            if (System.nanoTime() > deadline) {
+                stopReason = AgentRun.StopReason.TIMEOUT;
+                break;
+            }
+            if (tokens >= maxTokens) {
+                stopReason = AgentRun.StopReason.TOKEN_BUDGET;
+                break;
+            }
+
+            long modelStart = System.nanoTime();
+            Prompt prompt = new Prompt(conversation, options);
+            Turn turn;
+            try {
+                turn = listener == null ? call(prompt, deadline) : stream(prompt, listener, deadline);
+            } catch (TimeoutException e) {
+                stopReason = AgentRun.StopReason.TIMEOUT;
+                break;
+            }
+            long modelMillis = (System.nanoTime() - modelStart) / 1_000_000;
+
+            AssistantMessage output = turn.output();
+            lastText = output.getText();
+            int promptTokens = turn.promptTokens();
+            int completionTokens = turn.completionTokens();
+            tokens += promptTokens + completionTokens;
+
+            if (!output.hasToolCalls()) {
+                steps.add(logStep(new AgentRun.Step(index, modelMillis, 0, List.of(), promptTokens, completionTokens)));
+                stopReason = AgentRun.StopReason.COMPLETED;
+                break;
+            }
+
+            List<AssistantMessage.ToolCall> calls = output.getToolCalls();
+            repeated = sameCalls(calls, lastCalls) ? repeated + 1 : 1;
+            lastCalls = calls;
+
+            long toolStart = System.nanoTime();
+            ToolResponseMessage toolResponses = toolCallRunner.run(calls, toolContext, cache, deadline);
+            conversation.add(output);
+            conversation.add(toolResponses);
+            long toolMillis = (System.nanoTime() - toolStart) / 1_000_000;
+            steps.add(logStep(new AgentRun.Step(index, modelMillis, toolMillis,
+                    calls.stream().map(AssistantMessage.ToolCall::name).toList(), promptTokens, completionTokens)));
+
+            if (toolCallRunner.returnDirect(calls)) {
+                lastText = toolResponses.getResponses().stream()
+                        .map(ToolResponseMessage.ToolResponse::responseData)
+                        .collect(Collectors.joining("\n"));
+                stopReason = AgentRun.StopReason.COMPLETED;
+                break;
+            }
+            if (repeated >= STALL_STEPS) {
+                stopReason = AgentRun.StopReason.STALLED;
+                break;
+            }
+        }
+
+        String answer = stopReason == AgentRun.StopReason.COMPLETED ? lastText : budgetExhausted(stopReason, lastText);
+        return new AgentRun(answer, stopReason, List.copyOf(steps), cache.getHits(), cache.getMisses(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private Turn call(Prompt prompt, long deadline) throws TimeoutException {
+        Future<ChatResponse> future = modelCalls.submit(() -> chatModel.call(prompt));
+        ChatResponse response;
+        try {
+            response = future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while calling model", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+        }
+        return Turn.of(response.getResult().getOutput(), response.getMetadata().getUsage());
+    }
+
+    /**
+     * 流式调用模型，文本片段到达即推送；工具调用由模型实现在流中合并为完整的调用，用量取最后一次给出的值。
+     * 到截止时间仍未结束时取消订阅，断开模型请求
+     */
+    private Turn stream(Prompt prompt, Consumer<AgentEvent> listener, long deadline) throws TimeoutException {
+        StringBuilder text = new StringBuilder();
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        Usage[] usage = new Usage[1];
+        try {
+            chatModel.stream(prompt)
+                    .doOnNext(chunk -> {
+                        if (chunk.getResult() != null && chunk.getResult().getOutput() != null) {
+                            AssistantMessage output = chunk.getResult().getOutput();
+                            if (output.getText() != null && !output.getText().isEmpty()) {
+                                text.append(output.getText());
+                                listener.accept(AgentEvent.token(output.getText()));
+                            }
+                            toolCalls.addAll(output.getToolCalls());
+                        }
+                        Usage chunkUsage = chunk.getMetadata().getUsage();
+                        if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+                            usage[0] = chunkUsage;
+                        }
+                    })
+                    .blockLast(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+        } catch (IllegalStateException e) {
+            // blockLast 超时后取消订阅，抛出以 TimeoutException 为 cause 的 IllegalStateException
+            if (e.getCause() instanceof TimeoutException timeout && System.nanoTime() >= deadline) {
+                throw timeout;
+            }
+            throw e;
+        }
+        AssistantMessage output = AssistantMessage.builder().content(text.toString()).toolCalls(toolCalls).build();
+        return Turn.of(output, usage[0]);
+    }
+
+    /**
+     * 模型一步的输出和 token 用量
+     */
+    private record Turn(AssistantMessage output, int promptTokens, int completionTokens) {
+
+        static Turn of(AssistantMessage output, Usage usage) {
+            return new Turn(output,
+                    usage == null || usage.getPromptTokens() == null ? 0 : usage.getPromptTokens(),
+                    usage == null || usage.getCompletionTokens() == null ? 0 : usage.getCompletionTokens());
+        }
+    }
+
+    private AgentRun.Step logStep(AgentRun.Step step) {
+        logger.debug("Step {}: model {} ms, tools {} ms {}, tokens {}/{}", step.index(), step.modelMillis(),
+                step.toolMillis(), step.tools(), step.promptTokens(), step.completionTokens());
+        return step;
+    }
+
+    private static boolean sameCalls(List<AssistantMessage.ToolCall> calls, List<AssistantMessage.ToolCall> previous) {
+        if (previous == null || calls.size() != previous.size()) {
+            return false;
+        }
+        for (int i = 0; i < calls.size(); i++) {
+            if (!calls.get(i).name().equals(previous.get(i).name())
+                    || !calls.get(i).arguments().equals(previous.get(i).arguments())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String budgetExhausted(AgentRun.StopReason reason, String lastText) {
+        String note = switch (reason) {
+            case MAX_STEPS -> "已达到最大执行步数 " + maxSteps;
+            case TOKEN_BUDGET -> "已达到 token 预算 " + maxTokens;
+            case TIMEOUT -> "执行超时 " + timeout;
+            case STALLED -> "连续 " + STALL_STEPS + " 步重复相同的工具调用";
+            case COMPLETED -> "";
+        };
+        return lastText == null || lastText.isBlank()
+                ? "任务未完成：" + note
+                : lastText + "\n\n（任务未完成：" + note + "）";
+    }
+
+    /**
+     * 流式执行任务：与 {@link #run} 走同一个逐步循环和执行线程池，受同样的准入、预算和打转检测约束。
+     * 模型输出逐段以 TOKEN 事件推送，工具调用前后推送 TOOL_START/TOOL_END，
+     * 结束时推送包含最终回答的 DONE，出错或队列已满被拒绝时推送 ERROR。客户端断开后在下一次模型输出或工具调用前中止。
+     */
+    public Flux<AgentEvent> stream(String userPrompt) {
+        return Flux.create(sink -> {
+            logger.info("Streaming task: {}", userPrompt);
+            Consumer<AgentEvent> listener = event -> {
+                if (!sink.isCancelled()) {
+                    sink.next(event);
+                } else if (event.type() == AgentEvent.Type.TOKEN || event.type() == AgentEvent.Type.TOOL_START) {
+                    throw new CancellationException("客户端已断开");
+                }
+            };
+
+            agentExecutor.submit(() -> {
+                // 排队期间客户端已断开的任务不再调用模型
+                if (sink.isCancelled()) {
+                    throw new CancellationException("客户端已断开");
+                }
+                return execute(userPrompt, listener);
+            }).whenComplete((run, error) -> {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause == null) {
+                    logger.info("Streaming task finished: {}, {} steps, {} tokens, {} ms", run.stopReason(),
+                            run.steps().size(), run.totalTokens(), run.elapsedMillis());
+                    sink.next(AgentEvent.done(run.answer()));
+                } else if (cause instanceof CancellationException) {
+                    logger.info("Streaming task cancelled by client");
+                } else if (cause instanceof RejectedExecutionException) {
+                    sink.next(AgentEvent.error(cause.getMessage()));
+                } else {
+                    logger.error("Error streaming task", cause);
+                    sink.next(AgentEvent.error("执行任务时发生错误: " + cause.getMessage()));
+                }
+                sink.complete();
+            });
+        });
+    }
+
+    public AgentExecutor.Stats getExecutorStats() {
+        return agentExecutor.getStats();
+    }
+
 }
\ No newline at end of file
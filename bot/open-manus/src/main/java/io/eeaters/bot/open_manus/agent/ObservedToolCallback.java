@@ -0,0 +1,91 @@
+package io.eeaters.bot.open_manus.agent;
+
+import io.eeaters.bot.open_manus.process.ProcessRunner;
+import io.eeaters.bot.open_manus.process.ShellSessionPool;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.function.Consumer;
+
+/**
+ * 包装工具回调，在调用前后向本次请求的监听器发送工具事件，工具执行外部命令时实时转发输出。
+ * 工具回调在启动时构建一次，监听器和 shell 会话通过 ToolContext 按请求传入。
+ */
+class ObservedToolCallback implements ToolCallback {
+
+    static final String LISTENER = "agentEventListener";
+
+    static final String SHELL_SESSION = "agentShellSession";
+
+    // 推送给客户端的工具结果截断长度，完整结果仍交给模型
+    private static final int MAX_EVENT_CONTENT = 2000;
+
+    private final ToolCallback delegate;
+
+    ObservedToolCallback(ToolCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    static ToolCallback[] wrap(ToolCallback[] callbacks) {
+        ToolCallback[] wrapped = new ToolCallback[callbacks.length];
+        for (int i = 0; i < callbacks.length; i++) {
+            wrapped[i] = new ObservedToolCallback(callbacks[i]);
+        }
+        return wrapped;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String shellSession = toolContext == null ? null : (String) toolContext.getContext().get(SHELL_SESSION);
+        if (shellSession == null) {
+            return observe(toolInput, toolContext);
+        }
+        return ShellSessionPool.withSession(shellSession, () -> observe(toolInput, toolContext));
+    }
+
+    @SuppressWarnings("unchecked")
+    private String observe(String toolInput, ToolContext toolContext) {
+        Consumer<AgentEvent> listener = toolContext == null ? null
+                : (Consumer<AgentEvent>) toolContext.getContext().get(LISTENER);
+        if (listener == null) {
+            return delegate.call(toolInput, toolContext);
+        }
+
+        String name = getToolDefinition().name();
+        listener.accept(AgentEvent.toolStart(name, toolInput));
+        try {
+            String result = ProcessRunner.withOutputListener(
+                    chunk -> listener.accept(AgentEvent.toolOutput(name, chunk)),
+                    () -> delegate.call(toolInput, toolContext));
+            listener.accept(AgentEvent.toolEnd(name, truncate(result)));
+            return result;
+        } catch (RuntimeException e) {
+            listener.accept(AgentEvent.toolEnd(name, "工具执行失败: " + e.getMessage()));
+            throw e;
+        }
+    }
+
+    private static String truncate(String text) {
+        if (text == null || text.length() <= MAX_EVENT_CONTENT) {
+            return text;
+        }
+        return text.substring(0, MAX_EVENT_CONTENT) + "...";
+    }
+}
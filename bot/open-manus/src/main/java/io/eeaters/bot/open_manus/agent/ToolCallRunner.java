@@ -0,0 +1,275 @@
+package io.eeaters.bot.open_manus.agent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.eeaters.bot.open_manus.tool.ReadOnlyTool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.support.ToolUtils;
+import org.springframework.util.ClassUtils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * 执行模型在一轮中请求的全部工具调用。
+ * <p>
+ * 调用按顺序切分为若干批：没有 path 参数的写操作（如执行命令）会修改任意状态，单独成批，前后的调用不会越过它。
+ * 不带 path 的只读调用（如 searchCode、listJobs）可能读到任意文件，不与带 path 的写操作同批。
+ * 批内按 path 分道，路径相同或互为上下级目录的调用在同一道中按原顺序执行，其余各道和不带 path 的只读调用各自在虚拟线程上并发执行。
+ * 结果按调用顺序返回。带 path 的只读调用经由本次执行的 {@link ToolResultCache}，写操作执行前后清空缓存。
+ * 每批只等到任务的截止时间，超时后中断仍在执行的调用，未完成和未开始的调用返回超时错误。
+ */
+class ToolCallRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ToolCallRunner.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String TIMEOUT_RESULT = "错误：任务已超时，工具调用被取消";
+
+    private final Map<String, ToolCallback> callbacks = new HashMap<>();
+
+    private final Set<String> readOnlyTools;
+
+    ToolCallRunner(ToolCallback[] toolCallbacks, Object... toolObjects) {
+        for (ToolCallback callback : toolCallbacks) {
+            callbacks.put(callback.getToolDefinition().name(), callback);
+        }
+        this.readOnlyTools = readOnlyToolNames(toolObjects);
+        logger.info("Read-only tools: {}", readOnlyTools);
+    }
+
+    boolean isReadOnly(String toolName) {
+        return readOnlyTools.contains(toolName);
+    }
+
+    /**
+     * 执行全部调用，返回与调用一一对应的工具响应
+     *
+     * @param deadline 任务的截止时间，{@link System#nanoTime()} 的取值
+     */
+    ToolResponseMessage run(List<AssistantMessage.ToolCall> calls, ToolContext toolContext, ToolResultCache cache,
+                            long deadline) {
+        String[] results = new String[calls.size()];
+        List<Lane> lanes = new ArrayList<>();
+        boolean batchWrites = false;
+        boolean batchUnscopedReads = false;
+
+        for (int i = 0; i < calls.size(); i++) {
+            AssistantMessage.ToolCall call = calls.get(i);
+            String path = pathOf(call);
+            boolean readOnly = isReadOnly(call.name());
+            if (path == null && !readOnly) {
+                runLanes(calls, lanes, toolContext, cache, results, deadline);
+                lanes.clear();
+                batchWrites = false;
+                batchUnscopedReads = false;
+                runLanes(calls, List.of(new Lane(null, i)), toolContext, cache, results, deadline);
+                continue;
+            }
+            // 带 path 的写操作与不带 path 的只读调用不同批，先执行完已有的批
+            if ((path == null && batchWrites) || (!readOnly && batchUnscopedReads)) {
+                runLanes(calls, lanes, toolContext, cache, results, deadline);
+                lanes.clear();
+                batchWrites = false;
+                batchUnscopedReads = false;
+            }
+            if (path == null) {
+                lanes.add(new Lane(null, i));
+                batchUnscopedReads = true;
+            } else {
+                addToLane(lanes, Paths.get(path), i);
+                batchWrites |= !readOnly;
+            }
+        }
+        runLanes(calls, lanes, toolContext, cache, results, deadline);
+
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            String result = results[i] != null ? results[i] : TIMEOUT_RESULT;
+            responses.add(new ToolResponseMessage.ToolResponse(calls.get(i).id(), calls.get(i).name(), result));
+        }
+        return new ToolResponseMessage(responses, Map.of());
+    }
+
+    /**
+     * 本轮调用的工具是否全部要求直接返回结果
+     */
+    boolean returnDirect(List<AssistantMessage.ToolCall> calls) {
+        for (AssistantMessage.ToolCall call : calls) {
+            ToolCallback callback = callbacks.get(call.name());
+            if (callback == null || !callback.getToolMetadata().returnDirect()) {
+                return false;
+            }
+        }
+        return !calls.isEmpty();
+    }
+
+    /**
+     * 把调用放入与其路径相同或互为上下级的道；同时与多道相关时先合并这些道，合并后仍按调用顺序执行
+     */
+    private static void addToLane(List<Lane> lanes, Path path, int index) {
+        Lane target = null;
+        for (Iterator<Lane> iterator = lanes.iterator(); iterator.hasNext(); ) {
+            Lane lane = iterator.next();
+            if (!lane.overlaps(path)) {
+                continue;
+            }
+            if (target == null) {
+                target = lane;
+            } else {
+                target.merge(lane);
+                iterator.remove();
+            }
+        }
+        if (target == null) {
+            lanes.add(new Lane(path, index));
+        } else {
+            target.add(path, index);
+        }
+    }
+
+    /**
+     * 各道在虚拟线程上并发执行，道内按顺序执行。到截止时间仍未结束的道被中断，结果留空
+     */
+    private void runLanes(List<AssistantMessage.ToolCall> calls, List<Lane> lanes, ToolContext toolContext,
+                          ToolResultCache cache, String[] results, long deadline) {
+        if (lanes.isEmpty() || System.nanoTime() >= deadline) {
+            return;
+        }
+
+        // 不用 try-with-resources：close 会等待被中断后仍不退出的调用
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        List<Future<?>> futures = new ArrayList<>(lanes.size());
+        try {
+            for (Lane lane : lanes) {
+                futures.add(executor.submit(() -> {
+                    for (int i : lane.calls) {
+                        results[i] = call(calls.get(i), toolContext, cache);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            logger.warn("Tool calls cancelled at task deadline");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running tool calls", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+            executor.shutdownNow();
+        }
+    }
+
+    private String call(AssistantMessage.ToolCall call, ToolContext toolContext, ToolResultCache cache) {
+        ToolCallback callback = callbacks.get(call.name());
+        if (callback == null) {
+            return "错误：未知工具 " + call.name();
+        }
+        try {
+            if (!isReadOnly(call.name())) {
+                cache.invalidate();
+                try {
+                    return callback.call(call.arguments(), toolContext);
+                } finally {
+                    cache.invalidate();
+                }
+            }
+            String path = pathOf(call);
+            if (path == null) {
+                return callback.call(call.arguments(), toolContext);
+            }
+            return cache.get(call.name(), call.arguments(), path, () -> callback.call(call.arguments(), toolContext));
+        } catch (ToolExecutionException e) {
+            logger.warn("Tool {} failed", call.name(), e);
+            return "工具执行失败: " + e.getMessage();
+        }
+    }
+
+    /**
+     * 取出参数中的 path（工具参数统一包在 request 对象里），规范化为绝对路径；没有或无法解析时返回 null
+     */
+    private static String pathOf(AssistantMessage.ToolCall call) {
+        try {
+            JsonNode args = objectMapper.readTree(call.arguments());
+            JsonNode request = args.has("request") ? args.get("request") : args;
+            JsonNode path = request.get("path");
+            if (path == null || !path.isTextual() || path.asText().isBlank()) {
+                return null;
+            }
+            return Paths.get(path.asText()).toAbsolutePath().normalize().toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 一道中的调用及其涉及的路径，不带 path 的只读调用独占一道
+     */
+    private static final class Lane {
+
+        private final List<Path> paths = new ArrayList<>();
+
+        private final List<Integer> calls = new ArrayList<>();
+
+        Lane(Path path, int index) {
+            add(path, index);
+        }
+
+        void add(Path path, int index) {
+            if (path != null) {
+                paths.add(path);
+            }
+            calls.add(index);
+        }
+
+        boolean overlaps(Path path) {
+            for (Path existing : paths) {
+                if (existing.startsWith(path) || path.startsWith(existing)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void merge(Lane other) {
+            paths.addAll(other.paths);
+            calls.addAll(other.calls);
+            Collections.sort(calls);
+        }
+    }
+
+    private static Set<String> readOnlyToolNames(Object... toolObjects) {
+        return Arrays.stream(toolObjects)
+                .flatMap(tools -> Arrays.stream(ClassUtils.getUserClass(tools).getDeclaredMethods()))
+                .filter(method -> method.isAnnotationPresent(Tool.class) && method.isAnnotationPresent(ReadOnlyTool.class))
+                .map(ToolUtils::getToolName)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
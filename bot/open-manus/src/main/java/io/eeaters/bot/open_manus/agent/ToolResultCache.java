@@ -0,0 +1,71 @@
+package io.eeaters.bot.open_manus.agent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 单次 agent 执行内的只读工具结果缓存。
+ * <p>
+ * 键包含工具名、参数以及目标文件的修改时间和大小，文件在外部被改动后旧结果自然失效；
+ * 经由工具执行的任何写操作都会清空整个缓存。目标不存在或无法读取属性时不缓存。
+ * 目录不缓存：目录自身的修改时间只反映直接子项的增删，深层文件的改动不会让列表结果失效，
+ * 而逐层读取子目录属性的开销与重新列出目录相当。
+ */
+class ToolResultCache {
+
+    private final Map<String, String> results = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private final AtomicInteger misses = new AtomicInteger();
+
+    String get(String tool, String arguments, String path, Supplier<String> call) {
+        String key = key(tool, arguments, path);
+        if (key == null) {
+            misses.incrementAndGet();
+            return call.get();
+        }
+        String cached = results.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        String result = call.get();
+        if (result != null) {
+            results.put(key, result);
+        }
+        return result;
+    }
+
+    void invalidate() {
+        results.clear();
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    int getMisses() {
+        return misses.get();
+    }
+
+    private static String key(String tool, String arguments, String path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Path.of(path), BasicFileAttributes.class);
+            if (attributes.isDirectory()) {
+                return null;
+            }
+            return tool + '\u0000' + arguments + '\u0000' + attributes.lastModifiedTime().toMillis() + ':'
+                    + attributes.size();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package io.eeaters.bot.open_manus.controller;
 
+import io.eeaters.bot.open_manus.agent.AgentExecutor;
 import io.eeaters.bot.open_manus.agent.ManusAgent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/agent")
@@ -23,6 +30,11 @@ public class AgentController {
         return ResponseEntity.ok("OpenManus API is running!");
     }
 
+    @GetMapping("/stats")
+    public ResponseEntity<AgentExecutor.Stats> stats() {
+        return ResponseEntity.ok(manusAgent.getExecutorStats());
+    }
+
     @PostMapping("/run")
     public CompletableFuture<ResponseEntity<AgentResponse>> runTask(@RequestBody TaskRequest request) {
         logger.info("Received task: {}", request.getTask());
@@ -33,12 +45,40 @@ public class AgentController {
                     return ResponseEntity.ok(agentResponse);
                 })
                 .exceptionally(throwable -> {
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause instanceof RejectedExecutionException) {
+                        AgentResponse busyResponse = new AgentResponse(cause.getMessage(), false);
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(busyResponse);
+                    }
                     logger.error("Task execution failed", throwable);
                     AgentResponse errorResponse = new AgentResponse("任务执行失败: " + throwable.getMessage(), false);
                     return ResponseEntity.status(500).body(errorResponse);
                 });
     }
 
+    /**
+     * 以 SSE 推送执行过程：token、tool-start、tool-output、tool-end 事件的数据为 AgentEvent，
+     * 最后的 done/error 事件数据为与 /run 相同的 AgentResponse。与 /run 共用执行队列，队列已满时只推送一个 error 事件。
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamTask(@RequestBody TaskRequest request) {
+        logger.info("Received streaming task: {}", request.getTask());
+
+        return manusAgent.stream(request.getTask())
+                .map(event -> switch (event.type()) {
+                    case TOKEN -> sse("token", event);
+                    case TOOL_START -> sse("tool-start", event);
+                    case TOOL_OUTPUT -> sse("tool-output", event);
+                    case TOOL_END -> sse("tool-end", event);
+                    case DONE -> sse("done", new AgentResponse(event.content(), true));
+                    case ERROR -> sse("error", new AgentResponse(event.content(), false));
+                });
+    }
+
+    private static ServerSentEvent<Object> sse(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
+
 
     // 请求和响应 DTO
     public static class TaskRequest {
@@ -0,0 +1,392 @@
+package io.eeaters.bot.open_manus.docker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 通过 unix socket 访问 Docker Engine API 的 HTTP/1.1 客户端。
+ * <p>
+ * JDK 的 HttpClient 不支持 unix socket，这里只实现 Engine API 用到的部分：无请求体的请求，
+ * Content-Length、chunked 和读到连接关闭三种响应体。读完整个响应体的连接放回空闲池复用，最多保留 maxIdle 个；
+ * 复用的连接可能已被服务端关闭，发请求失败时换新连接重试一次。
+ * 阻塞的读取没有超时参数，超时由定时任务关闭连接打断。
+ */
+public class DockerEngineClient implements AutoCloseable {
+
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private final UnixDomainSocketAddress address;
+
+    private final int maxIdle;
+
+    private final Deque<Connection> idle = new ArrayDeque<>();
+
+    private volatile boolean closed;
+
+    public DockerEngineClient(Path socket, int maxIdle) {
+        this.address = UnixDomainSocketAddress.of(socket);
+        this.maxIdle = maxIdle;
+    }
+
+    public Path getSocket() {
+        return address.getPath();
+    }
+
+    /**
+     * 发送请求并读取完整响应体
+     */
+    public Response send(String method, String path, Duration timeout) throws IOException {
+        return exchange(method, path, timeout, (status, headers, body) -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            body.transferTo(bytes);
+            return new Response(status, bytes.toString(StandardCharsets.UTF_8));
+        });
+    }
+
+    /**
+     * 发送请求，响应体交给 handler 边读边处理。handler 没有读完响应体时连接不再复用。
+     */
+    public <T> T exchange(String method, String path, Duration timeout, ResponseHandler<T> handler)
+            throws IOException {
+        if (closed) {
+            throw new IOException("Docker client is closed");
+        }
+        Connection connection = pollIdle();
+        boolean reused = connection != null;
+        while (true) {
+            if (connection == null) {
+                connection = open();
+            }
+            AtomicBoolean finished = new AtomicBoolean();
+            AtomicBoolean timedOut = new AtomicBoolean();
+            Connection current = connection;
+            CompletableFuture.runAsync(() -> {
+                if (!finished.get()) {
+                    timedOut.set(true);
+                    current.close();
+                }
+            }, CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS));
+
+            boolean keep = false;
+            try {
+                int status;
+                try {
+                    current.writeRequest(method, path);
+                    status = current.readStatus();
+                } catch (IOException e) {
+                    // 空闲连接已被服务端关闭，换新连接重试一次；unix socket 上对端关闭在写请求时就会报 Broken pipe
+                    if (reused && !timedOut.get()) {
+                        current.close();
+                        connection = null;
+                        reused = false;
+                        continue;
+                    }
+                    throw e;
+                }
+                Map<String, String> headers = current.readHeaders();
+                Body body = current.body(method, status, headers);
+                T result = handler.handle(status, headers, body);
+                keep = body.complete() && !"close".equalsIgnoreCase(headers.get("connection"));
+                return result;
+            } catch (IOException e) {
+                if (timedOut.get()) {
+                    throw new SocketTimeoutException("Docker API 请求超时（" + timeout.toSeconds() + "秒）: "
+                            + method + " " + path);
+                }
+                throw e;
+            } finally {
+                finished.set(true);
+                if (keep && !timedOut.get()) {
+                    release(current);
+                } else {
+                    current.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (idle) {
+            idle.forEach(Connection::close);
+            idle.clear();
+        }
+    }
+
+    private Connection pollIdle() {
+        synchronized (idle) {
+            return idle.pollFirst();
+        }
+    }
+
+    private void release(Connection connection) {
+        synchronized (idle) {
+            if (!closed && idle.size() < maxIdle) {
+                idle.addFirst(connection);
+                return;
+            }
+        }
+        connection.close();
+    }
+
+    private Connection open() throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new Connection(channel);
+    }
+
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        /**
+         * @param headers 响应头，名称为小写
+         */
+        T handle(int status, Map<String, String> headers, InputStream body) throws IOException;
+    }
+
+    public record Response(int status, String body) {
+
+        public boolean isSuccessful() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    private static final class Connection {
+
+        final SocketChannel channel;
+
+        final InputStream input;
+
+        final OutputStream output;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.input = new BufferedInputStream(Channels.newInputStream(channel));
+            this.output = Channels.newOutputStream(channel);
+        }
+
+        void writeRequest(String method, String path) throws IOException {
+            String request = method + " " + path + " HTTP/1.1\r\n"
+                    + "Host: docker\r\n"
+                    + "User-Agent: open-manus\r\n"
+                    + "Content-Length: 0\r\n"
+                    + "\r\n";
+            output.write(request.getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+        }
+
+        int readStatus() throws IOException {
+            String line = readLine(input);
+            if (line == null) {
+                throw new IOException("Connection closed before response");
+            }
+            // HTTP/1.1 200 OK
+            String[] parts = line.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("Malformed status line: " + line);
+            }
+            return Integer.parseInt(parts[1]);
+        }
+
+        Map<String, String> readHeaders() throws IOException {
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = readLine(input)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                            line.substring(colon + 1).trim());
+                }
+            }
+            return headers;
+        }
+
+        Body body(String method, int status, Map<String, String> headers) {
+            if ("HEAD".equals(method) || status == 204 || status == 304 || status / 100 == 1) {
+                return new FixedLengthBody(input, 0);
+            }
+            if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+                return new ChunkedBody(input);
+            }
+            String length = headers.get("content-length");
+            if (length != null) {
+                return new FixedLengthBody(input, Long.parseLong(length));
+            }
+            return new UntilCloseBody(input);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 已关闭
+            }
+        }
+    }
+
+    /**
+     * 读取以 CRLF 结尾的一行，连接在行首关闭时返回 null
+     */
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = input.read()) != -1) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line too long");
+            }
+            line.append((char) b);
+        }
+        if (line.isEmpty()) {
+            return null;
+        }
+        throw new IOException("Connection closed in the middle of a line");
+    }
+
+    /**
+     * 响应体，complete 表示已读到末尾、连接上没有残留数据
+     */
+    private abstract static class Body extends InputStream {
+
+        final InputStream input;
+
+        Body(InputStream input) {
+            this.input = input;
+        }
+
+        abstract boolean complete();
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+    }
+
+    private static final class FixedLengthBody extends Body {
+
+        private long remaining;
+
+        FixedLengthBody(InputStream input, long length) {
+            super(input);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = input.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) {
+                throw new IOException("Connection closed with " + remaining + " bytes remaining");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        boolean complete() {
+            return remaining == 0;
+        }
+    }
+
+    private static final class ChunkedBody extends Body {
+
+        // 当前块剩余字节，-1 表示需要读下一个块头
+        private long remaining = -1;
+
+        private boolean done;
+
+        ChunkedBody(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (remaining <= 0) {
+                if (remaining == 0) {
+                    // 块数据后的 CRLF
+                    readLine(input);
+                }
+                String header = readLine(input);
+                if (header == null) {
+                    throw new IOException("Connection closed in chunked body");
+                }
+                int extension = header.indexOf(';');
+                remaining = Long.parseLong((extension >= 0 ? header.substring(0, extension) : header).trim(), 16);
+                if (remaining == 0) {
+                    // 跳过 trailer
+                    String trailer;
+                    while ((trailer = readLine(input)) != null && !trailer.isEmpty()) {
+                        // 忽略
+                    }
+                    done = true;
+                    return -1;
+                }
+            }
+            int read = input.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) {
+                throw new IOException("Connection closed in chunked body");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        boolean complete() {
+            return done;
+        }
+    }
+
+    private static final class UntilCloseBody extends Body {
+
+        UntilCloseBody(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return input.read(buffer, offset, length);
+        }
+
+        @Override
+        boolean complete() {
+            // 服务端以关闭连接结束响应，连接不能复用
+            return false;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package io.eeaters.bot.open_manus.docker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.eeaters.bot.open_manus.process.OutputBuffer;
+import io.eeaters.bot.open_manus.process.ProcessResult;
+import io.eeaters.bot.open_manus.process.ProcessRunner;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Docker 命令的执行入口。
+ * <p>
+ * 可用性检测结果缓存 availability-ttl，不再每条命令都启动一次 docker --version。
+ * 常用的 ps、inspect、logs、start、stop、restart 直接调用 Engine API（unix socket），省去 docker CLI 进程；
+ * 带有不认识的参数、需要跟随输出（logs -f）或 socket 不可用时返回 null，由调用方交给 CLI 执行。
+ */
+@Component
+public class DockerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DockerService.class);
+
+    private static final String DEFAULT_SOCKET = "/var/run/docker.sock";
+
+    // 容器名或 ID，拼进 URL 前校验，避免路径注入
+    private static final Pattern CONTAINER_REF = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_.-]*");
+
+    private static final Duration CLI_PROBE_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final int SHORT_ID_LENGTH = 12;
+
+    private static final int MAX_COLUMN_LENGTH = 40;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final ProcessRunner processRunner;
+
+    private final Duration availabilityTtl;
+
+    private final Duration timeout;
+
+    private final int headBytes;
+
+    private final int tailBytes;
+
+    // DOCKER_HOST 指向 TCP 等非 unix socket 地址时为 null，只能走 CLI
+    private final DockerEngineClient client;
+
+    private volatile Availability availability;
+
+    public DockerService(ProcessRunner processRunner,
+                         @Value("${openmanus.docker.socket:}") String socket,
+                         @Value("${openmanus.docker.availability-ttl:30s}") Duration availabilityTtl,
+                         @Value("${openmanus.docker.timeout:30s}") Duration timeout,
+                         @Value("${openmanus.docker.max-idle-connections:4}") int maxIdleConnections,
+                         @Value("${openmanus.process.output-head-bytes:16384}") int headBytes,
+                         @Value("${openmanus.process.output-tail-bytes:49152}") int tailBytes) {
+        this.processRunner = processRunner;
+        this.availabilityTtl = availabilityTtl;
+        this.timeout = timeout;
+        this.headBytes = headBytes;
+        this.tailBytes = tailBytes;
+        Path socketPath = resolveSocket(socket);
+        this.client = socketPath == null ? null : new DockerEngineClient(socketPath, maxIdleConnections);
+    }
+
+    /**
+     * Engine API 或 docker CLI 是否可用，结果缓存 availability-ttl
+     */
+    public boolean isAvailable() {
+        return currentAvailability().available();
+    }
+
+    /**
+     * 通过 Engine API 执行命令，不支持的命令返回 null
+     *
+     * @param command 不含 docker 前缀的命令
+     */
+    public String execute(String command) {
+        if (client == null || !currentAvailability().api()) {
+            return null;
+        }
+        // 含引号、重定向等 shell 语法的命令交给 CLI
+        if (!command.matches("[A-Za-z0-9_.:=/\\s-]+")) {
+            return null;
+        }
+        List<String> args = Arrays.asList(command.trim().split("\\s+"));
+        try {
+            return switch (args.get(0)) {
+                case "ps" -> ps(args.subList(1, args.size()));
+                case "inspect" -> inspect(args.subList(1, args.size()));
+                case "logs" -> logs(args.subList(1, args.size()));
+                case "start", "stop", "restart" -> lifecycle(args.get(0), args.subList(1, args.size()));
+                default -> null;
+            };
+        } catch (SocketTimeoutException e) {
+            // daemon 无响应时 CLI 同样会卡住，不再重试
+            return "命令执行超时: " + e.getMessage();
+        } catch (IOException e) {
+            // socket 出错时重新检测，这次交给 CLI
+            logger.warn("Docker API request failed, falling back to CLI: {}", e.getMessage());
+            availability = null;
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    private String ps(List<String> args) throws IOException {
+        boolean all = false;
+        boolean quiet = false;
+        for (String arg : args) {
+            switch (arg) {
+                case "-a", "--all" -> all = true;
+                case "-q", "--quiet" -> quiet = true;
+                case "-aq", "-qa" -> {
+                    all = true;
+                    quiet = true;
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+
+        DockerEngineClient.Response response = client.send("GET", "/containers/json" + (all ? "?all=1" : ""), timeout);
+        if (!response.isSuccessful()) {
+            return "命令执行失败: " + daemonError(response);
+        }
+        JsonNode containers = objectMapper.readTree(response.body());
+        StringBuilder result = new StringBuilder();
+        if (!quiet) {
+            result.append(String.format("%-12s   %-30s   %-30s   %-25s   %-30s   %s%n",
+                    "CONTAINER ID", "IMAGE", "COMMAND", "STATUS", "PORTS", "NAMES"));
+        }
+        for (JsonNode container : containers) {
+            String id = container.path("Id").asText();
+            String shortId = id.substring(0, Math.min(SHORT_ID_LENGTH, id.length()));
+            if (quiet) {
+                result.append(shortId).append("\n");
+                continue;
+            }
+            List<String> names = new ArrayList<>();
+            container.path("Names").forEach(name -> names.add(name.asText().replaceFirst("^/", "")));
+            List<String> ports = new ArrayList<>();
+            for (JsonNode port : container.path("Ports")) {
+                String mapping = port.path("PrivatePort").asText() + "/" + port.path("Type").asText();
+                if (port.has("PublicPort")) {
+                    mapping = port.path("IP").asText("") + ":" + port.path("PublicPort").asText() + "->" + mapping;
+                }
+                ports.add(mapping);
+            }
+            result.append(String.format("%-12s   %-30s   %-30s   %-25s   %-30s   %s%n",
+                    shortId,
+                    abbreviate(container.path("Image").asText()),
+                    abbreviate("\"" + container.path("Command").asText() + "\""),
+                    container.path("Status").asText(),
+                    abbreviate(String.join(", ", ports)),
+                    String.join(",", names)));
+        }
+        String output = result.toString().trim();
+        return output.isEmpty() ? "命令执行完成，无输出" : output;
+    }
+
+    private String inspect(List<String> refs) throws IOException {
+        if (refs.isEmpty() || !refs.stream().allMatch(ref -> CONTAINER_REF.matcher(ref).matches())) {
+            return null;
+        }
+        List<JsonNode> objects = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        for (String ref : refs) {
+            DockerEngineClient.Response response = client.send("GET", "/containers/" + ref + "/json", timeout);
+            if (response.status() == 404) {
+                // docker inspect 也接受镜像
+                response = client.send("GET", "/images/" + ref + "/json", timeout);
+            }
+            if (response.isSuccessful()) {
+                objects.add(objectMapper.readTree(response.body()));
+            } else if (response.status() == 404) {
+                errors.add("Error: No such object: " + ref);
+            } else {
+                errors.add(daemonError(response));
+            }
+        }
+        String output = objectMapper.writeValueAsString(objects);
+        if (errors.isEmpty()) {
+            return output;
+        }
+        return "命令执行失败，退出码: 1\n输出：\n" + (objects.isEmpty() ? "" : output + "\n") + String.join("\n", errors);
+    }
+
+    private String logs(List<String> args) throws IOException {
+        String tail = "all";
+        boolean timestamps = false;
+        String ref = null;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if ((arg.equals("--tail") || arg.equals("-n")) && i + 1 < args.size()) {
+                tail = args.get(++i);
+            } else if (arg.startsWith("--tail=")) {
+                tail = arg.substring("--tail=".length());
+            } else if (arg.equals("-t") || arg.equals("--timestamps")) {
+                timestamps = true;
+            } else if (arg.startsWith("-") || ref != null) {
+                // -f 等需要持续输出的参数交给 CLI
+                return null;
+            } else {
+                ref = arg;
+            }
+        }
+        if (ref == null || !CONTAINER_REF.matcher(ref).matches() || !tail.matches("all|\\d+")) {
+            return null;
+        }
+
+        String path = "/containers/" + ref + "/logs?stdout=1&stderr=1&tail=" + tail
+                + (timestamps ? "&timestamps=1" : "");
+        OutputBuffer buffer = new OutputBuffer(headBytes, tailBytes);
+        Consumer<String> listener = ProcessRunner.currentOutputListener();
+        return client.exchange("GET", path, timeout, (status, headers, body) -> {
+            if (status / 100 != 2) {
+                return "命令执行失败: " + daemonError(new DockerEngineClient.Response(status,
+                        new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+            }
+            new LogStream(buffer, listener, isRawStream(headers)).copy(body);
+            String output = buffer.toString().trim();
+            return output.isEmpty() ? "命令执行完成，无输出" : output;
+        });
+    }
+
+    private String lifecycle(String action, List<String> args) throws IOException {
+        Integer stopTimeout = null;
+        List<String> refs = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (!action.equals("start") && (arg.equals("-t") || arg.equals("--time")) && i + 1 < args.size()
+                    && args.get(i + 1).matches("\\d+")) {
+                stopTimeout = Integer.parseInt(args.get(++i));
+            } else if (CONTAINER_REF.matcher(arg).matches()) {
+                refs.add(arg);
+            } else {
+                return null;
+            }
+        }
+        if (refs.isEmpty()) {
+            return null;
+        }
+
+        // 停止容器要等待容器退出，请求超时相应延长
+        Duration requestTimeout = stopTimeout == null ? timeout : timeout.plusSeconds(stopTimeout);
+        StringBuilder output = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        for (String ref : refs) {
+            String path = "/containers/" + ref + "/" + action + (stopTimeout == null ? "" : "?t=" + stopTimeout);
+            DockerEngineClient.Response response = client.send("POST", path, requestTimeout);
+            // 304 表示已经处于目标状态，CLI 同样视为成功
+            if (response.isSuccessful() || response.status() == 304) {
+                output.append(ref).append("\n");
+            } else {
+                errors.add(daemonError(response));
+            }
+        }
+        if (errors.isEmpty()) {
+            return output.toString().trim();
+        }
+        return "命令执行失败，退出码: 1\n输出：\n" + output + String.join("\n", errors);
+    }
+
+    private Availability currentAvailability() {
+        Availability current = availability;
+        if (current != null && System.nanoTime() < current.expiresAt()) {
+            return current;
+        }
+        synchronized (this) {
+            current = availability;
+            if (current == null || System.nanoTime() >= current.expiresAt()) {
+                current = probe();
+                availability = current;
+            }
+            return current;
+        }
+    }
+
+    private Availability probe() {
+        long expiresAt = System.nanoTime() + availabilityTtl.toNanos();
+        if (client != null && Files.exists(client.getSocket())) {
+            try {
+                DockerEngineClient.Response response = client.send("GET", "/_ping", CLI_PROBE_TIMEOUT);
+                if (response.isSuccessful()) {
+                    return new Availability(true, true, expiresAt);
+                }
+            } catch (IOException e) {
+                logger.debug("Docker socket {} not usable: {}", client.getSocket(), e.getMessage());
+            }
+        }
+        try {
+            ProcessResult result = processRunner.run(List.of("docker", "--version"),
+                    Paths.get(System.getProperty("user.dir")), CLI_PROBE_TIMEOUT, null);
+            return new Availability(!result.timedOut() && result.exitCode() == 0, false, expiresAt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Availability(false, false, expiresAt);
+        } catch (Exception e) {
+            return new Availability(false, false, expiresAt);
+        }
+    }
+
+    /**
+     * 配置优先，其次 DOCKER_HOST 中的 unix:// 地址，最后是默认 socket；DOCKER_HOST 为其他协议时返回 null
+     */
+    private static Path resolveSocket(String configured) {
+        if (configured != null && !configured.isBlank()) {
+            return Paths.get(configured.replaceFirst("^unix://", ""));
+        }
+        String dockerHost = System.getenv("DOCKER_HOST");
+        if (dockerHost == null || dockerHost.isBlank()) {
+            return Paths.get(DEFAULT_SOCKET);
+        }
+        return dockerHost.startsWith("unix://") ? Paths.get(dockerHost.substring("unix://".length())) : null;
+    }
+
+    private static String daemonError(DockerEngineClient.Response response) {
+        String message = response.body();
+        try {
+            JsonNode node = objectMapper.readTree(response.body());
+            if (node.hasNonNull("message")) {
+                message = node.get("message").asText();
+            }
+        } catch (IOException e) {
+            // 非 JSON 的错误体原样返回
+        }
+        return "Error response from daemon: " + message.trim();
+    }
+
+    private static boolean isRawStream(Map<String, String> headers) {
+        return "application/vnd.docker.raw-stream".equals(headers.get("content-type"));
+    }
+
+    private static String abbreviate(String value) {
+        return value.length() > MAX_COLUMN_LENGTH ? value.substring(0, MAX_COLUMN_LENGTH - 3) + "..." : value;
+    }
+
+    /**
+     * @param api       Engine API 可用
+     * @param expiresAt 以 System.nanoTime() 计的过期时间
+     */
+    private record Availability(boolean available, boolean api, long expiresAt) {
+    }
+
+    /**
+     * 把日志流写入缓冲并实时回调。容器没有 TTY 时 stdout、stderr 复用在一个流里，
+     * 每帧前有 8 字节头：1 字节流类型、3 字节填充、4 字节大端长度。
+     * 旧版本 API 不返回 Content-Type，按第一帧的头是否合法判断。
+     */
+    private static final class LogStream {
+
+        private final OutputBuffer buffer;
+
+        private final Consumer<String> listener;
+
+        private Boolean raw;
+
+        private byte[] carry = new byte[0];
+
+        LogStream(OutputBuffer buffer, Consumer<String> listener, boolean raw) {
+            this.buffer = buffer;
+            this.listener = listener;
+            this.raw = raw ? Boolean.TRUE : null;
+        }
+
+        void copy(InputStream body) throws IOException {
+            byte[] header = new byte[8];
+            byte[] chunk = new byte[8192];
+            if (raw == null) {
+                int read = body.readNBytes(header, 0, header.length);
+                raw = read < header.length || header[0] > 2 || header[1] != 0 || header[2] != 0 || header[3] != 0;
+                if (raw) {
+                    emit(header, read);
+                } else {
+                    copyFrame(body, header, chunk);
+                }
+            }
+            if (raw) {
+                int read;
+                while ((read = body.read(chunk)) != -1) {
+                    emit(chunk, read);
+                }
+            } else {
+                while (body.readNBytes(header, 0, header.length) == header.length) {
+                    copyFrame(body, header, chunk);
+                }
+            }
+            if (listener != null && carry.length > 0) {
+                listener.accept(new String(carry, StandardCharsets.UTF_8));
+            }
+        }
+
+        private void copyFrame(InputStream body, byte[] header, byte[] chunk) throws IOException {
+            long remaining = ((header[4] & 0xFFL) << 24) | ((header[5] & 0xFF) << 16) | ((header[6] & 0xFF) << 8)
+                    | (header[7] & 0xFF);
+            while (remaining > 0) {
+                int read = body.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                if (read == -1) {
+                    return;
+                }
+                emit(chunk, read);
+                remaining -= read;
+            }
+        }
+
+        private void emit(byte[] bytes, int length) {
+            buffer.write(bytes, 0, length);
+            if (listener == null || length == 0) {
+                return;
+            }
+            byte[] joined = new byte[carry.length + length];
+            System.arraycopy(carry, 0, joined, 0, carry.length);
+            System.arraycopy(bytes, 0, joined, carry.length, length);
+            int complete = ProcessRunner.completeUtf8Length(joined, joined.length);
+            if (complete > 0) {
+                try {
+                    listener.accept(new String(joined, 0, complete, StandardCharsets.UTF_8));
+                } catch (RuntimeException e) {
+                    logger.warn("Docker log listener failed", e);
+                }
+            }
+            carry = Arrays.copyOfRange(joined, complete, joined.length);
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package io.eeaters.bot.open_manus.edit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 文件编辑的撤销/重做历史。
+ * <p>
+ * 每次编辑只记录编辑前后不同的那一段字节（起始位置、删去的内容、插入的内容），历史本身的开销与改动大小成正比。
+ * 撤销和重做只替换这一段，不需要把文件解码成字符串：前后长度相同时经 {@link FileEditor#overwrite} 原位覆盖，
+ * 开销与改动大小成正比；长度不同时经 {@link FileEditor#splice} 通过临时文件重写整个文件，开销与文件大小成正比。
+ * 记录占用的内存按文件和全局分别限额，超出时最早的记录写到磁盘，用到时再按位置读回；每个文件最多保留 max-entries 级。
+ * <p>
+ * 不同文件的历史互不阻塞。撤销前会核对文件中对应位置仍是编辑后的内容，文件被其他方式改过时拒绝撤销。
+ */
+@Component
+public class EditHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(EditHistory.class);
+
+    // 溢出文件中失效的字节超过这个值且多于有效字节时重写文件
+    private static final long COMPACT_THRESHOLD = 1 << 20;
+
+    private static final int STALE_PURGE_THRESHOLD = 1024;
+
+    private final Path spillDirectory;
+
+    private final long maxFileBytes;
+
+    private final long maxTotalBytes;
+
+    private final int maxEntries;
+
+    private final Map<String, FileHistory> histories = new ConcurrentHashMap<>();
+
+    // 仍在内存中的记录，按创建顺序排列，超出全局限额时从队头开始写盘
+    private final Queue<Entry> resident = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    private final AtomicLong spilledEntries = new AtomicLong();
+
+    private final AtomicLong spillSequence = new AtomicLong();
+
+    // resident 队列里已写盘或丢弃、等待清理的记录数
+    private final AtomicLong staleQueued = new AtomicLong();
+
+    private final Object spillLock = new Object();
+
+    public EditHistory(@Value("${openmanus.history.spill-dir:${java.io.tmpdir}/openmanus-history}") String spillRoot,
+                       @Value("${openmanus.history.max-file-bytes:1048576}") long maxFileBytes,
+                       @Value("${openmanus.history.max-total-bytes:33554432}") long maxTotalBytes,
+                       @Value("${openmanus.history.max-entries:100}") int maxEntries) {
+        this.spillDirectory = Paths.get(spillRoot).resolve(String.valueOf(ProcessHandle.current().pid()));
+        this.maxFileBytes = maxFileBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxEntries = maxEntries;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path root = spillDirectory.getParent();
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> dirs = Files.list(root)) {
+                dirs.filter(dir -> isStale(dir.getFileName().toString())).forEach(EditHistory::deleteDirectory);
+            }
+        }
+    }
+
+    /**
+     * 记录一次编辑，比较前后内容只保存不同的一段，清空该文件可重做的记录
+     *
+     * @param key 文件的规范化绝对路径
+     */
+    public void record(String key, byte[] before, byte[] after) {
+        int prefix = Arrays.mismatch(before, after);
+        if (prefix < 0) {
+            return;
+        }
+        int limit = Math.min(before.length, after.length);
+        int suffix = 0;
+        while (suffix < limit - prefix && before[before.length - 1 - suffix] == after[after.length - 1 - suffix]) {
+            suffix++;
+        }
+        record(key, prefix, Arrays.copyOfRange(before, prefix, before.length - suffix),
+                Arrays.copyOfRange(after, prefix, after.length - suffix), after.length);
+    }
+
+    /**
+     * 记录一次已知位置的编辑：文件 [offset, offset + removed.length) 被替换为 inserted
+     *
+     * @param resultLength 编辑后的文件字节数
+     */
+    public void record(String key, long offset, byte[] removed, byte[] inserted, long resultLength) {
+        Delta delta = new Delta(offset, removed, inserted, resultLength);
+
+        FileHistory history = histories.computeIfAbsent(key, FileHistory::new);
+        synchronized (history) {
+            history.truncateRedo();
+            Entry entry = new Entry(history, delta);
+            history.entries.add(entry);
+            history.position++;
+            history.residentBytes += entry.bytes;
+            residentBytes.addAndGet(entry.bytes);
+            resident.add(entry);
+
+            while (history.entries.size() > maxEntries) {
+                history.position--;
+                discard(history.entries.remove(0));
+            }
+            // 单个文件超出限额，写出它最早的记录
+            for (Entry oldest : history.entries) {
+                if (history.residentBytes <= maxFileBytes) {
+                    break;
+                }
+                spill(oldest);
+            }
+        }
+        enforceTotalLimit();
+        if (staleQueued.get() > STALE_PURGE_THRESHOLD) {
+            staleQueued.set(0);
+            resident.removeIf(entry -> entry.delta == null);
+        }
+    }
+
+    /**
+     * 撤销最近一次编辑，文件写回成功后才移动历史位置
+     *
+     * @throws IllegalStateException 没有可撤销的编辑，或文件在编辑后被改动
+     */
+    public void undo(String key, Path file) throws IOException {
+        FileHistory history = histories.get(key);
+        if (history == null) {
+            throw new IllegalStateException("没有可撤销的操作");
+        }
+        synchronized (history) {
+            if (history.position == 0) {
+                throw new IllegalStateException("没有可撤销的操作");
+            }
+            Delta delta = history.entries.get(history.position - 1).delta();
+            if (!matches(file, delta.offset(), delta.inserted(), delta.resultLength())) {
+                throw new IllegalStateException("文件在上次编辑后被修改过，无法撤销");
+            }
+            replace(file, delta.offset(), delta.inserted(), delta.removed());
+            history.position--;
+        }
+    }
+
+    /**
+     * 重做最近一次撤销的编辑，写入方式同 {@link #undo}
+     *
+     * @throws IllegalStateException 没有可重做的编辑，或文件在撤销后被改动
+     */
+    public void redo(String key, Path file) throws IOException {
+        FileHistory history = histories.get(key);
+        if (history == null) {
+            throw new IllegalStateException("没有可重做的操作");
+        }
+        synchronized (history) {
+            if (history.position == history.entries.size()) {
+                throw new IllegalStateException("没有可重做的操作");
+            }
+            Delta delta = history.entries.get(history.position).delta();
+            long expectedLength = delta.resultLength() - delta.inserted().length + delta.removed().length;
+            if (!matches(file, delta.offset(), delta.removed(), expectedLength)) {
+                throw new IllegalStateException("文件在撤销后被修改过，无法重做");
+            }
+            replace(file, delta.offset(), delta.removed(), delta.inserted());
+            history.position++;
+        }
+    }
+
+    /**
+     * 把文件中 offset 处的 current 换成 replacement，长度相同时原位覆盖
+     */
+    private static void replace(Path file, long offset, byte[] current, byte[] replacement) throws IOException {
+        if (current.length == replacement.length) {
+            FileEditor.overwrite(file, offset, replacement);
+        } else {
+            FileEditor.splice(file, offset, current.length, replacement);
+        }
+    }
+
+    public Stats getStats() {
+        int entries = 0;
+        for (FileHistory history : histories.values()) {
+            synchronized (history) {
+                entries += history.entries.size();
+            }
+        }
+        return new Stats(histories.size(), entries, residentBytes.get(), spilledEntries.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (FileHistory history : histories.values()) {
+            synchronized (history) {
+                history.closeSpill();
+            }
+        }
+        histories.clear();
+        resident.clear();
+        deleteDirectory(spillDirectory);
+    }
+
+    private void enforceTotalLimit() {
+        if (residentBytes.get() <= maxTotalBytes) {
+            return;
+        }
+        synchronized (spillLock) {
+            Entry entry;
+            while (residentBytes.get() > maxTotalBytes && (entry = resident.poll()) != null) {
+                synchronized (entry.owner) {
+                    spill(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把记录写到所属文件的溢出文件，调用方持有 owner 的锁
+     */
+    private void spill(Entry entry) {
+        if (entry.delta == null || entry.discarded) {
+            return;
+        }
+        try {
+            FileHistory history = entry.owner;
+            FileChannel channel = history.spillChannel();
+            byte[] removed = entry.delta.removed();
+            byte[] inserted = entry.delta.inserted();
+            ByteBuffer buffer = ByteBuffer.allocate(24 + removed.length + inserted.length);
+            buffer.putLong(entry.delta.offset()).putLong(entry.delta.resultLength())
+                    .putInt(removed.length).put(removed)
+                    .putInt(inserted.length).put(inserted)
+                    .flip();
+            long position = channel.size();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+            entry.spillPosition = position;
+            entry.spillLength = buffer.limit();
+            entry.delta = null;
+            history.residentBytes -= entry.bytes;
+            history.spilled++;
+            history.spilledBytes += entry.spillLength;
+            staleQueued.incrementAndGet();
+            residentBytes.addAndGet(-entry.bytes);
+            spilledEntries.incrementAndGet();
+        } catch (IOException e) {
+            // 写盘失败时留在内存里，宁可超限也不丢历史
+            logger.warn("Failed to spill edit history of {}: {}", entry.owner.key, e.getMessage());
+        }
+    }
+
+    private void discard(Entry entry) {
+        entry.discarded = true;
+        FileHistory history = entry.owner;
+        if (entry.delta != null) {
+            history.residentBytes -= entry.bytes;
+            residentBytes.addAndGet(-entry.bytes);
+            entry.delta = null;
+            staleQueued.incrementAndGet();
+        } else if (entry.spillLength > 0) {
+            spilledEntries.decrementAndGet();
+            history.spilledBytes -= entry.spillLength;
+            if (--history.spilled == 0) {
+                // 溢出的记录都已丢弃，删掉文件回收空间
+                history.closeSpill();
+            } else {
+                history.compactIfNeeded();
+            }
+        }
+    }
+
+    private static boolean matches(Path file, long offset, byte[] bytes, long expectedLength) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.size() == expectedLength && FileEditor.regionMatches(channel, offset, bytes);
+        }
+    }
+
+    private static boolean isStale(String name) {
+        try {
+            return ProcessHandle.of(Long.parseLong(name)).isEmpty();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static void deleteDirectory(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.debug("Failed to delete {}", dir, e);
+        }
+    }
+
+    /**
+     * 一次编辑的差异：把 [offset, offset + removed.length()) 替换成 inserted 得到编辑后的内容
+     *
+     * @param resultLength 编辑后的内容长度，撤销前用来核对文件未被改动
+     */
+    private record Delta(long offset, byte[] removed, byte[] inserted, long resultLength) {
+    }
+
+    /**
+     * @param files          有历史的文件数
+     * @param entries        历史记录总数
+     * @param residentBytes  内存中的记录占用的字节数
+     * @param spilledEntries 写到磁盘的记录数
+     */
+    public record Stats(int files, int entries, long residentBytes, long spilledEntries) {
+    }
+
+    private final class FileHistory {
+
+        final String key;
+
+        // [0, position) 为可撤销的记录，[position, size) 为可重做的记录
+        final List<Entry> entries = new ArrayList<>();
+
+        int position;
+
+        long residentBytes;
+
+        int spilled;
+
+        // 溢出文件中仍有效的字节数
+        long spilledBytes;
+
+        private Path spillFile;
+
+        private FileChannel spillChannel;
+
+        FileHistory(String key) {
+            this.key = key;
+        }
+
+        void truncateRedo() {
+            while (entries.size() > position) {
+                discard(entries.remove(entries.size() - 1));
+            }
+        }
+
+        FileChannel spillChannel() throws IOException {
+            if (spillChannel == null) {
+                Files.createDirectories(spillDirectory);
+                spillFile = spillDirectory.resolve("history-" + spillSequence.incrementAndGet() + ".bin");
+                spillChannel = FileChannel.open(spillFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            }
+            return spillChannel;
+        }
+
+        /**
+         * 失效的字节过多时把仍有效的记录复制到新文件
+         */
+        void compactIfNeeded() {
+            try {
+                long garbage = spillChannel.size() - spilledBytes;
+                if (garbage < COMPACT_THRESHOLD || garbage < spilledBytes) {
+                    return;
+                }
+                Path compacted = spillDirectory.resolve("history-" + spillSequence.incrementAndGet() + ".bin");
+                try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+                    long position = 0;
+                    for (Entry entry : entries) {
+                        if (entry.delta != null || entry.spillLength == 0) {
+                            continue;
+                        }
+                        long copied = 0;
+                        while (copied < entry.spillLength) {
+                            copied += spillChannel.transferTo(entry.spillPosition + copied,
+                                    entry.spillLength - copied, target);
+                        }
+                        entry.spillPosition = position;
+                        position += entry.spillLength;
+                    }
+                }
+                closeSpill();
+                spillFile = compacted;
+                spillChannel = FileChannel.open(compacted, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                logger.warn("Failed to compact edit history of {}: {}", key, e.getMessage());
+            }
+        }
+
+        void closeSpill() {
+            if (spillChannel == null) {
+                return;
+            }
+            try {
+                spillChannel.close();
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                logger.debug("Failed to delete {}", spillFile, e);
+            }
+            spillChannel = null;
+            spillFile = null;
+        }
+    }
+
+    private static final class Entry {
+
+        final FileHistory owner;
+
+        final long bytes;
+
+        // 在内存中时非空
+        volatile Delta delta;
+
+        long spillPosition;
+
+        int spillLength;
+
+        volatile boolean discarded;
+
+        Entry(FileHistory owner, Delta delta) {
+            this.owner = owner;
+            this.delta = delta;
+            this.bytes = delta.removed().length + delta.inserted().length;
+        }
+
+        /**
+         * 取出差异，已写盘时从溢出文件读回（不放回内存），调用方持有 owner 的锁
+         */
+        Delta delta() throws IOException {
+            Delta current = delta;
+            if (current != null) {
+                return current;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(spillLength);
+            while (buffer.hasRemaining()) {
+                if (owner.spillChannel.read(buffer, spillPosition + buffer.position()) < 0) {
+                    throw new IOException("Edit history spill file is truncated");
+                }
+            }
+            buffer.flip();
+            long offset = buffer.getLong();
+            long resultLength = buffer.getLong();
+            byte[] removed = readBytes(buffer);
+            byte[] inserted = readBytes(buffer);
+            return new Delta(offset, removed, inserted, resultLength);
+        }
+
+        private static byte[] readBytes(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package io.eeaters.bot.open_manus.edit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按字节处理文件的编辑操作，不把整个文件解码成字符串。
+ * <p>
+ * 查找在内存映射的缓冲区上一趟完成；修改时把未改动的部分用 {@link FileChannel#transferTo} 复制到同目录的临时文件，
+ * 中间写入替换内容，落盘后原子重命名覆盖原文件，写到一半崩溃不会损坏原文件。原文件的权限会带到新文件上，
+ * 符号链接按其指向的文件修改。
+ */
+public final class FileEditor {
+
+    // 单次映射的最大长度，超过的文件分段映射，段之间重叠 needle 长度减一
+    private static final long MAX_MAPPING = 1L << 30;
+
+    // 判断编码和换行符时读取的开头字节数
+    private static final int SNIFF_BYTES = 64 * 1024;
+
+    private FileEditor() {
+    }
+
+    /**
+     * 根据 BOM 判断编码（没有 BOM 按 UTF-8），根据第一个换行判断换行符
+     */
+    public static TextFormat detect(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(SNIFF_BYTES, channel.size()));
+            while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+                // 读满开头
+            }
+            byte[] bytes = head.array();
+            int length = head.position();
+
+            Charset charset = StandardCharsets.UTF_8;
+            int bom = 0;
+            if (length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+                bom = 3;
+            } else if (length >= 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+                charset = StandardCharsets.UTF_16LE;
+                bom = 2;
+            } else if (length >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+                charset = StandardCharsets.UTF_16BE;
+                bom = 2;
+            }
+
+            String text = new String(bytes, bom, length - bom, charset);
+            int newline = text.indexOf('\n');
+            String separator = newline > 0 && text.charAt(newline - 1) == '\r' ? "\r\n" : "\n";
+            return new TextFormat(charset, bom, separator);
+        }
+    }
+
+    /**
+     * 一趟扫描查找 needle，最多返回 limit 个匹配位置
+     *
+     * @param alignment 匹配位置相对 start 必须是它的整数倍（UTF-16 为 2）
+     */
+    public static List<Long> find(FileChannel channel, byte[] needle, long start, int alignment, int limit)
+            throws IOException {
+        List<Long> matches = new ArrayList<>();
+        if (needle.length == 0) {
+            return matches;
+        }
+        long size = channel.size();
+        long segment = start;
+        while (segment + needle.length <= size && matches.size() < limit) {
+            long mappingLength = Math.min(MAX_MAPPING, size - segment);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment, mappingLength);
+            int last = (int) mappingLength - needle.length;
+            byte first = needle[0];
+            for (int i = 0; i <= last; i++) {
+                if (buffer.get(i) != first || (segment + i - start) % alignment != 0) {
+                    continue;
+                }
+                int j = 1;
+                while (j < needle.length && buffer.get(i + j) == needle[j]) {
+                    j++;
+                }
+                if (j == needle.length) {
+                    matches.add(segment + i);
+                    if (matches.size() == limit) {
+                        return matches;
+                    }
+                    // 不计重叠的匹配，与 String.indexOf 逐个跳过的计数方式一致
+                    i += needle.length - 1;
+                }
+            }
+            if (segment + mappingLength >= size) {
+                break;
+            }
+            long next = segment + last + 1;
+            // 上一段最后一个匹配可能越过段尾
+            if (!matches.isEmpty() && matches.get(matches.size() - 1) + needle.length > next) {
+                next = matches.get(matches.size() - 1) + needle.length;
+            }
+            segment = next;
+        }
+        return matches;
+    }
+
+    /**
+     * 文件在 offset 处的内容是否与 bytes 相同
+     */
+    public static boolean regionMatches(FileChannel channel, long offset, byte[] bytes) throws IOException {
+        if (offset < 0 || offset + bytes.length > channel.size()) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return Arrays.equals(buffer.array(), bytes);
+    }
+
+    /**
+     * 把文件 [offset, offset + length) 替换为 replacement，经临时文件原子写回。需要复制整个文件，开销与文件大小成正比
+     */
+    public static void splice(Path file, long offset, long length, byte[] replacement) throws IOException {
+        Path target = file.toRealPath();
+        Path temp = createTemp(target);
+        try {
+            try (FileChannel source = FileChannel.open(target, StandardOpenOption.READ);
+                 FileChannel output = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long size = source.size();
+                if (offset < 0 || offset + length > size) {
+                    throw new IOException("Edit range [" + offset + ", " + (offset + length) + ") is outside " + file);
+                }
+                transfer(source, 0, offset, output);
+                ByteBuffer buffer = ByteBuffer.wrap(replacement);
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                transfer(source, offset + length, size - offset - length, output);
+                output.force(false);
+            }
+            replace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 原位覆盖文件 [offset, offset + replacement.length)，文件长度不变。开销与写入的字节数成正比，
+     * 但不经临时文件，写入中途失败时这一段可能只写了一部分
+     */
+    public static void overwrite(Path file, long offset, byte[] replacement) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (offset < 0 || offset + replacement.length > channel.size()) {
+                throw new IOException("Edit range [" + offset + ", " + (offset + replacement.length) + ") is outside "
+                        + file);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(replacement);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * 经临时文件原子写入整个文件，文件不存在时创建
+     */
+    public static void write(Path file, byte[] content) throws IOException {
+        Path target = Files.exists(file) ? file.toRealPath() : file.toAbsolutePath();
+        Path temp = createTemp(target);
+        try {
+            try (FileChannel output = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                output.force(false);
+            }
+            replace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Path createTemp(Path target) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        if (Files.exists(target)) {
+            PosixFileAttributeView source = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+            PosixFileAttributeView copy = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+            if (source != null && copy != null) {
+                copy.setPermissions(source.readAttributes().permissions());
+            }
+        }
+        return temp;
+    }
+
+    private static void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target)
+            throws IOException {
+        long done = 0;
+        while (done < count) {
+            long transferred = source.transferTo(position + done, count - done, target);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of file while copying");
+            }
+            done += transferred;
+        }
+    }
+
+    /**
+     * 文件的编码和换行符
+     *
+     * @param bomLength BOM 的字节数，没有 BOM 时为 0
+     */
+    public record TextFormat(Charset charset, int bomLength, String lineSeparator) {
+
+        /**
+         * 字符在该编码下的最小字节数，匹配位置须按它对齐
+         */
+        public int alignment() {
+            return charset == StandardCharsets.UTF_16LE || charset == StandardCharsets.UTF_16BE ? 2 : 1;
+        }
+
+        public byte[] encode(String text) {
+            return text.getBytes(charset);
+        }
+
+        /**
+         * 把文本中单独的 \n 换成文件使用的换行符
+         */
+        public String withLineSeparator(String text) {
+            if (lineSeparator.equals("\n")) {
+                return text;
+            }
+            return text.replace("\r\n", "\n").replace("\n", lineSeparator);
+        }
+
+        /**
+         * 去掉开头的 BOM 后解码整个文件的内容
+         */
+        public String decodeFile(byte[] bytes) {
+            return new String(bytes, bomLength, bytes.length - bomLength, charset);
+        }
+
+        /**
+         * 按该编码编码文本，原文件有 BOM 时保留
+         */
+        public byte[] encodeFile(String text) {
+            byte[] body = encode(text);
+            if (bomLength == 0) {
+                return body;
+            }
+            byte[] bom = charset == StandardCharsets.UTF_8
+                    ? new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}
+                    : charset == StandardCharsets.UTF_16LE
+                    ? new byte[]{(byte) 0xFF, (byte) 0xFE}
+                    : new byte[]{(byte) 0xFE, (byte) 0xFF};
+            byte[] result = new byte[bom.length + body.length];
+            System.arraycopy(bom, 0, result, 0, bom.length);
+            System.arraycopy(body, 0, result, bom.length, body.length);
+            return result;
+        }
+    }
+}
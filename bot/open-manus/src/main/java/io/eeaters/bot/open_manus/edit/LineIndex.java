@@ -0,0 +1,237 @@
+package io.eeaters.bot.open_manus.edit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件的行偏移索引，每 {@link #STRIDE} 行记一个起始偏移，多 GB 的文件索引也只有几 MB。
+ * <p>
+ * 建索引时按 8 字节一组（SWAR）查找换行符，只扫描一次；之后读取任意行号范围只需从最近的检查点往后读，
+ * 与文件大小无关。以 \n 分行，行尾的 \r 在读取时去掉。索引记录建立时的修改时间、大小和 inode，任何一项变化即失效。
+ */
+public final class LineIndex {
+
+    static final int STRIDE = 64;
+
+    private static final long MAX_MAPPING = 1L << 30;
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final int READ_BLOCK = 64 * 1024;
+
+    private final long size;
+
+    private final long modifiedNanos;
+
+    private final Object fileKey;
+
+    private final long lineCount;
+
+    // checkpoints[i] 为第 i * STRIDE + 1 行的起始偏移
+    private final long[] checkpoints;
+
+    private LineIndex(long size, long modifiedNanos, Object fileKey, long lineCount, long[] checkpoints) {
+        this.size = size;
+        this.modifiedNanos = modifiedNanos;
+        this.fileKey = fileKey;
+        this.lineCount = lineCount;
+        this.checkpoints = checkpoints;
+    }
+
+    public static LineIndex build(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] checkpoints = new long[16];
+            checkpoints[0] = 0;
+            int count = 1;
+            long newlines = 0;
+
+            for (long segment = 0; segment < size; segment += MAX_MAPPING) {
+                long length = Math.min(MAX_MAPPING, size - segment);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment, length);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                int limit = (int) length;
+                int i = 0;
+                for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+                    long word = buffer.getLong(i) ^ NEWLINES;
+                    // 等于 \n 的字节变成 0，这里把每个为 0 的字节的最高位置 1，没有跨字节进位
+                    long zeros = ~(((word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | word | LOW_SEVEN_BITS);
+                    while (zeros != 0) {
+                        int index = i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+                        if (++newlines % STRIDE == 0) {
+                            if (count == checkpoints.length) {
+                                checkpoints = Arrays.copyOf(checkpoints, count * 2);
+                            }
+                            checkpoints[count++] = segment + index + 1;
+                        }
+                        zeros &= zeros - 1;
+                    }
+                }
+                for (; i < limit; i++) {
+                    if (buffer.get(i) == '\n' && ++newlines % STRIDE == 0) {
+                        if (count == checkpoints.length) {
+                            checkpoints = Arrays.copyOf(checkpoints, count * 2);
+                        }
+                        checkpoints[count++] = segment + i + 1;
+                    }
+                }
+            }
+
+            // 最后一行没有换行符时也算一行
+            long lineCount = newlines;
+            if (size > 0 && !endsWithNewline(channel, size)) {
+                lineCount++;
+            }
+            // 文件以换行结尾且行数正好是 STRIDE 的倍数时，最后一个检查点指向文件末尾，不对应任何行
+            if (count > 1 && checkpoints[count - 1] >= size) {
+                count--;
+            }
+            return new LineIndex(size, attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    attributes.fileKey(), lineCount, Arrays.copyOf(checkpoints, count));
+        }
+    }
+
+    /**
+     * 文件自建索引后没有变化
+     */
+    public boolean isValid(BasicFileAttributes attributes) {
+        return attributes.size() == size
+                && attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) == modifiedNanos
+                && Objects.equals(attributes.fileKey(), fileKey);
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 依次读取 [startLine, endLine] 行（从 1 开始），visitor 返回 false 时提前结束。
+     * 超过 maxLineBytes 的行只交出开头部分。
+     */
+    public void forEachLine(FileChannel channel, long startLine, long endLine, int maxLineBytes, LineVisitor visitor)
+            throws IOException {
+        if (startLine < 1 || startLine > lineCount || endLine < startLine) {
+            return;
+        }
+        endLine = Math.min(endLine, lineCount);
+        int checkpoint = (int) ((startLine - 1) / STRIDE);
+        long line = (long) checkpoint * STRIDE + 1;
+        long position = checkpoints[checkpoint];
+
+        ByteBuffer block = ByteBuffer.allocate(READ_BLOCK);
+        ByteArrayOutputStream current = new ByteArrayOutputStream();
+        boolean clipped = false;
+        while (position < size && line <= endLine) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                break;
+            }
+            byte[] bytes = block.array();
+            int from = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                if (line >= startLine) {
+                    clipped |= append(current, bytes, from, i - from, maxLineBytes);
+                    if (!visitor.visit(line, trimCarriageReturn(current.toByteArray()), clipped)) {
+                        return;
+                    }
+                }
+                current.reset();
+                clipped = false;
+                from = i + 1;
+                if (++line > endLine) {
+                    return;
+                }
+            }
+            if (line >= startLine) {
+                clipped |= append(current, bytes, from, read - from, maxLineBytes);
+            }
+            position += read;
+        }
+        // 最后一行没有换行符
+        if (line <= endLine && line >= startLine && line == lineCount) {
+            visitor.visit(line, trimCarriageReturn(current.toByteArray()), clipped);
+        }
+    }
+
+    /**
+     * 第 line 行（从 1 开始）的起始偏移，从最近的检查点往后数换行；line 超过行数时返回文件大小
+     */
+    public long lineStart(FileChannel channel, long line) throws IOException {
+        if (line < 1) {
+            throw new IllegalArgumentException("Line number must be positive: " + line);
+        }
+        if (line > lineCount) {
+            return size;
+        }
+        int checkpoint = (int) ((line - 1) / STRIDE);
+        long current = (long) checkpoint * STRIDE + 1;
+        long position = checkpoints[checkpoint];
+
+        ByteBuffer block = ByteBuffer.allocate(READ_BLOCK);
+        while (current < line) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                throw new IOException("Unexpected end of file while locating line " + line);
+            }
+            byte[] bytes = block.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n' && ++current == line) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return position;
+    }
+
+    private static boolean append(ByteArrayOutputStream target, byte[] bytes, int offset, int length, int max) {
+        int room = max - target.size();
+        if (room <= 0) {
+            return length > 0;
+        }
+        target.write(bytes, offset, Math.min(room, length));
+        return length > room;
+    }
+
+    private static byte[] trimCarriageReturn(byte[] line) {
+        return line.length > 0 && line[line.length - 1] == '\r' ? Arrays.copyOf(line, line.length - 1) : line;
+    }
+
+    private static boolean endsWithNewline(FileChannel channel, long size) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        return last.get(0) == '\n';
+    }
+
+    @FunctionalInterface
+    public interface LineVisitor {
+        /**
+         * @param clipped 行过长，只给出了开头部分
+         * @return 是否继续读取
+         */
+        boolean visit(long line, byte[] content, boolean clipped);
+    }
+}
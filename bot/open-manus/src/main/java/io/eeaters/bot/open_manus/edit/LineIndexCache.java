@@ -0,0 +1,53 @@
+package io.eeaters.bot.open_manus.edit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按文件缓存 {@link LineIndex}，最近最少使用的先淘汰。取用时核对修改时间、大小和 inode，文件变化后重建。
+ */
+@Component
+public class LineIndexCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LineIndexCache.class);
+
+    private final Map<Path, LineIndex> indexes;
+
+    public LineIndexCache(@Value("${openmanus.line-index.max-files:32}") int maxFiles) {
+        this.indexes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, LineIndex> eldest) {
+                return size() > maxFiles;
+            }
+        };
+    }
+
+    public LineIndex get(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        synchronized (indexes) {
+            LineIndex index = indexes.get(file);
+            if (index != null && index.isValid(attributes)) {
+                return index;
+            }
+        }
+
+        // 建索引要扫描整个文件，不持有锁，同一文件并发建立时以后完成的为准
+        long start = System.nanoTime();
+        LineIndex index = LineIndex.build(file);
+        logger.debug("Indexed {} lines of {} in {} ms", index.getLineCount(), file,
+                (System.nanoTime() - start) / 1_000_000);
+        synchronized (indexes) {
+            indexes.put(file, index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,250 @@
+package io.eeaters.bot.open_manus.network;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * 在 JVM 内完成的网络探测：DNS 解析、TCP 连接、HTTP HEAD 和可达性检测，不启动 ping、curl、telnet 等外部命令。
+ * <p>
+ * 多个目标在虚拟线程上并发探测，总耗时约等于最慢的一个。每个目标受单独的超时限制，失败只体现在该目标的结果里。
+ * HTTP 请求共用一个 {@link HttpClient}，不跟随重定向，与 curl -I 一致。
+ */
+@Component
+public class NetworkProbe {
+
+    // 单次调用的目标数上限，避免一次探测打开过多连接
+    private static final int MAX_TARGETS = 64;
+
+    private final Duration timeout;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final HttpClient httpClient;
+
+    public NetworkProbe(@Value("${openmanus.network.timeout:5s}") Duration timeout) {
+        this.timeout = timeout;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * 解析主机名的全部地址
+     */
+    public List<DnsResult> resolve(List<String> hosts) {
+        return probeAll(hosts, host -> () -> {
+            long start = System.nanoTime();
+            try {
+                List<String> addresses = Arrays.stream(InetAddress.getAllByName(host))
+                        .map(InetAddress::getHostAddress)
+                        .toList();
+                return new DnsResult(host, addresses, elapsedMillis(start), null);
+            } catch (IOException e) {
+                return new DnsResult(host, List.of(), elapsedMillis(start), describe(e));
+            }
+        }, (host, error) -> new DnsResult(host, List.of(), timeout.toMillis(), error));
+    }
+
+    /**
+     * 对每个主机和端口的组合建立一次 TCP 连接，记录 DNS 和连接各自的耗时
+     */
+    public List<ConnectResult> connect(List<String> hosts, List<Integer> ports) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String host : hosts) {
+            for (Integer port : ports) {
+                endpoints.add(new Endpoint(host, port));
+            }
+        }
+        return probeAll(endpoints, endpoint -> () -> {
+            long start = System.nanoTime();
+            InetAddress address;
+            try {
+                address = InetAddress.getByName(endpoint.host());
+            } catch (IOException e) {
+                return new ConnectResult(endpoint.host(), endpoint.port(), null, false, elapsedMillis(start), 0,
+                        describe(e));
+            }
+            long dnsMillis = elapsedMillis(start);
+            long connectStart = System.nanoTime();
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(address, endpoint.port()), (int) timeout.toMillis());
+                return new ConnectResult(endpoint.host(), endpoint.port(), address.getHostAddress(), true, dnsMillis,
+                        elapsedMillis(connectStart), null);
+            } catch (IOException e) {
+                return new ConnectResult(endpoint.host(), endpoint.port(), address.getHostAddress(), false, dnsMillis,
+                        elapsedMillis(connectStart), describe(e));
+            }
+        }, (endpoint, error) -> new ConnectResult(endpoint.host(), endpoint.port(), null, false, 0,
+                timeout.toMillis(), error));
+    }
+
+    /**
+     * 发送 HTTP HEAD 请求，没有协议前缀的目标按 http:// 处理
+     */
+    public List<HttpResult> head(List<String> urls) {
+        return probeAll(urls, url -> () -> {
+            long start = System.nanoTime();
+            try {
+                HttpRequest request = HttpRequest.newBuilder(toUri(url))
+                        .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                        .timeout(timeout)
+                        .build();
+                HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                return new HttpResult(url, response.statusCode(), response.version().toString(),
+                        response.headers().firstValue("server").orElse(null),
+                        response.headers().firstValue("content-type").orElse(null),
+                        response.headers().firstValue("location").orElse(null),
+                        elapsedMillis(start), null);
+            } catch (IOException | IllegalArgumentException e) {
+                return new HttpResult(url, 0, null, null, null, null, elapsedMillis(start), describe(e));
+            }
+        }, (url, error) -> new HttpResult(url, 0, null, null, null, null, timeout.toMillis(), error));
+    }
+
+    /**
+     * 可达性检测，代替 ping。有权限时发送 ICMP echo，否则尝试连接 echo 端口（连接被拒绝也算可达）
+     *
+     * @param count 每个主机的探测次数
+     */
+    public List<PingResult> ping(List<String> hosts, int count) {
+        return probeAll(hosts, host -> () -> {
+            InetAddress address;
+            try {
+                address = InetAddress.getByName(host);
+            } catch (IOException e) {
+                return new PingResult(host, null, count, 0, 0, 0, 0, describe(e));
+            }
+            int received = 0;
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            long sum = 0;
+            // 每次探测的超时按总超时均分，整体不超过一个超时时长
+            int perAttempt = (int) Math.max(1, timeout.toMillis() / Math.max(1, count));
+            for (int i = 0; i < count; i++) {
+                long start = System.nanoTime();
+                if (address.isReachable(perAttempt)) {
+                    long rtt = elapsedMillis(start);
+                    received++;
+                    min = Math.min(min, rtt);
+                    max = Math.max(max, rtt);
+                    sum += rtt;
+                }
+            }
+            return new PingResult(host, address.getHostAddress(), count, received,
+                    received == 0 ? 0 : min, received == 0 ? 0 : sum / received, max, null);
+        }, (host, error) -> new PingResult(host, null, count, 0, 0, 0, 0, error));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        httpClient.shutdownNow();
+    }
+
+    /**
+     * 并发执行探测，按输入顺序返回；超过截止时间仍未完成的目标用 onTimeout 生成结果
+     */
+    private <T, R> List<R> probeAll(List<T> targets, Function<T, Callable<R>> probe,
+                                    TimeoutResult<T, R> onTimeout) {
+        if (targets.size() > MAX_TARGETS) {
+            throw new IllegalArgumentException("一次最多探测 " + MAX_TARGETS + " 个目标，当前为 " + targets.size());
+        }
+        List<Future<R>> futures = new ArrayList<>(targets.size());
+        for (T target : targets) {
+            futures.add(executor.submit(probe.apply(target)));
+        }
+
+        // DNS 解析不受 socket 超时控制，这里给所有目标一个统一的截止时间
+        long deadline = System.nanoTime() + timeout.toNanos() * 2;
+        List<R> results = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            Future<R> future = futures.get(i);
+            try {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                results.add(onTimeout.apply(targets.get(i), "超时"));
+            } catch (ExecutionException e) {
+                results.add(onTimeout.apply(targets.get(i), describe(e.getCause())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IllegalStateException("网络探测被中断", e);
+            }
+        }
+        return results;
+    }
+
+    private static URI toUri(String url) {
+        return URI.create(url.contains("://") ? url : "http://" + url);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static String describe(Throwable e) {
+        String message = e.getMessage();
+        return message == null ? e.getClass().getSimpleName() : e.getClass().getSimpleName() + ": " + message;
+    }
+
+    @FunctionalInterface
+    private interface TimeoutResult<T, R> {
+        R apply(T target, String error);
+    }
+
+    private record Endpoint(String host, int port) {
+    }
+
+    /**
+     * @param error 失败原因，成功时为 null
+     */
+    public record DnsResult(String host, List<String> addresses, long elapsedMillis, String error) {
+    }
+
+    /**
+     * @param dnsMillis     解析耗时
+     * @param connectMillis 建立连接（或失败）的耗时
+     */
+    public record ConnectResult(String host, int port, String address, boolean open, long dnsMillis,
+                                long connectMillis, String error) {
+    }
+
+    /**
+     * @param status 状态码，请求失败时为 0
+     */
+    public record HttpResult(String url, int status, String version, String server, String contentType,
+                             String location, long elapsedMillis, String error) {
+    }
+
+    /**
+     * @param minMillis 往返时间最小值，全部失败时为 0
+     */
+    public record PingResult(String host, String address, int sent, int received, long minMillis, long avgMillis,
+                             long maxMillis, String error) {
+    }
+}
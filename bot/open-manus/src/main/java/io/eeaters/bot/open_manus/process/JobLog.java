@@ -0,0 +1,184 @@
+package io.eeaters.bot.open_manus.process;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 后台任务的日志文件，单个文件超过上限时轮转为 .1，只保留一个旧文件，磁盘占用不超过两倍上限。
+ * <p>
+ * 读取使用按位置的 FileChannel 读，不移动写入位置，也不把整个文件读进内存。偏移量是从任务开始累计写入的字节数，
+ * 轮转后仍然有效；已经被丢弃的部分从现存最早的位置开始读。
+ */
+public class JobLog implements AutoCloseable {
+
+    private static final int BLOCK_SIZE = 8192;
+
+    private final Path current;
+
+    private final Path rotated;
+
+    private final long maxBytes;
+
+    private FileChannel currentChannel;
+
+    private FileChannel rotatedChannel;
+
+    // rotated 文件第一个字节和 current 文件第一个字节的累计偏移
+    private long rotatedStart;
+
+    private long currentStart;
+
+    private long total;
+
+    public JobLog(Path file, long maxBytes) throws IOException {
+        this.current = file;
+        this.rotated = file.resolveSibling(file.getFileName() + ".1");
+        this.maxBytes = maxBytes;
+        this.currentChannel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        if (total - currentStart + length > maxBytes && total > currentStart) {
+            rotate();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        while (buffer.hasRemaining()) {
+            currentChannel.write(buffer, total - currentStart + (length - buffer.remaining()));
+        }
+        total += length;
+    }
+
+    /**
+     * 累计写入的字节数，也是下一次写入的偏移
+     */
+    public synchronized long size() {
+        return total;
+    }
+
+    /**
+     * 仍保留在磁盘上的最早偏移
+     */
+    public synchronized long firstAvailable() {
+        return rotatedChannel != null ? rotatedStart : currentStart;
+    }
+
+    /**
+     * 从 offset 开始读取最多 length 字节
+     */
+    public synchronized Chunk read(long offset, int length) throws IOException {
+        long from = Math.max(offset, firstAvailable());
+        long to = Math.min(total, from + Math.max(0, length));
+        return new Chunk(from, to, decode(readRange(from, to)));
+    }
+
+    /**
+     * 读取最后 lines 行，最多 maxBytes 字节
+     */
+    public synchronized Chunk tail(int lines, int maxBytes) throws IOException {
+        if (lines <= 0) {
+            return new Chunk(total, total, "");
+        }
+        long start = firstAvailable();
+        long limit = Math.max(start, total - maxBytes);
+        int newlines = 0;
+        // 末尾的换行不算一行
+        long position = total;
+        if (total > start && readRange(total - 1, total)[0] == '\n') {
+            position = total - 1;
+        }
+
+        search:
+        while (position > limit) {
+            long blockStart = Math.max(limit, position - BLOCK_SIZE);
+            byte[] block = readRange(blockStart, position);
+            for (int i = block.length - 1; i >= 0; i--) {
+                if (block[i] == '\n' && ++newlines == lines) {
+                    position = blockStart + i + 1;
+                    break search;
+                }
+            }
+            position = blockStart;
+        }
+        return new Chunk(position, total, decode(readRange(position, total)));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        currentChannel.close();
+        if (rotatedChannel != null) {
+            rotatedChannel.close();
+        }
+    }
+
+    /**
+     * 关闭并删除日志文件
+     */
+    public synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(current);
+        Files.deleteIfExists(rotated);
+    }
+
+    private void rotate() throws IOException {
+        currentChannel.close();
+        if (rotatedChannel != null) {
+            rotatedChannel.close();
+        }
+        Files.move(current, rotated, StandardCopyOption.REPLACE_EXISTING);
+        rotatedChannel = FileChannel.open(rotated, StandardOpenOption.READ);
+        rotatedStart = currentStart;
+        currentStart = total;
+        currentChannel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * 按累计偏移读取 [from, to)，跨越两个文件时拼接
+     */
+    private byte[] readRange(long from, long to) throws IOException {
+        byte[] result = new byte[(int) Math.max(0, to - from)];
+        int filled = 0;
+        if (rotatedChannel != null && from < currentStart) {
+            long end = Math.min(to, currentStart);
+            filled += readFully(rotatedChannel, from - rotatedStart, result, 0, (int) (end - from));
+            from = end;
+        }
+        if (from < to) {
+            filled += readFully(currentChannel, from - currentStart, result, filled, (int) (to - from));
+        }
+        return filled == result.length ? result : Arrays.copyOf(result, filled);
+    }
+
+    private static int readFully(FileChannel channel, long position, byte[] target, int offset, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(target, offset, length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + (length - buffer.remaining()));
+            if (read < 0) {
+                break;
+            }
+        }
+        return length - buffer.remaining();
+    }
+
+    private static String decode(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取结果
+     *
+     * @param from 第一个字节的偏移
+     * @param to   最后一个字节之后的偏移，继续读取时从这里开始
+     */
+    public record Chunk(long from, long to, String text) {
+    }
+}
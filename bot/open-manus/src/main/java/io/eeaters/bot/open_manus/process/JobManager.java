@@ -0,0 +1,288 @@
+package io.eeaters.bot.open_manus.process;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 后台任务登记表。每个任务有编号、状态、退出码和资源占用，输出写入有大小上限的 {@link JobLog}。
+ * <p>
+ * 日志放在以本进程 pid 命名的目录下，退出时连同仍在运行的任务一起清理；启动时删除已不存在的进程留下的目录。
+ * 已结束的任务超过 max-finished 个时，最早结束的任务及其日志被移除。
+ */
+@Component
+public class JobManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobManager.class);
+
+    private static final long PAGE_SIZE = 4096;
+
+    private final Path logDirectory;
+
+    private final long maxLogBytes;
+
+    private final int maxFinished;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public JobManager(@Value("${openmanus.jobs.log-dir:${java.io.tmpdir}/openmanus-jobs}") String logRoot,
+                      @Value("${openmanus.jobs.max-log-bytes:10485760}") long maxLogBytes,
+                      @Value("${openmanus.jobs.max-finished:50}") int maxFinished) {
+        this.logDirectory = Paths.get(logRoot).resolve(String.valueOf(ProcessHandle.current().pid()));
+        this.maxLogBytes = maxLogBytes;
+        this.maxFinished = maxFinished;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path root = logDirectory.getParent();
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> dirs = Files.list(root)) {
+                dirs.filter(dir -> isStale(dir.getFileName().toString())).forEach(JobManager::deleteDirectory);
+            }
+        }
+        Files.createDirectories(logDirectory);
+    }
+
+    /**
+     * 在工作目录下用 bash 启动后台任务，标准输入为空
+     */
+    public JobInfo start(String command, Path workingDirectory) throws IOException {
+        String id = "job-" + sequence.incrementAndGet();
+        JobLog log = new JobLog(logDirectory.resolve(id + ".log"), maxLogBytes);
+
+        ProcessBuilder builder = new ProcessBuilder("/bin/bash", "-c", command);
+        builder.directory(workingDirectory.toFile());
+        builder.redirectErrorStream(true);
+        builder.redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")));
+        Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            log.delete();
+            throw e;
+        }
+
+        Job job = new Job(id, command, process, log, Instant.now());
+        jobs.put(id, job);
+        Thread.ofVirtual().name(id + "-log").start(() -> drain(job));
+        process.onExit().thenRun(() -> finish(job));
+        logger.info("Started {} (pid {}): {}", id, process.pid(), command);
+        return job.info();
+    }
+
+    public List<JobInfo> list() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(job -> job.startedAt))
+                .map(Job::info)
+                .toList();
+    }
+
+    public JobInfo get(String id) {
+        return job(id).info();
+    }
+
+    public JobLog.Chunk tail(String id, int lines, int maxBytes) throws IOException {
+        return job(id).log.tail(lines, maxBytes);
+    }
+
+    public JobLog.Chunk read(String id, long offset, int length) throws IOException {
+        return job(id).log.read(offset, length);
+    }
+
+    /**
+     * 终止任务及其子进程
+     */
+    public JobInfo kill(String id) {
+        Job job = job(id);
+        if (job.process.isAlive()) {
+            job.killed = true;
+            ProcessRunner.killTree(job.process.toHandle());
+        }
+        return job.info();
+    }
+
+    /**
+     * 移除已结束的任务并删除日志
+     */
+    public void remove(String id) throws IOException {
+        Job job = job(id);
+        if (job.process.isAlive()) {
+            throw new IllegalStateException("任务仍在运行: " + id);
+        }
+        jobs.remove(id);
+        job.log.delete();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Job job : jobs.values()) {
+            if (job.process.isAlive()) {
+                ProcessRunner.killTree(job.process.toHandle());
+            }
+            try {
+                job.log.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close log of {}", job.id, e);
+            }
+        }
+        jobs.clear();
+        deleteDirectory(logDirectory);
+    }
+
+    private Job job(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new IllegalArgumentException("任务不存在: " + id);
+        }
+        return job;
+    }
+
+    private void drain(Job job) {
+        byte[] chunk = new byte[8192];
+        try (InputStream input = job.process.getInputStream()) {
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                job.log.write(chunk, 0, read);
+            }
+        } catch (IOException e) {
+            logger.debug("Output of {} closed: {}", job.id, e.getMessage());
+        }
+    }
+
+    private void finish(Job job) {
+        job.endedAt = Instant.now();
+        logger.info("{} finished with exit code {}", job.id, job.process.exitValue());
+
+        List<Job> finished = new ArrayList<>();
+        for (Job candidate : jobs.values()) {
+            if (candidate.endedAt != null) {
+                finished.add(candidate);
+            }
+        }
+        if (finished.size() <= maxFinished) {
+            return;
+        }
+        finished.sort(Comparator.comparing(candidate -> candidate.endedAt));
+        for (Job evicted : finished.subList(0, finished.size() - maxFinished)) {
+            jobs.remove(evicted.id);
+            try {
+                evicted.log.delete();
+            } catch (IOException e) {
+                logger.warn("Failed to delete log of {}", evicted.id, e);
+            }
+        }
+    }
+
+    private static boolean isStale(String name) {
+        try {
+            return ProcessHandle.of(Long.parseLong(name)).isEmpty();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static void deleteDirectory(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.debug("Failed to delete {}", dir, e);
+        }
+    }
+
+    public enum Status {
+        RUNNING, EXITED, KILLED
+    }
+
+    /**
+     * 任务快照
+     *
+     * @param exitCode  退出码，运行中为 null
+     * @param cpuTime   任务及其子进程累计 CPU 时间，只在运行中可取得，结束后为最后一次采样
+     * @param rssBytes  任务及其子进程的常驻内存，结束后为 0
+     * @param logBytes  累计输出字节数
+     */
+    public record JobInfo(String id, String command, long pid, Status status, Integer exitCode, Instant startedAt,
+                          Duration elapsed, Duration cpuTime, long rssBytes, long logBytes) {
+    }
+
+    private static final class Job {
+
+        final String id;
+
+        final String command;
+
+        final Process process;
+
+        final JobLog log;
+
+        final Instant startedAt;
+
+        volatile Instant endedAt;
+
+        volatile boolean killed;
+
+        volatile Duration lastCpuTime = Duration.ZERO;
+
+        Job(String id, String command, Process process, JobLog log, Instant startedAt) {
+            this.id = id;
+            this.command = command;
+            this.process = process;
+            this.log = log;
+            this.startedAt = startedAt;
+        }
+
+        JobInfo info() {
+            boolean alive = process.isAlive();
+            long rss = 0;
+            if (alive) {
+                Duration cpu = Duration.ZERO;
+                List<ProcessHandle> tree = new ArrayList<>();
+                tree.add(process.toHandle());
+                process.descendants().forEach(tree::add);
+                for (ProcessHandle handle : tree) {
+                    cpu = cpu.plus(handle.info().totalCpuDuration().orElse(Duration.ZERO));
+                    rss += residentBytes(handle.pid());
+                }
+                lastCpuTime = cpu;
+            }
+            Status status = alive ? Status.RUNNING : killed ? Status.KILLED : Status.EXITED;
+            Instant end = endedAt != null ? endedAt : Instant.now();
+            return new JobInfo(id, command, process.pid(), status, alive ? null : process.exitValue(), startedAt,
+                    Duration.between(startedAt, end), lastCpuTime, rss, log.size());
+        }
+
+        /**
+         * 从 /proc/<pid>/statm 读取常驻内存页数，非 Linux 或进程已退出时返回 0
+         */
+        private static long residentBytes(long pid) {
+            try {
+                String[] fields = Files.readString(Path.of("/proc", String.valueOf(pid), "statm")).trim().split(" ");
+                return Long.parseLong(fields[1]) * PAGE_SIZE;
+            } catch (IOException | RuntimeException e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.eeaters.bot.open_manus.process;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 有上限的进程输出缓冲：保留最先写入的 head 字节和最后写入的 tail 字节，中间部分只计数。
+ * 输出再多，占用的内存也固定在 head + tail。
+ */
+public class OutputBuffer {
+
+    private final byte[] head;
+
+    private int headSize;
+
+    // tail 是环形缓冲，tailStart 指向最早的字节
+    private final byte[] tail;
+
+    private int tailStart;
+
+    private int tailSize;
+
+    private long total;
+
+    public OutputBuffer(int headLimit, int tailLimit) {
+        this.head = new byte[headLimit];
+        this.tail = new byte[tailLimit];
+    }
+
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        total += length;
+
+        int toHead = Math.min(length, head.length - headSize);
+        System.arraycopy(bytes, offset, head, headSize, toHead);
+        headSize += toHead;
+        offset += toHead;
+        length -= toHead;
+
+        int capacity = tail.length;
+        if (length == 0 || capacity == 0) {
+            return;
+        }
+        if (length >= capacity) {
+            System.arraycopy(bytes, offset + length - capacity, tail, 0, capacity);
+            tailStart = 0;
+            tailSize = capacity;
+            return;
+        }
+        int position = (tailStart + tailSize) % capacity;
+        int first = Math.min(length, capacity - position);
+        System.arraycopy(bytes, offset, tail, position, first);
+        System.arraycopy(bytes, offset + first, tail, 0, length - first);
+        int overflow = tailSize + length - capacity;
+        if (overflow > 0) {
+            tailStart = (tailStart + overflow) % capacity;
+            tailSize = capacity;
+        } else {
+            tailSize += length;
+        }
+    }
+
+    /**
+     * 写入的总字节数
+     */
+    public synchronized long getTotalBytes() {
+        return total;
+    }
+
+    /**
+     * 超出 head + tail 被丢弃的字节数
+     */
+    public synchronized long getDroppedBytes() {
+        return total - headSize - tailSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        byte[] tailBytes = new byte[tailSize];
+        int first = Math.min(tailSize, tail.length - tailStart);
+        System.arraycopy(tail, tailStart, tailBytes, 0, first);
+        System.arraycopy(tail, 0, tailBytes, first, tailSize - first);
+
+        long dropped = getDroppedBytes();
+        if (dropped == 0) {
+            byte[] all = new byte[headSize + tailSize];
+            System.arraycopy(head, 0, all, 0, headSize);
+            System.arraycopy(tailBytes, 0, all, headSize, tailSize);
+            return new String(all, StandardCharsets.UTF_8);
+        }
+        return new String(head, 0, headSize, StandardCharsets.UTF_8)
+                + "\n... [省略 " + dropped + " 字节] ...\n"
+                + new String(tailBytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,320 @@
+package io.eeaters.bot.open_manus.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 进程和端口查询，直接读取 /proc，不启动 ps、lsof 等外部命令。
+ * <p>
+ * 进程列表以 {@link ProcessHandle#allProcesses()} 为准，CPU、内存、父进程取自 /proc/&lt;pid&gt;/stat；
+ * 没有 /proc 的系统退回 {@link ProcessHandle.Info}，内存为 0。
+ * 端口占用解析 /proc/net/{tcp,tcp6,udp,udp6}，再扫描 /proc/&lt;pid&gt;/fd 把 socket inode 对应到进程，
+ * 没有权限读取的进程不会出现在结果里。
+ */
+@Component
+public class ProcessInspector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessInspector.class);
+
+    private static final Path PROC = Path.of("/proc");
+
+    // Linux 上 USER_HZ 固定为 100
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private static final long PAGE_SIZE = 4096;
+
+    private static final String[] TCP_STATES = {
+            "", "ESTABLISHED", "SYN_SENT", "SYN_RECV", "FIN_WAIT1", "FIN_WAIT2", "TIME_WAIT",
+            "CLOSE", "CLOSE_WAIT", "LAST_ACK", "LISTEN", "CLOSING"
+    };
+
+    private final Instant bootTime = readBootTime();
+
+    /**
+     * 列出进程
+     *
+     * @param filter 命令行或用户包含的文本，忽略大小写，可为空
+     * @param sortBy cpu、rss 或 pid（默认）
+     */
+    public Page<ProcessEntry> list(String filter, String sortBy, int offset, int limit) {
+        String needle = filter == null || filter.isBlank() ? null : filter.toLowerCase(Locale.ROOT);
+        Instant now = Instant.now();
+
+        List<ProcessEntry> matched = new ArrayList<>();
+        ProcessHandle.allProcesses().forEach(handle -> {
+            ProcessEntry entry = describe(handle, now);
+            if (entry != null && (needle == null
+                    || entry.command().toLowerCase(Locale.ROOT).contains(needle)
+                    || entry.user().toLowerCase(Locale.ROOT).contains(needle))) {
+                matched.add(entry);
+            }
+        });
+
+        matched.sort(switch (sortBy == null ? "pid" : sortBy.toLowerCase(Locale.ROOT)) {
+            case "cpu" -> Comparator.comparing(ProcessEntry::cpuTime).reversed();
+            case "rss", "mem", "memory" -> Comparator.comparingLong(ProcessEntry::rssBytes).reversed();
+            default -> Comparator.comparingLong(ProcessEntry::pid);
+        });
+        int from = Math.min(Math.max(0, offset), matched.size());
+        int to = Math.min(matched.size(), from + Math.max(0, limit));
+        return new Page<>(List.copyOf(matched.subList(from, to)), matched.size(), from);
+    }
+
+    /**
+     * 查询单个进程，不存在时为空
+     */
+    public Optional<ProcessEntry> get(long pid) {
+        return ProcessHandle.of(pid).map(handle -> describe(handle, Instant.now()));
+    }
+
+    /**
+     * 查询本地或远端端口为 port 的 TCP/UDP 套接字及其所属进程
+     */
+    public List<SocketEntry> portOwners(int port) {
+        List<RawSocket> sockets = new ArrayList<>();
+        for (String protocol : List.of("tcp", "tcp6", "udp", "udp6")) {
+            readSockets(protocol, port, sockets);
+        }
+        if (sockets.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Long> owners = findOwners(sockets.stream().map(RawSocket::inode).collect(Collectors.toSet()));
+        Instant now = Instant.now();
+        Map<Long, ProcessEntry> processes = new HashMap<>();
+        List<SocketEntry> result = new ArrayList<>();
+        for (RawSocket socket : sockets) {
+            Long pid = owners.get(socket.inode());
+            ProcessEntry process = pid == null ? null
+                    : processes.computeIfAbsent(pid, p -> get(p).orElse(null));
+            result.add(new SocketEntry(socket.protocol(), socket.local(), socket.remote(), socket.state(),
+                    pid, process == null ? null : process.command()));
+        }
+        return result;
+    }
+
+    private ProcessEntry describe(ProcessHandle handle, Instant now) {
+        ProcessHandle.Info info = handle.info();
+        String user = info.user().orElse("?");
+        long pid = handle.pid();
+
+        String[] stat = readStat(pid);
+        if (stat != null) {
+            // stat 的字段从 comm 之后开始编号：stat[0] 为状态（第3个字段）
+            String state = stat[0];
+            long ppid = Long.parseLong(stat[1]);
+            long ticks = Long.parseLong(stat[11]) + Long.parseLong(stat[12]);
+            long startTicks = Long.parseLong(stat[19]);
+            long rss = Long.parseLong(stat[21]) * PAGE_SIZE;
+            Duration cpu = Duration.ofMillis(ticks * 1000 / CLOCK_TICKS_PER_SECOND);
+            Instant started = bootTime == null ? info.startInstant().orElse(null)
+                    : bootTime.plusMillis(startTicks * 1000 / CLOCK_TICKS_PER_SECOND);
+            return new ProcessEntry(pid, ppid, user, state, cpu, cpuPercent(cpu, started, now), rss, started,
+                    readCommandLine(pid, info));
+        }
+
+        if (!handle.isAlive()) {
+            return null;
+        }
+        Duration cpu = info.totalCpuDuration().orElse(Duration.ZERO);
+        Instant started = info.startInstant().orElse(null);
+        long ppid = handle.parent().map(ProcessHandle::pid).orElse(0L);
+        return new ProcessEntry(pid, ppid, user, "?", cpu, cpuPercent(cpu, started, now), 0, started,
+                info.commandLine().orElse(info.command().orElse("")));
+    }
+
+    /**
+     * 进程生命周期内的平均 CPU 占用
+     */
+    private static double cpuPercent(Duration cpu, Instant started, Instant now) {
+        if (started == null) {
+            return 0;
+        }
+        long elapsed = Duration.between(started, now).toMillis();
+        return elapsed <= 0 ? 0 : cpu.toMillis() * 100.0 / elapsed;
+    }
+
+    /**
+     * 读取 /proc/&lt;pid&gt;/stat 中 comm 之后的字段，comm 可能含空格和括号，从最后一个右括号处切分
+     */
+    private static String[] readStat(long pid) {
+        try {
+            String stat = Files.readString(PROC.resolve(pid + "/stat"), StandardCharsets.US_ASCII);
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+            return fields.length > 21 ? fields : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String readCommandLine(long pid, ProcessHandle.Info info) {
+        try {
+            byte[] bytes = Files.readAllBytes(PROC.resolve(pid + "/cmdline"));
+            int length = bytes.length;
+            while (length > 0 && bytes[length - 1] == 0) {
+                length--;
+            }
+            if (length > 0) {
+                return new String(bytes, 0, length, StandardCharsets.UTF_8).replace('\0', ' ');
+            }
+            // 内核线程没有命令行，与 ps 一样显示 [comm]
+            return "[" + Files.readString(PROC.resolve(pid + "/comm")).trim() + "]";
+        } catch (IOException | RuntimeException e) {
+            return info.commandLine().orElse(info.command().orElse(""));
+        }
+    }
+
+    private static Instant readBootTime() {
+        try {
+            for (String line : Files.readAllLines(PROC.resolve("stat"))) {
+                if (line.startsWith("btime ")) {
+                    return Instant.ofEpochSecond(Long.parseLong(line.substring(6).trim()));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Boot time unavailable: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 解析 /proc/net/&lt;protocol&gt;，收集本地或远端端口匹配的行
+     */
+    private static void readSockets(String protocol, int port, List<RawSocket> target) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(PROC.resolve("net/" + protocol));
+        } catch (IOException e) {
+            return;
+        }
+        String hexPort = String.format(":%04X", port);
+        boolean tcp = protocol.startsWith("tcp");
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            // 先做字符串匹配，绝大多数行不需要拆分
+            if (!line.contains(hexPort)) {
+                continue;
+            }
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length < 10) {
+                continue;
+            }
+            String local = fields[1];
+            String remote = fields[2];
+            if (!local.endsWith(hexPort) && !remote.endsWith(hexPort)) {
+                continue;
+            }
+            int state = Integer.parseInt(fields[3], 16);
+            String stateName = !tcp ? (state == 7 ? "UNCONN" : "ESTABLISHED")
+                    : state < TCP_STATES.length ? TCP_STATES[state] : fields[3];
+            target.add(new RawSocket(protocol, decodeAddress(local), decodeAddress(remote), stateName,
+                    Long.parseLong(fields[9])));
+        }
+    }
+
+    /**
+     * 把 "0100007F:1F90" 形式的地址转成 "127.0.0.1:8080"，地址按 32 位字以主机字节序（小端）存放
+     */
+    static String decodeAddress(String hex) {
+        int colon = hex.indexOf(':');
+        String ip = hex.substring(0, colon);
+        int port = Integer.parseInt(hex.substring(colon + 1), 16);
+        byte[] bytes = new byte[ip.length() / 2];
+        for (int word = 0; word < bytes.length / 4; word++) {
+            for (int b = 0; b < 4; b++) {
+                int index = word * 8 + (3 - b) * 2;
+                bytes[word * 4 + b] = (byte) Integer.parseInt(ip.substring(index, index + 2), 16);
+            }
+        }
+        try {
+            String host = InetAddress.getByAddress(bytes).getHostAddress();
+            return (bytes.length == 16 ? "[" + host + "]" : host) + ":" + port;
+        } catch (UnknownHostException e) {
+            return hex;
+        }
+    }
+
+    /**
+     * 扫描所有进程的 fd 目录，找到持有这些 socket inode 的进程
+     */
+    private static Map<Long, Long> findOwners(Set<Long> inodes) {
+        Map<Long, Long> owners = new HashMap<>();
+        try (DirectoryStream<Path> processes = Files.newDirectoryStream(PROC, "[0-9]*")) {
+            for (Path process : processes) {
+                long pid = Long.parseLong(process.getFileName().toString());
+                try (DirectoryStream<Path> fds = Files.newDirectoryStream(process.resolve("fd"))) {
+                    for (Path fd : fds) {
+                        String link;
+                        try {
+                            link = Files.readSymbolicLink(fd).toString();
+                        } catch (IOException e) {
+                            continue;
+                        }
+                        if (link.startsWith("socket:[")) {
+                            long inode = Long.parseLong(link.substring(8, link.length() - 1));
+                            if (inodes.contains(inode)) {
+                                owners.putIfAbsent(inode, pid);
+                            }
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // 进程已退出或无权限
+                }
+                if (owners.size() == inodes.size()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Failed to scan /proc: {}", e.getMessage());
+        }
+        return owners;
+    }
+
+    private record RawSocket(String protocol, String local, String remote, String state, long inode) {
+    }
+
+    /**
+     * @param state      进程状态（R、S、D、Z 等）
+     * @param cpuTime    累计 CPU 时间（用户态加内核态）
+     * @param cpuPercent 生命周期内的平均 CPU 占用，与 ps 的 %CPU 含义相同
+     * @param rssBytes   常驻内存
+     */
+    public record ProcessEntry(long pid, long ppid, String user, String state, Duration cpuTime, double cpuPercent,
+                               long rssBytes, Instant startedAt, String command) {
+    }
+
+    /**
+     * @param pid     所属进程，无法确定时为 null
+     * @param command 所属进程的命令行
+     */
+    public record SocketEntry(String protocol, String local, String remote, String state, Long pid,
+                              String command) {
+    }
+
+    /**
+     * @param total  过滤后的总数
+     * @param offset 本页第一项在过滤结果中的位置
+     */
+    public record Page<T>(List<T> items, int total, int offset) {
+    }
+}
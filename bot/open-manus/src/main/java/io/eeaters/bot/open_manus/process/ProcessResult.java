@@ -0,0 +1,13 @@
+package io.eeaters.bot.open_manus.process;
+
+/**
+ * 进程执行结果
+ *
+ * @param exitCode      退出码，超时被终止时为 -1
+ * @param output        合并后的 stdout/stderr，超出上限时只保留开头和结尾
+ * @param timedOut      是否因超时被终止
+ * @param droppedBytes  被省略的输出字节数
+ * @param elapsedMillis 执行耗时
+ */
+public record ProcessResult(int exitCode, String output, boolean timedOut, long droppedBytes, long elapsedMillis) {
+}
@@ -0,0 +1,180 @@
+package io.eeaters.bot.open_manus.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 执行外部命令。输出由虚拟线程并发读取到 {@link OutputBuffer}，进程不会因管道写满而阻塞；
+ * 超时以墙钟时间计算，到期后连同子进程一起强制终止，返回已收到的部分输出。
+ */
+@Component
+public class ProcessRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessRunner.class);
+
+    // 工具调用期间由调用方绑定，用于实时推送输出片段
+    private static final ThreadLocal<Consumer<String>> OUTPUT_LISTENER = new ThreadLocal<>();
+
+    // 进程退出后等待输出读完的时间；后台子进程仍持有管道时不再等待
+    private static final long DRAIN_GRACE_MILLIS = 2000;
+
+    private final int headBytes;
+
+    private final int tailBytes;
+
+    private final Set<Process> running = ConcurrentHashMap.newKeySet();
+
+    public ProcessRunner(@Value("${openmanus.process.output-head-bytes:16384}") int headBytes,
+                         @Value("${openmanus.process.output-tail-bytes:49152}") int tailBytes) {
+        this.headBytes = headBytes;
+        this.tailBytes = tailBytes;
+    }
+
+    /**
+     * 在 action 执行期间，把当前线程上启动的进程输出实时交给 listener
+     */
+    public static <T> T withOutputListener(Consumer<String> listener, Supplier<T> action) {
+        Consumer<String> previous = OUTPUT_LISTENER.get();
+        OUTPUT_LISTENER.set(listener);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                OUTPUT_LISTENER.remove();
+            } else {
+                OUTPUT_LISTENER.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 当前线程绑定的输出回调，没有时返回 null
+     */
+    public static Consumer<String> currentOutputListener() {
+        return OUTPUT_LISTENER.get();
+    }
+
+    public ProcessResult run(List<String> command, Path workingDirectory, Duration timeout)
+            throws IOException, InterruptedException {
+        return run(command, workingDirectory, timeout, OUTPUT_LISTENER.get());
+    }
+
+    /**
+     * 执行命令直到退出或超时，stderr 合并到 stdout
+     *
+     * @param listener 输出片段回调，在读取线程上调用，可为 null
+     */
+    public ProcessResult run(List<String> command, Path workingDirectory, Duration timeout, Consumer<String> listener)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(workingDirectory.toFile());
+        builder.redirectErrorStream(true);
+
+        Process process = builder.start();
+        running.add(process);
+        OutputBuffer buffer = new OutputBuffer(headBytes, tailBytes);
+        Thread drainer = Thread.ofVirtual()
+                .name("process-drain-" + process.pid())
+                .start(() -> drain(process.getInputStream(), buffer, listener));
+
+        try {
+            boolean finished = process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (!finished) {
+                logger.warn("Process {} timed out after {}, killing process tree", process.pid(), timeout);
+                killTree(process.toHandle());
+                process.waitFor(5, TimeUnit.SECONDS);
+            }
+            drainer.join(DRAIN_GRACE_MILLIS);
+            return new ProcessResult(finished ? process.exitValue() : -1, buffer.toString(), !finished,
+                    buffer.getDroppedBytes(), (System.nanoTime() - start) / 1_000_000);
+        } catch (InterruptedException e) {
+            killTree(process.toHandle());
+            throw e;
+        } finally {
+            running.remove(process);
+        }
+    }
+
+    /**
+     * 终止所有正在执行的命令，返回终止的数量
+     */
+    public int killRunning() {
+        int killed = 0;
+        for (Process process : running) {
+            if (process.isAlive()) {
+                killTree(process.toHandle());
+                killed++;
+            }
+        }
+        return killed;
+    }
+
+    /**
+     * 强制终止进程及其全部子孙进程。先取子孙列表再终止，避免父进程退出后子进程被收养而漏掉。
+     */
+    public static void killTree(ProcessHandle root) {
+        List<ProcessHandle> descendants = root.descendants().toList();
+        root.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    private static void drain(InputStream input, OutputBuffer buffer, Consumer<String> listener) {
+        byte[] chunk = new byte[8192];
+        // 上一块末尾不完整的 UTF-8 字节，拼到下一块再解码
+        int carry = 0;
+        try (input) {
+            int read;
+            while ((read = input.read(chunk, carry, chunk.length - carry)) != -1) {
+                buffer.write(chunk, carry, read);
+                if (listener == null) {
+                    continue;
+                }
+                int length = carry + read;
+                int complete = completeUtf8Length(chunk, length);
+                if (complete > 0) {
+                    try {
+                        listener.accept(new String(chunk, 0, complete, StandardCharsets.UTF_8));
+                    } catch (RuntimeException e) {
+                        // 回调失败后不再推送，但继续读取，避免子进程因管道写满而阻塞
+                        logger.warn("Process output listener failed", e);
+                        listener = null;
+                    }
+                }
+                carry = listener == null ? 0 : length - complete;
+                System.arraycopy(chunk, complete, chunk, 0, carry);
+            }
+        } catch (IOException e) {
+            logger.debug("Process output closed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 去掉末尾未写完的多字节字符后的长度
+     */
+    public static int completeUtf8Length(byte[] bytes, int length) {
+        for (int back = 1; back <= Math.min(3, length); back++) {
+            int b = bytes[length - back] & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continue;
+            }
+            int expected = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return expected > back ? length - back : length;
+        }
+        return length;
+    }
+}
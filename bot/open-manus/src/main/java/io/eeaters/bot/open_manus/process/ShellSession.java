@@ -0,0 +1,268 @@
+package io.eeaters.bot.open_manus.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 常驻的 bash 进程，命令依次写入它的标准输入执行，cd、export 等状态在命令之间保留。
+ * <p>
+ * 每条命令以 quoted heredoc 原样传入后 eval，命令里的引号不闭合等语法错误只会让 eval 失败，不会吞掉后续输入；
+ * 标准输入重定向到 /dev/null，命令读不到后面的内容。命令结束后打印带随机标记的结束行和退出码，读取线程据此切分输出。
+ * 超时或 shell 意外退出后会话不可再用。
+ */
+public class ShellSession implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShellSession.class);
+
+    private final Process process;
+
+    private final OutputStream stdin;
+
+    private final String token = UUID.randomUUID().toString().replace("-", "");
+
+    // 结束行为 "\n<sentinel> <exit code>\n"，sentinel 中不含换行
+    private final byte[] marker;
+
+    private final int headBytes;
+
+    private final int tailBytes;
+
+    private volatile Pending pending;
+
+    private volatile boolean broken;
+
+    private int commandCount;
+
+    public ShellSession(Path workingDirectory, int headBytes, int tailBytes) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder("/bin/bash", "--noprofile", "--norc");
+        builder.directory(workingDirectory.toFile());
+        builder.redirectErrorStream(true);
+        builder.environment().put("PAGER", "cat");
+        builder.environment().put("GIT_PAGER", "cat");
+        this.process = builder.start();
+        this.stdin = process.getOutputStream();
+        this.marker = ("\n__OPENMANUS_DONE_" + token + "__ ").getBytes(StandardCharsets.US_ASCII);
+        this.headBytes = headBytes;
+        this.tailBytes = tailBytes;
+        Thread.ofVirtual().name("shell-session-" + process.pid()).start(this::readLoop);
+    }
+
+    /**
+     * 执行一条命令并等待结束标记。超时后终止整个 shell，返回已收到的部分输出。
+     *
+     * @param listener 输出片段回调，可为 null
+     */
+    public synchronized ProcessResult execute(String command, Duration timeout, Consumer<String> listener)
+            throws IOException, InterruptedException {
+        if (!isAlive()) {
+            throw new IOException("Shell session " + process.pid() + " is closed");
+        }
+        long start = System.nanoTime();
+        Pending current = new Pending(new OutputBuffer(headBytes, tailBytes), listener);
+        pending = current;
+        commandCount++;
+
+        String delimiter = "__OPENMANUS_CMD_" + token + "__";
+        // read 是内建命令，取命令文本不需要 fork
+        String script = "IFS= read -r -d '' __openmanus_cmd <<'" + delimiter + "'\n"
+                + command + "\n"
+                + delimiter + "\n"
+                + "eval \"$__openmanus_cmd\" < /dev/null\n"
+                + "printf '\\n%s %d\\n' '__OPENMANUS_DONE_" + token + "__' $?\n";
+        try {
+            stdin.write(script.getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+        } catch (IOException e) {
+            broken = true;
+            pending = null;
+            throw e;
+        }
+
+        int exitCode;
+        boolean timedOut = false;
+        try {
+            exitCode = current.exit.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Command in shell session {} timed out after {}, closing session", process.pid(), timeout);
+            close();
+            exitCode = -1;
+            timedOut = true;
+        } catch (ExecutionException e) {
+            // shell 在命令中退出（例如执行了 exit）
+            broken = true;
+            exitCode = process.waitFor(1, TimeUnit.SECONDS) ? process.exitValue() : -1;
+        } catch (InterruptedException e) {
+            close();
+            throw e;
+        } finally {
+            pending = null;
+        }
+        return new ProcessResult(exitCode, current.buffer.toString(), timedOut, current.buffer.getDroppedBytes(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public boolean isAlive() {
+        return !broken && process.isAlive();
+    }
+
+    public synchronized int getCommandCount() {
+        return commandCount;
+    }
+
+    public long pid() {
+        return process.pid();
+    }
+
+    /**
+     * 终止正在执行的命令启动的子进程，shell 本身保留，命令随即以非零退出码结束
+     */
+    public int interrupt() {
+        if (pending == null) {
+            return 0;
+        }
+        var children = process.descendants().toList();
+        children.forEach(ProcessHandle::destroyForcibly);
+        return children.size();
+    }
+
+    @Override
+    public void close() {
+        broken = true;
+        ProcessRunner.killTree(process.toHandle());
+    }
+
+    private void readLoop() {
+        byte[] chunk = new byte[8192];
+        ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+        int matched = 0;
+        StringBuilder exitCode = null;
+
+        try (InputStream input = process.getInputStream()) {
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte b = chunk[i];
+                    if (exitCode != null) {
+                        if (b == '\n') {
+                            emit(output);
+                            finish(exitCode.toString());
+                            exitCode = null;
+                        } else {
+                            exitCode.append((char) b);
+                        }
+                    } else if (b == marker[matched]) {
+                        matched++;
+                        if (matched == marker.length) {
+                            matched = 0;
+                            exitCode = new StringBuilder();
+                        }
+                    } else {
+                        // 标记只有首字节是换行，失配时已匹配的部分原样输出，当前字节可能是新的开头
+                        output.write(marker, 0, matched);
+                        if (b == marker[0]) {
+                            matched = 1;
+                        } else {
+                            matched = 0;
+                            output.write(b);
+                        }
+                    }
+                }
+                emit(output);
+            }
+        } catch (IOException e) {
+            logger.debug("Shell session {} output closed: {}", process.pid(), e.getMessage());
+        } finally {
+            broken = true;
+            Pending current = pending;
+            if (current != null) {
+                current.exit.completeExceptionally(new IOException("Shell session exited"));
+            }
+        }
+    }
+
+    private void emit(ByteArrayOutputStream output) {
+        Pending current = pending;
+        if (output.size() > 0 && current != null) {
+            current.accept(output.toByteArray());
+        }
+        output.reset();
+    }
+
+    private void finish(String exitCode) {
+        Pending current = pending;
+        if (current == null) {
+            return;
+        }
+        current.flush();
+        try {
+            current.exit.complete(Integer.parseInt(exitCode.trim()));
+        } catch (NumberFormatException e) {
+            current.exit.complete(-1);
+        }
+    }
+
+    /**
+     * 正在执行的命令的输出和结束信号，只在读取线程上写入
+     */
+    private static final class Pending {
+
+        final OutputBuffer buffer;
+
+        final Consumer<String> listener;
+
+        final CompletableFuture<Integer> exit = new CompletableFuture<>();
+
+        // 未凑齐的 UTF-8 字节
+        private byte[] carry = new byte[0];
+
+        Pending(OutputBuffer buffer, Consumer<String> listener) {
+            this.buffer = buffer;
+            this.listener = listener;
+        }
+
+        void accept(byte[] bytes) {
+            buffer.write(bytes, 0, bytes.length);
+            if (listener == null) {
+                return;
+            }
+            byte[] joined = new byte[carry.length + bytes.length];
+            System.arraycopy(carry, 0, joined, 0, carry.length);
+            System.arraycopy(bytes, 0, joined, carry.length, bytes.length);
+            int complete = ProcessRunner.completeUtf8Length(joined, joined.length);
+            if (complete > 0) {
+                deliver(new String(joined, 0, complete, StandardCharsets.UTF_8));
+            }
+            carry = Arrays.copyOfRange(joined, complete, joined.length);
+        }
+
+        void flush() {
+            if (listener != null && carry.length > 0) {
+                deliver(new String(carry, StandardCharsets.UTF_8));
+                carry = new byte[0];
+            }
+        }
+
+        private void deliver(String text) {
+            try {
+                listener.accept(text);
+            } catch (RuntimeException e) {
+                logger.warn("Shell output listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package io.eeaters.bot.open_manus.process;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 预先启动的 bash 会话池，省去每条命令启动进程的开销。
+ * <p>
+ * 有状态的命令（executeBash）使用当前 agent 会话租用的 shell，cd、export 在同一次任务内保留，不同任务互不可见；
+ * 租用的 shell 执行 max-commands 条命令或出错后换新。其余命令从池中取一个预热的 shell 用完即关，
+ * 不会把状态带给别人。池会在后台补足预热数量。
+ */
+@Component
+public class ShellSessionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShellSessionPool.class);
+
+    // 当前工具调用所属的 agent 会话
+    private static final ThreadLocal<String> SESSION_KEY = new ThreadLocal<>();
+
+    private static final Duration PWD_TIMEOUT = Duration.ofSeconds(5);
+
+    private final int warmSessions;
+
+    private final int maxCommands;
+
+    private final int headBytes;
+
+    private final int tailBytes;
+
+    private final Path workingDirectory = Paths.get(System.getProperty("user.dir"));
+
+    private final BlockingQueue<ShellSession> warm = new LinkedBlockingQueue<>();
+
+    private final Map<String, ShellSession> leased = new ConcurrentHashMap<>();
+
+    private final Map<Long, ShellSession> busy = new ConcurrentHashMap<>();
+
+    private final ExecutorService refiller = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong started = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public ShellSessionPool(@Value("${openmanus.shell.warm-sessions:2}") int warmSessions,
+                            @Value("${openmanus.shell.max-commands:200}") int maxCommands,
+                            @Value("${openmanus.process.output-head-bytes:16384}") int headBytes,
+                            @Value("${openmanus.process.output-tail-bytes:49152}") int tailBytes) {
+        this.warmSessions = warmSessions;
+        this.maxCommands = maxCommands;
+        this.headBytes = headBytes;
+        this.tailBytes = tailBytes;
+    }
+
+    /**
+     * 在 action 执行期间把当前线程上的有状态命令归到 sessionKey 对应的 shell
+     */
+    public static <T> T withSession(String sessionKey, Supplier<T> action) {
+        String previous = SESSION_KEY.get();
+        SESSION_KEY.set(sessionKey);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                SESSION_KEY.remove();
+            } else {
+                SESSION_KEY.set(previous);
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        refill();
+    }
+
+    /**
+     * 执行命令，输出实时交给当前线程绑定的输出回调
+     *
+     * @param stateful 是否在当前 agent 会话的 shell 中执行；没有绑定会话时与无状态相同
+     */
+    public ProcessResult execute(String command, Duration timeout, boolean stateful)
+            throws IOException, InterruptedException {
+        String key = stateful ? SESSION_KEY.get() : null;
+        if (key == null) {
+            ShellSession session = take();
+            try {
+                return run(session, command, timeout);
+            } finally {
+                retire(session);
+                refill();
+            }
+        }
+
+        ShellSession session = leased.compute(key, (k, current) -> {
+            if (current != null && current.isAlive() && current.getCommandCount() < maxCommands) {
+                return current;
+            }
+            if (current != null) {
+                retire(current);
+            }
+            return take();
+        });
+        refill();
+        return run(session, command, timeout);
+    }
+
+    /**
+     * 当前 agent 会话的 shell 所在目录（经 cd 后可能已改变），没有租用中的 shell 时返回初始目录
+     */
+    public Path currentDirectory() throws IOException, InterruptedException {
+        String key = SESSION_KEY.get();
+        ShellSession session = key != null ? leased.get(key) : null;
+        if (session == null || !session.isAlive()) {
+            return workingDirectory;
+        }
+        ProcessResult result = session.execute("pwd", PWD_TIMEOUT, null);
+        String directory = result.output().trim();
+        if (result.exitCode() != 0 || directory.isEmpty()) {
+            return workingDirectory;
+        }
+        return Paths.get(directory);
+    }
+
+    /**
+     * agent 会话结束，关闭它租用的 shell
+     */
+    public void release(String sessionKey) {
+        ShellSession session = leased.remove(sessionKey);
+        if (session != null) {
+            retire(session);
+        }
+    }
+
+    /**
+     * 终止所有正在执行的命令（保留 shell），返回终止的子进程数
+     */
+    public int interruptAll() {
+        int killed = 0;
+        for (ShellSession session : busy.values()) {
+            killed += session.interrupt();
+        }
+        return killed;
+    }
+
+    public Stats getStats() {
+        return new Stats(warm.size(), leased.size(), busy.size(), started.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        refiller.shutdownNow();
+        warm.forEach(ShellSession::close);
+        warm.clear();
+        leased.values().forEach(ShellSession::close);
+        leased.clear();
+    }
+
+    private ProcessResult run(ShellSession session, String command, Duration timeout)
+            throws IOException, InterruptedException {
+        busy.put(session.pid(), session);
+        try {
+            return session.execute(command, timeout, ProcessRunner.currentOutputListener());
+        } finally {
+            busy.remove(session.pid());
+        }
+    }
+
+    /**
+     * 取一个预热的 shell，池空时当场启动
+     */
+    private ShellSession take() {
+        ShellSession session;
+        while ((session = warm.poll()) != null) {
+            if (session.isAlive()) {
+                return session;
+            }
+        }
+        try {
+            return start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to start shell session", e);
+        }
+    }
+
+    /**
+     * 在后台关闭 shell，终止进程树需要遍历进程表，不占用命令的响应时间
+     */
+    private void retire(ShellSession session) {
+        if (closed) {
+            session.close();
+            return;
+        }
+        refiller.execute(session::close);
+    }
+
+    private void refill() {
+        if (closed) {
+            return;
+        }
+        refiller.execute(() -> {
+            synchronized (warm) {
+                while (!closed && warm.size() < warmSessions) {
+                    try {
+                        warm.add(start());
+                    } catch (IOException e) {
+                        logger.warn("Failed to prestart shell session: {}", e.getMessage());
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    private ShellSession start() throws IOException {
+        started.incrementAndGet();
+        return new ShellSession(workingDirectory, headBytes, tailBytes);
+    }
+
+    /**
+     * @param warm    预热待用的 shell 数
+     * @param leased  被 agent 会话租用的 shell 数
+     * @param busy    正在执行命令的 shell 数
+     * @param started 累计启动的 shell 数
+     */
+    public record Stats(int warm, int leased, int busy, long started) {
+    }
+}
@@ -0,0 +1,531 @@
+package io.eeaters.bot.open_manus.search;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 工作空间的代码搜索。
+ * <p>
+ * 启动后在后台遍历搜索根目录建立三元组索引，之后由 {@link WatchService} 监听目录变化增量更新；索引建好之前的搜索会等待一段时间。
+ * 查询先用三元组索引筛出候选文件，再并行逐个文件匹配，只读取候选文件。读文件都是阻塞 IO，建索引和扫描都在专用的虚拟线程上进行，
+ * 不占用公共 ForkJoin 池。
+ * 索引只用于筛选，匹配总是基于文件的当前内容，文件刚修改、监听事件还没处理时最多漏掉结果，不会给出错误的结果。
+ * 二进制文件（开头含 NUL 字节）和超过大小上限的文件不索引。
+ */
+@Component
+public class CodeSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CodeSearchService.class);
+
+    // 判断二进制文件时检查的开头字节数
+    private static final int BINARY_SNIFF_BYTES = 8000;
+
+    // 收到事件后再等待这么久，把一次保存或批量操作产生的事件合并处理
+    private static final long DEBOUNCE_MILLIS = 50;
+
+    // 每批并行扫描的文件数，每批结束后检查结果预算
+    private static final int SCAN_BATCH = 64;
+
+    // 建索引时每个任务处理的文件数
+    private static final int INDEX_BATCH = 256;
+
+    // 索引还没建好时搜索最多等待的时间
+    private static final long INDEX_WAIT_SECONDS = 30;
+
+    private final Path root;
+
+    private final long maxFileBytes;
+
+    private final Set<String> excludedDirectories;
+
+    private final TrigramIndex index = new TrigramIndex();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private volatile WatchService watcher;
+
+    // 初始索引的建立过程，失败后下次搜索时重新建立
+    private CompletableFuture<Void> indexing;
+
+    public CodeSearchService(@Value("${openmanus.search.root:${openmanus.workspace:.}}") String root,
+                             @Value("${openmanus.search.max-file-bytes:1048576}") long maxFileBytes,
+                             @Value("${openmanus.search.exclude-dirs:.git,node_modules,target,build,.idea,__pycache__}")
+                             List<String> excludedDirectories) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.maxFileBytes = maxFileBytes;
+        this.excludedDirectories = Set.copyOf(excludedDirectories);
+    }
+
+    /**
+     * @param regex      query 是 Java 正则，否则按字面量匹配
+     * @param glob       只搜索匹配的文件，不含 / 时匹配文件名，否则匹配相对根目录的路径；为空时搜索全部文件
+     * @param maxPerFile 每个文件最多收集的匹配行数，文件的匹配行数仍会完整统计
+     * @param lineBudget 累计匹配行数达到该值后不再扫描其余候选文件
+     */
+    public SearchResult search(String query, boolean regex, boolean ignoreCase, String glob, int maxPerFile,
+                               int lineBudget) throws IOException {
+        long start = System.nanoTime();
+        awaitIndex();
+
+        int flags = Pattern.MULTILINE | (ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        Pattern pattern = Pattern.compile(query, regex ? flags : flags | Pattern.LITERAL);
+        int[] trigrams = regex ? Trigrams.forRegex(query) : Trigrams.forLiteral(query, ignoreCase);
+
+        List<Path> candidates;
+        int indexed;
+        lock.readLock().lock();
+        try {
+            candidates = index.candidates(trigrams);
+            indexed = index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        PathMatcher matcher = glob == null || glob.isBlank() ? null
+                : FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        boolean matchFullPath = glob != null && glob.contains("/");
+        String needle = regex ? null : query.toLowerCase();
+
+        // 路径包含查询内容的文件先扫描，预算用完时不会漏掉它们；顺序固定，同样的查询得到同样的结果
+        List<Path> ordered = candidates.stream()
+                .filter(path -> matcher == null
+                        || matcher.matches(matchFullPath ? root.relativize(path) : path.getFileName()))
+                .sorted(Comparator.comparing((Path path) -> !pathContains(path, needle))
+                        .thenComparingInt(Path::getNameCount)
+                        .thenComparing(Comparator.naturalOrder()))
+                .toList();
+
+        List<FileMatches> files = new ArrayList<>();
+        int lines = 0;
+        int scanned = 0;
+        while (scanned < ordered.size() && lines < lineBudget) {
+            List<Path> batch = ordered.subList(scanned, Math.min(ordered.size(), scanned + SCAN_BATCH));
+            List<Callable<FileMatches>> tasks = batch.stream()
+                    .map(path -> (Callable<FileMatches>) () -> scan(path, pattern, maxPerFile, needle))
+                    .toList();
+            for (FileMatches file : invokeAll(tasks)) {
+                if (file != null) {
+                    files.add(file);
+                    lines += file.lineCount();
+                }
+            }
+            scanned += batch.size();
+        }
+
+        files.sort(Comparator.comparing(FileMatches::pathMatches).reversed()
+                .thenComparing(Comparator.comparingInt(FileMatches::lineCount).reversed())
+                .thenComparingInt(file -> file.path().getNameCount())
+                .thenComparing(FileMatches::path));
+        return new SearchResult(files, indexed, scanned, scanned < ordered.size(),
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * 在文件中查找匹配的行，没有匹配或读取失败时返回 null
+     *
+     * @param needle 字面量查询的小写形式，用于判断路径是否包含查询内容
+     */
+    private FileMatches scan(Path path, Pattern pattern, int maxPerFile, String needle) {
+        String content;
+        try {
+            content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // 文件已删除或无法读取，等监听事件更新索引
+            return null;
+        }
+
+        Matcher matcher = pattern.matcher(content);
+        List<LineMatch> lines = new ArrayList<>();
+        int lineCount = 0;
+        int line = 1;
+        int counted = 0;
+        int from = 0;
+        // 在整个文件上查找，比逐行匹配快；每一行只报告一次
+        while (from <= content.length()) {
+            matcher.region(from, content.length());
+            if (!matcher.find()) {
+                break;
+            }
+            int matchStart = matcher.start();
+            for (int i = counted; i < matchStart; i++) {
+                if (content.charAt(i) == '\n') {
+                    line++;
+                }
+            }
+            counted = matchStart;
+            int lineStart = content.lastIndexOf('\n', matchStart - 1) + 1;
+            // 最后一个换行之后没有内容，不算一行
+            if (lineStart == content.length()) {
+                break;
+            }
+            int lineEnd = content.indexOf('\n', matchStart);
+            if (lineEnd < 0) {
+                lineEnd = content.length();
+            }
+
+            boolean found = true;
+            if (matcher.end() > lineEnd) {
+                // 匹配跨越了换行（如 \s+），改为只在这一行内查找
+                matcher.region(lineStart, lineEnd);
+                found = matcher.find();
+            }
+            if (found) {
+                lineCount++;
+                if (lines.size() < maxPerFile) {
+                    int textEnd = lineEnd > lineStart && content.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                    lines.add(new LineMatch(line, content.substring(lineStart, textEnd)));
+                }
+            }
+            from = lineEnd + 1;
+        }
+
+        if (lineCount == 0) {
+            return null;
+        }
+        return new FileMatches(path, pathContains(path, needle), lineCount, lines);
+    }
+
+    private boolean pathContains(Path path, String needle) {
+        return needle != null && root.relativize(path).toString().toLowerCase().contains(needle);
+    }
+
+    @PostConstruct
+    public void init() {
+        start();
+    }
+
+    /**
+     * 在后台开始建立初始索引，不阻塞调用方；已在进行或已完成时直接返回
+     */
+    private synchronized CompletableFuture<Void> start() {
+        if (indexing == null || indexing.isCompletedExceptionally()) {
+            indexing = CompletableFuture.runAsync(() -> {
+                try {
+                    buildIndex();
+                } catch (IOException e) {
+                    logger.warn("Failed to index {}: {}", root, e.getMessage());
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+        return indexing;
+    }
+
+    private void awaitIndex() throws IOException {
+        try {
+            start().get(INDEX_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new IOException("索引尚未建立完成（已索引 " + indexedCount() + " 个文件），请稍后重试");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待索引时被中断");
+        }
+    }
+
+    private void buildIndex() throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("搜索根目录不存在: " + root);
+        }
+        long start = System.nanoTime();
+        WatchService service = FileSystems.getDefault().newWatchService();
+        watcher = service;
+        try {
+            // 先注册监听再遍历，遍历期间的修改不会丢失
+            refreshAll(walk(root));
+        } catch (IOException | RuntimeException e) {
+            watchedDirectories.clear();
+            service.close();
+            throw e;
+        }
+        Thread.ofPlatform().daemon().name("code-search-watcher").start(this::watchLoop);
+        logger.info("Indexed {} files under {} in {} ms", indexedCount(), root,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private int indexedCount() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 分批在虚拟线程上更新文件的索引，全部完成后返回
+     */
+    private void refreshAll(List<Path> files) throws IOException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < files.size(); i += INDEX_BATCH) {
+            List<Path> batch = files.subList(i, Math.min(files.size(), i + INDEX_BATCH));
+            tasks.add(() -> {
+                batch.forEach(this::refreshFile);
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * 在专用线程池上执行并按提交顺序返回结果
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("搜索被中断");
+        }
+    }
+
+    /**
+     * 注册目录及其子目录的监听，返回其中的普通文件
+     */
+    private List<Path> walk(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && excludedDirectories.contains(dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                do {
+                    Path directory = watchedDirectories.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else if (directory != null) {
+                            changed.add(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        watchedDirectories.remove(key);
+                    }
+                } while ((key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                try {
+                    if (overflow) {
+                        rescan();
+                    } else {
+                        changed.forEach(this::refresh);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Failed to update search index", e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 服务关闭
+        }
+    }
+
+    /**
+     * 事件丢失时重新遍历，只重新索引大小或修改时间变化的文件，并删除已不存在的文件
+     */
+    private void rescan() throws IOException {
+        List<Path> files = walk(root);
+        refreshAll(files);
+        Set<Path> present = new HashSet<>(files);
+        lock.writeLock().lock();
+        try {
+            index.paths().stream().filter(path -> !present.contains(path)).forEach(index::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Rescanned {} after lost watch events, {} files indexed", root, indexedCount());
+    }
+
+    private void refresh(Path path) {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            if (excludedDirectories.contains(path.getFileName().toString())) {
+                return;
+            }
+            // 新建或移入的目录
+            try {
+                refreshAll(walk(path));
+            } catch (IOException e) {
+                logger.debug("Failed to index directory {}", path, e);
+            }
+        } else if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            refreshFile(path);
+        } else {
+            lock.writeLock().lock();
+            try {
+                index.remove(path);
+                index.removeUnder(path);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 按文件的当前内容更新索引，大小和修改时间都没变时跳过
+     */
+    private void refreshFile(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            TrigramIndex.Entry entry = new TrigramIndex.Entry(path, attributes.size(),
+                    attributes.lastModifiedTime().toMillis());
+            lock.readLock().lock();
+            try {
+                if (entry.equals(index.get(path))) {
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            int[] trigrams = null;
+            if (attributes.isRegularFile() && attributes.size() <= maxFileBytes) {
+                byte[] content = Files.readAllBytes(path);
+                if (!isBinary(content)) {
+                    trigrams = Trigrams.extract(content, content.length);
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (trigrams == null) {
+                    index.remove(path);
+                } else {
+                    index.put(entry, trigrams);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            // 文件在处理期间被删除，删除事件随后会到达
+            logger.debug("Failed to index {}", path, e);
+        }
+    }
+
+    private static boolean isBinary(byte[] content) {
+        int length = Math.min(content.length, BINARY_SNIFF_BYTES);
+        for (int i = 0; i < length; i++) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        executor.shutdownNow();
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    public record LineMatch(int line, String text) {
+    }
+
+    /**
+     * @param pathMatches 路径包含查询内容，排在前面
+     * @param lineCount   匹配的总行数，lines 只包含前若干行
+     */
+    public record FileMatches(Path path, boolean pathMatches, int lineCount, List<LineMatch> lines) {
+    }
+
+    /**
+     * @param files     按相关性排序的匹配文件
+     * @param indexed   索引中的文件数
+     * @param scanned   实际扫描的候选文件数
+     * @param truncated 匹配行数超出预算，还有候选文件没有扫描
+     */
+    public record SearchResult(List<FileMatches> files, int indexed, int scanned, boolean truncated,
+                               Duration elapsed) {
+
+        public int lineCount() {
+            return files.stream().mapToInt(FileMatches::lineCount).sum();
+        }
+    }
+}
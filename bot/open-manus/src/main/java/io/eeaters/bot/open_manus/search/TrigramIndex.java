@@ -0,0 +1,190 @@
+package io.eeaters.bot.open_manus.search;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 三元组到文件的倒排索引，不是线程安全的，由 {@link CodeSearchService} 加锁访问。
+ * <p>
+ * 文件按加入顺序编号，每个三元组的倒排表是递增的编号数组，查询时从最短的表开始求交集。
+ * 删除或更新文件只把旧编号标记为失效，失效编号超过一半时重新编号并压缩所有倒排表。
+ */
+final class TrigramIndex {
+
+    private static final int MIN_COMPACT = 1024;
+
+    // 编号 -> 文件，失效的编号为 null
+    private final List<Entry> files = new ArrayList<>();
+
+    private final Map<Path, Integer> ids = new HashMap<>();
+
+    private final Map<Integer, IntList> postings = new HashMap<>();
+
+    private int removed;
+
+    Entry get(Path file) {
+        Integer id = ids.get(file);
+        return id == null ? null : files.get(id);
+    }
+
+    void put(Entry entry, int[] trigrams) {
+        remove(entry.path());
+        int id = files.size();
+        files.add(entry);
+        ids.put(entry.path(), id);
+        for (int trigram : trigrams) {
+            postings.computeIfAbsent(trigram, key -> new IntList()).add(id);
+        }
+    }
+
+    void remove(Path file) {
+        Integer id = ids.remove(file);
+        if (id == null) {
+            return;
+        }
+        files.set(id, null);
+        if (++removed > MIN_COMPACT && removed > ids.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * 删除目录下的全部文件
+     */
+    void removeUnder(Path directory) {
+        List<Path> under = ids.keySet().stream().filter(path -> path.startsWith(directory)).toList();
+        under.forEach(this::remove);
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    List<Path> paths() {
+        return new ArrayList<>(ids.keySet());
+    }
+
+    /**
+     * 包含全部给定三元组的文件，没有三元组时返回全部文件
+     */
+    List<Path> candidates(int[] trigrams) {
+        if (trigrams.length == 0) {
+            return paths();
+        }
+        IntList[] lists = new IntList[trigrams.length];
+        for (int i = 0; i < trigrams.length; i++) {
+            lists[i] = postings.get(trigrams[i]);
+            if (lists[i] == null) {
+                return List.of();
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+
+        int[] result = Arrays.copyOf(lists[0].values, lists[0].size);
+        int count = result.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            count = intersect(result, count, lists[i]);
+        }
+
+        List<Path> paths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Entry entry = files.get(result[i]);
+            if (entry != null) {
+                paths.add(entry.path());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * 把 result 的前 count 个与 list 求交集，结果写回 result，返回交集大小
+     */
+    private static int intersect(int[] result, int count, IntList list) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < list.size; i++) {
+            int id = result[i];
+            // 倒排表远长于当前结果时用二分跳过
+            if (list.size - j > 64 * (count - i)) {
+                int found = Arrays.binarySearch(list.values, j, list.size, id);
+                j = found >= 0 ? found : -found - 1;
+            } else {
+                while (j < list.size && list.values[j] < id) {
+                    j++;
+                }
+            }
+            if (j < list.size && list.values[j] == id) {
+                result[kept++] = id;
+            }
+        }
+        return kept;
+    }
+
+    private void compact() {
+        int[] remap = new int[files.size()];
+        List<Entry> live = new ArrayList<>(ids.size());
+        for (int id = 0; id < files.size(); id++) {
+            Entry entry = files.get(id);
+            if (entry == null) {
+                remap[id] = -1;
+            } else {
+                remap[id] = live.size();
+                ids.put(entry.path(), live.size());
+                live.add(entry);
+            }
+        }
+        // 新编号保持原有顺序，倒排表依然有序
+        Iterator<IntList> iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            IntList list = iterator.next();
+            int size = 0;
+            for (int i = 0; i < list.size; i++) {
+                int id = remap[list.values[i]];
+                if (id >= 0) {
+                    list.values[size++] = id;
+                }
+            }
+            if (size == 0) {
+                iterator.remove();
+            } else {
+                list.size = size;
+                list.trim();
+            }
+        }
+        files.clear();
+        files.addAll(live);
+        removed = 0;
+    }
+
+    /**
+     * 索引中的文件及建索引时的大小和修改时间，用于判断文件是否需要重新索引
+     */
+    record Entry(Path path, long size, long modifiedMillis) {
+    }
+
+    private static final class IntList {
+
+        int[] values = new int[4];
+
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size + (size >> 1) + 1);
+            }
+            values[size++] = value;
+        }
+
+        void trim() {
+            if (values.length > size * 2) {
+                values = Arrays.copyOf(values, Math.max(4, size));
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package io.eeaters.bot.open_manus.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+/**
+ * 三元组（连续 3 个字节）的提取。
+ * <p>
+ * 三元组编码为 24 位整数，ASCII 字母统一转小写，大小写敏感和不敏感的查询共用一份索引；
+ * 非 ASCII 字节原样保留，所以忽略大小写时跳过含非 ASCII 字节的三元组。
+ */
+final class Trigrams {
+
+    private static final int SPACE = 1 << 24;
+
+    // 2MB 的位图，用于对文件中的三元组去重，用完按记录清零后放回。索引在虚拟线程上构建，
+    // 按线程缓存会让每个新线程都重新分配，这里改为显式借还，池满时丢弃
+    private static final BlockingQueue<long[]> SEEN_POOL =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    // 影响字面量提取的内联标志：x 会忽略空白和注释
+    private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z-]*x");
+
+    private Trigrams() {
+    }
+
+    /**
+     * 文件内容中出现过的全部三元组，不重复
+     */
+    static int[] extract(byte[] content, int length) {
+        long[] seen = SEEN_POOL.poll();
+        if (seen == null) {
+            seen = new long[SPACE / Long.SIZE];
+        }
+        int[] result = new int[Math.max(16, Math.min(length, 1 << 16))];
+        int count = 0;
+        int trigram = 0;
+        for (int i = 0; i < length; i++) {
+            trigram = ((trigram << 8) | lower(content[i])) & (SPACE - 1);
+            if (i < 2) {
+                continue;
+            }
+            long bit = 1L << trigram;
+            if ((seen[trigram >>> 6] & bit) != 0) {
+                continue;
+            }
+            seen[trigram >>> 6] |= bit;
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = trigram;
+        }
+        for (int i = 0; i < count; i++) {
+            seen[result[i] >>> 6] = 0;
+        }
+        SEEN_POOL.offer(seen);
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 包含该字面量的文件必然包含的三元组，字面量不足 3 个字节时为空
+     */
+    static int[] forLiteral(String literal, boolean ignoreCase) {
+        Set<Integer> trigrams = new LinkedHashSet<>();
+        addLiteral(trigrams, literal, ignoreCase);
+        return toArray(trigrams);
+    }
+
+    /**
+     * 能匹配该正则的文件必然包含的三元组，取自正则中必须出现的字面量片段。无法确定时为空，即需要扫描全部文件。
+     */
+    static int[] forRegex(String regex) {
+        Set<Integer> trigrams = new LinkedHashSet<>();
+        // (?i) 可以出现在任意位置，一律按忽略大小写处理
+        for (String literal : requiredLiterals(regex)) {
+            addLiteral(trigrams, literal, true);
+        }
+        return toArray(trigrams);
+    }
+
+    /**
+     * 正则中每个匹配都必须包含的字面量片段。只分析顶层：分组和字符类整体跳过，
+     * 顶层出现 | 时任一分支都可能匹配，返回空列表。
+     */
+    static List<String> requiredLiterals(String regex) {
+        if (COMMENTS_FLAG.matcher(regex).find()) {
+            return List.of();
+        }
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int n = regex.length();
+        int i = 0;
+        while (i < n) {
+            char c = regex.charAt(i);
+            String atom = null;
+            int next = i + 1;
+            if (c == '\\') {
+                if (i + 1 >= n) {
+                    return List.of();
+                }
+                char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    atom = end < 0 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+                    next = end < 0 ? n : end + 2;
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    // \d \w \b \n \x41 \p{L} 等都不是字面量，跳过其参数
+                    next = skipEscape(regex, i + 1);
+                } else {
+                    atom = String.valueOf(escaped);
+                    next = i + 2;
+                }
+            } else if (c == '[') {
+                next = skipClass(regex, i);
+            } else if (c == '(') {
+                next = skipGroup(regex, i);
+            } else if (c == '|') {
+                return List.of();
+            } else if (c != '.' && c != '^' && c != '$' && c != '*' && c != '+' && c != '?' && c != '{') {
+                int codePoint = regex.codePointAt(i);
+                atom = new String(Character.toChars(codePoint));
+                next = i + Character.charCount(codePoint);
+            }
+
+            // 量词：可省略的原子不计入，重复的原子只保证出现一次
+            int quantifier = next;
+            boolean optional = false;
+            boolean repeated = false;
+            if (quantifier < n) {
+                char q = regex.charAt(quantifier);
+                if (q == '*' || q == '?') {
+                    optional = true;
+                    quantifier++;
+                } else if (q == '+') {
+                    repeated = true;
+                    quantifier++;
+                } else if (q == '{') {
+                    int close = regex.indexOf('}', quantifier);
+                    if (close > 0) {
+                        String bounds = regex.substring(quantifier + 1, close);
+                        optional = bounds.startsWith("0") || bounds.startsWith(",");
+                        repeated = !optional;
+                        quantifier = close + 1;
+                    }
+                }
+                if ((optional || repeated) && quantifier < n
+                        && (regex.charAt(quantifier) == '?' || regex.charAt(quantifier) == '+')) {
+                    quantifier++;
+                }
+            }
+
+            if (atom == null) {
+                flush(literals, run);
+            } else if (optional) {
+                // 量词只作用于最后一个字符
+                run.append(atom, 0, atom.isEmpty() ? 0 : atom.offsetByCodePoints(atom.length(), -1));
+                flush(literals, run);
+            } else {
+                run.append(atom);
+                if (repeated) {
+                    flush(literals, run);
+                }
+            }
+            i = quantifier;
+        }
+        flush(literals, run);
+        return literals;
+    }
+
+    private static void flush(List<String> literals, StringBuilder run) {
+        if (run.toString().getBytes(StandardCharsets.UTF_8).length >= 3) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    /**
+     * @param i 反斜杠后字母或数字的位置
+     * @return 转义序列之后的位置
+     */
+    private static int skipEscape(String regex, int i) {
+        char escaped = regex.charAt(i);
+        int next = i + 1;
+        switch (escaped) {
+            case 'x', 'p', 'P', 'N' -> {
+                if (next < regex.length() && regex.charAt(next) == '{') {
+                    int close = regex.indexOf('}', next);
+                    return close < 0 ? regex.length() : close + 1;
+                }
+                return Math.min(regex.length(), next + (escaped == 'x' ? 2 : 1));
+            }
+            case 'u' -> {
+                return Math.min(regex.length(), next + 4);
+            }
+            case 'c' -> {
+                return Math.min(regex.length(), next + 1);
+            }
+            case 'k' -> {
+                int close = regex.indexOf('>', next);
+                return close < 0 ? regex.length() : close + 1;
+            }
+            case '0' -> {
+                while (next < regex.length() && next < i + 4 && regex.charAt(next) >= '0' && regex.charAt(next) <= '7') {
+                    next++;
+                }
+                return next;
+            }
+            default -> {
+                if (Character.isDigit(escaped)) {
+                    // 反向引用
+                    while (next < regex.length() && Character.isDigit(regex.charAt(next))) {
+                        next++;
+                    }
+                }
+                return next;
+            }
+        }
+    }
+
+    private static int skipClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        // 紧跟在 [ 或 [^ 之后的 ] 是普通字符
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return regex.length();
+    }
+
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? regex.length() : end + 2;
+                } else {
+                    i += 2;
+                }
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return regex.length();
+    }
+
+    private static void addLiteral(Set<Integer> trigrams, String literal, boolean ignoreCase) {
+        byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+        for (int i = 2; i < bytes.length; i++) {
+            if (ignoreCase && (bytes[i - 2] < 0 || bytes[i - 1] < 0 || bytes[i] < 0)) {
+                continue;
+            }
+            trigrams.add(lower(bytes[i - 2]) << 16 | lower(bytes[i - 1]) << 8 | lower(bytes[i]));
+        }
+    }
+
+    private static int lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xFF;
+    }
+
+    private static int[] toArray(Set<Integer> trigrams) {
+        return trigrams.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
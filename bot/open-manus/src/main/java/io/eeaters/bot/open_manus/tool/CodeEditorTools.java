@@ -1,12 +1,20 @@
 package io.eeaters.bot.open_manus.tool;
 
 import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import io.eeaters.bot.open_manus.edit.EditHistory;
+import io.eeaters.bot.open_manus.edit.FileEditor;
+import io.eeaters.bot.open_manus.edit.LineIndex;
+import io.eeaters.bot.open_manus.edit.LineIndexCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
@@ -19,12 +27,17 @@ public class CodeEditorTools {
     private static final int MAX_RESPONSE_LENGTH = 16000;
     private static final String TRUNCATED_MESSAGE = """
             <response clipped><NOTE>To save on context only part of this file has been shown to you.
-            You should retry this tool after you have searched inside the file with `grep -n`
+            You should retry this tool after you have searched inside the file with `searchCode`
             in order to find the line numbers of what you are looking for.</NOTE>
             """;
 
-    private final Map<String, Stack<String>> fileHistory = new HashMap<>();
+    @Autowired
+    private EditHistory editHistory;
 
+    @Autowired
+    private LineIndexCache lineIndexCache;
+
+    @ReadOnlyTool
     @Tool(description = "查看文件或目录内容。如果是文件，显示带行号的内容；如果是目录，显示文件和子目录列表（最多2层深）")
     public String viewFile(ViewRequest request) {
         try {
@@ -41,7 +54,7 @@ public class CodeEditorTools {
             if (Files.isDirectory(path)) {
                 return listDirectory(path, request.maxDepth());
             } else {
-                return readFileWithLineNumbers(path, Optional.of(request.viewRange()));
+                return readFileWithLineNumbers(path, Optional.ofNullable(request.viewRange()));
             }
 
         } catch (Exception e) {
@@ -67,10 +80,11 @@ public class CodeEditorTools {
             Files.createDirectories(path.getParent());
 
             // 创建文件并写入内容
-            Files.writeString(path, request.fileText() != null ? request.fileText() : "");
+            byte[] content = (request.fileText() != null ? request.fileText() : "").getBytes(StandardCharsets.UTF_8);
+            FileEditor.write(path, content);
 
-            // 初始化历史记录
-            fileHistory.computeIfAbsent(path.toString(), k -> new Stack<>()).push("");
+            // 初始化历史记录，撤销后为空文件
+            editHistory.record(path.toString(), new byte[0], content);
 
             return "文件创建成功: " + path;
 
@@ -93,24 +107,36 @@ public class CodeEditorTools {
                 return "错误：文件不存在 - " + path;
             }
 
-            String content = Files.readString(path);
+            if (request.oldStr() == null || request.oldStr().isEmpty()) {
+                return "错误：old_str不能为空";
+            }
+
+            // 按文件原有的编码和换行符匹配、写入，一趟扫描最多找两处
+            FileEditor.TextFormat format = FileEditor.detect(path);
+            String oldStr = request.oldStr();
+            String newStr = request.newStr() != null ? request.newStr() : "";
+            List<Long> matches = findMatches(path, format, format.encode(oldStr));
+            if (matches.isEmpty() && !format.withLineSeparator(oldStr).equals(oldStr)) {
+                oldStr = format.withLineSeparator(oldStr);
+                newStr = format.withLineSeparator(newStr);
+                matches = findMatches(path, format, format.encode(oldStr));
+            }
 
-            if (!content.contains(request.oldStr())) {
+            if (matches.isEmpty()) {
                 return "错误：未找到要替换的字符串。请确保old_str与文件中的内容完全一致（包括空格和换行）";
             }
 
             // 检查是否有多个匹配
-            int count = countOccurrences(content, request.oldStr());
-            if (count > 1) {
+            if (matches.size() > 1) {
                 return "错误：找到多个匹配的字符串。请提供更多上下文使old_str唯一";
             }
 
-            // 保存当前内容到历史记录
-            fileHistory.computeIfAbsent(path.toString(), k -> new Stack<>()).push(content);
-
-            // 执行替换
-            String newContent = content.replace(request.oldStr(), request.newStr());
-            Files.writeString(path, newContent);
+            // 经临时文件原子替换，只记录改动的部分
+            long offset = matches.get(0);
+            byte[] removed = format.encode(oldStr);
+            byte[] inserted = format.encode(newStr);
+            FileEditor.splice(path, offset, removed.length, inserted);
+            editHistory.record(path.toString(), offset, removed, inserted, Files.size(path));
 
             return "替换成功：已替换1处内容";
 
@@ -133,20 +159,47 @@ public class CodeEditorTools {
                 return "错误：文件不存在 - " + path;
             }
 
-            List<String> lines = Files.readAllLines(path);
-
-            if (request.insertLine() < 0 || request.insertLine() > lines.size()) {
-                return "错误：行号超出范围。文件共有 " + lines.size() + " 行";
+            // 定位到插入行之后的字节偏移，只写入新增的内容，换行符和结尾换行与原文件保持一致
+            FileEditor.TextFormat format = FileEditor.detect(path);
+            int insertLine = request.insertLine();
+            long lineCount;
+            long offset;
+            // 插入位置前是否已有换行，只有在末尾追加且文件不以换行结尾时为 false
+            boolean afterNewline;
+            if (format.alignment() != 1) {
+                // UTF-16 的换行不是单字节，不走行索引
+                String text = format.decodeFile(Files.readAllBytes(path));
+                lineCount = text.chars().filter(c -> c == '\n').count()
+                        + (text.isEmpty() || text.endsWith("\n") ? 0 : 1);
+                if (insertLine < 0 || insertLine > lineCount) {
+                    return "错误：行号超出范围。文件共有 " + lineCount + " 行";
+                }
+                int chars = 0;
+                for (int i = 0; i < insertLine; i++) {
+                    int newline = text.indexOf('\n', chars);
+                    chars = newline < 0 ? text.length() : newline + 1;
+                }
+                offset = format.bomLength() + format.encode(text.substring(0, chars)).length;
+                afterNewline = chars == 0 || text.charAt(chars - 1) == '\n';
+            } else {
+                LineIndex index = lineIndexCache.get(path);
+                lineCount = index.getLineCount();
+                if (insertLine < 0 || insertLine > lineCount) {
+                    return "错误：行号超出范围。文件共有 " + lineCount + " 行";
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    offset = insertLine == 0 ? format.bomLength() : index.lineStart(channel, insertLine + 1);
+                    afterNewline = offset == format.bomLength() || endsWithNewline(channel, offset);
+                }
             }
 
-            // 保存当前内容到历史记录
-            String content = String.join("\n", lines);
-            fileHistory.computeIfAbsent(path.toString(), k -> new Stack<>()).push(content);
+            String newStr = format.withLineSeparator(request.newStr() != null ? request.newStr() : "");
+            byte[] inserted = format.encode(afterNewline ? newStr + format.lineSeparator()
+                    : format.lineSeparator() + newStr);
+            FileEditor.splice(path, offset, 0, inserted);
 
-            // 插入内容
-            lines.add(request.insertLine(), request.newStr());
-            String newContent = String.join("\n", lines);
-            Files.writeString(path, newContent);
+            // 只记录插入的部分
+            editHistory.record(path.toString(), offset, new byte[0], inserted, Files.size(path));
 
             return "插入成功：在第 " + request.insertLine() + " 行后插入了内容";
 
@@ -165,13 +218,15 @@ public class CodeEditorTools {
                 return "错误：路径不安全，只能在当前工作目录内操作";
             }
 
-            Stack<String> history = fileHistory.get(path.toString());
-            if (history == null || history.isEmpty()) {
-                return "错误：没有可撤销的操作";
+            if (!Files.exists(path)) {
+                return "错误：文件不存在 - " + path;
             }
 
-            String previousContent = history.pop();
-            Files.writeString(path, previousContent);
+            try {
+                editHistory.undo(path.toString(), path);
+            } catch (IllegalStateException e) {
+                return "错误：" + e.getMessage();
+            }
 
             return "撤销成功：已恢复到上一个版本";
 
@@ -181,6 +236,39 @@ public class CodeEditorTools {
         }
     }
 
+    @Tool(description = "重做最近一次被撤销的编辑操作")
+    public String redoEdit(UndoRequest request) {
+        try {
+            Path path = Paths.get(request.path()).toAbsolutePath().normalize();
+
+            if (!isPathSafe(path)) {
+                return "错误：路径不安全，只能在当前工作目录内操作";
+            }
+
+            if (!Files.exists(path)) {
+                return "错误：文件不存在 - " + path;
+            }
+
+            try {
+                editHistory.redo(path.toString(), path);
+            } catch (IllegalStateException e) {
+                return "错误：" + e.getMessage();
+            }
+
+            return "重做成功：已恢复被撤销的编辑";
+
+        } catch (Exception e) {
+            logger.error("Redo edit failed", e);
+            return "重做操作失败: " + e.getMessage();
+        }
+    }
+
+    private static boolean endsWithNewline(FileChannel channel, long end) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, end - 1);
+        return last.get(0) == '\n';
+    }
+
     private boolean isPathSafe(Path path) {
         try {
             Path currentDir = Paths.get("").toAbsolutePath().normalize();
@@ -218,7 +306,44 @@ public class CodeEditorTools {
     }
 
     private String readFileWithLineNumbers(Path file, Optional<List<Integer>> viewRange) throws IOException {
-        List<String> lines = Files.readAllLines(file);
+        FileEditor.TextFormat format = FileEditor.detect(file);
+        if (format.alignment() != 1) {
+            // UTF-16 的换行不是单字节，不走行索引
+            return formatLines(file, format.decodeFile(Files.readAllBytes(file)).lines().toList(), viewRange);
+        }
+
+        LineIndex index = lineIndexCache.get(file);
+        long startLine = 1;
+        long endLine = index.getLineCount();
+
+        if (viewRange.isPresent() && viewRange.get().size() >= 1) {
+            startLine = Math.max(1, viewRange.get().get(0));
+            if (viewRange.get().size() >= 2 && viewRange.get().get(1) != -1) {
+                endLine = Math.min(index.getLineCount(), viewRange.get().get(1));
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("文件内容: ").append(file).append("\n\n");
+
+        // 只读取所需的行，输出超过上限后停止
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            index.forEachLine(channel, startLine, endLine, MAX_RESPONSE_LENGTH * 4, (line, bytes, clipped) -> {
+                int from = line == 1 ? format.bomLength() : 0;
+                appendLine(sb, line, new String(bytes, from, bytes.length - from, format.charset()));
+                return sb.length() <= MAX_RESPONSE_LENGTH;
+            });
+        }
+
+        String result = sb.toString();
+        if (result.length() > MAX_RESPONSE_LENGTH) {
+            return result.substring(0, MAX_RESPONSE_LENGTH) + TRUNCATED_MESSAGE;
+        }
+
+        return result;
+    }
+
+    private String formatLines(Path file, List<String> lines, Optional<List<Integer>> viewRange) {
         StringBuilder sb = new StringBuilder();
 
         int startLine = 1;
@@ -231,13 +356,10 @@ public class CodeEditorTools {
             }
         }
 
-        startLine = Math.max(1, startLine);
-        endLine = Math.min(lines.size(), endLine);
-
         sb.append("文件内容: ").append(file).append("\n\n");
 
-        for (int i = startLine - 1; i < endLine; i++) {
-            sb.append(String.format("%4d: %s\n", i + 1, lines.get(i)));
+        for (int i = startLine - 1; i < endLine && sb.length() <= MAX_RESPONSE_LENGTH; i++) {
+            appendLine(sb, i + 1, lines.get(i));
         }
 
         String result = sb.toString();
@@ -248,14 +370,20 @@ public class CodeEditorTools {
         return result;
     }
 
-    private int countOccurrences(String content, String target) {
-        int count = 0;
-        int index = 0;
-        while ((index = content.indexOf(target, index)) != -1) {
-            count++;
-            index += target.length();
+    /**
+     * 与 "%4d: %s\n" 的输出相同，不经过 String.format
+     */
+    private static void appendLine(StringBuilder sb, long line, String content) {
+        for (int width = Long.toString(line).length(); width < 4; width++) {
+            sb.append(' ');
+        }
+        sb.append(line).append(": ").append(content).append('\n');
+    }
+
+    private List<Long> findMatches(Path path, FileEditor.TextFormat format, byte[] needle) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return FileEditor.find(channel, needle, format.bomLength(), format.alignment(), 2);
         }
-        return count;
     }
 
     // Request records
@@ -16,6 +16,7 @@ public class FileOperationTools {
 
     private static final Logger logger = LoggerFactory.getLogger(FileOperationTools.class);
 
+    @ReadOnlyTool
     @Tool(description = "读取文件内容")
     public String readFile(ReadRequest request) {
         try {
@@ -0,0 +1,106 @@
+package io.eeaters.bot.open_manus.tool;
+
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import io.eeaters.bot.open_manus.process.JobLog;
+import io.eeaters.bot.open_manus.process.JobManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class JobTools {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobTools.class);
+
+    private static final int DEFAULT_TAIL_LINES = 50;
+
+    // 单次返回给模型的日志上限
+    private static final int MAX_READ_BYTES = 65536;
+
+    @Autowired
+    private JobManager jobManager;
+
+    @ReadOnlyTool
+    @Tool(description = "列出后台任务及其状态、退出码、运行时长、CPU时间、内存占用和日志大小")
+    public String listJobs() {
+        List<JobManager.JobInfo> jobs = jobManager.list();
+        if (jobs.isEmpty()) {
+            return "没有后台任务";
+        }
+        StringBuilder result = new StringBuilder();
+        for (JobManager.JobInfo job : jobs) {
+            result.append(describe(job)).append("\n");
+        }
+        return result.toString().trim();
+    }
+
+    @ReadOnlyTool
+    @Tool(description = "查看后台任务日志的最后若干行")
+    public String tailJob(TailRequest request) {
+        try {
+            int lines = request.lines() == null ? DEFAULT_TAIL_LINES : request.lines();
+            JobLog.Chunk chunk = jobManager.tail(request.jobId(), lines, MAX_READ_BYTES);
+            return describe(jobManager.get(request.jobId())) + "\n"
+                    + "日志 [" + chunk.from() + ", " + chunk.to() + "):\n" + chunk.text();
+        } catch (Exception e) {
+            logger.error("Tail job failed", e);
+            return "查看任务日志失败: " + e.getMessage();
+        }
+    }
+
+    @ReadOnlyTool
+    @Tool(description = "从指定字节偏移读取后台任务日志，返回内容和下一次读取的偏移，可用于分页或增量读取新输出")
+    public String readJobLog(ReadLogRequest request) {
+        try {
+            long offset = request.offset() == null ? 0 : request.offset();
+            int length = request.length() == null ? MAX_READ_BYTES : Math.min(request.length(), MAX_READ_BYTES);
+            JobLog.Chunk chunk = jobManager.read(request.jobId(), offset, length);
+            String skipped = chunk.from() > offset ? "（偏移 " + offset + " 之前的日志已轮转删除）\n" : "";
+            return skipped + "日志 [" + chunk.from() + ", " + chunk.to() + ")，下一次偏移: " + chunk.to() + "\n"
+                    + chunk.text();
+        } catch (Exception e) {
+            logger.error("Read job log failed", e);
+            return "读取任务日志失败: " + e.getMessage();
+        }
+    }
+
+    @Tool(description = "终止后台任务及其子进程")
+    public String killJob(JobRequest request) {
+        try {
+            return "已终止: " + describe(jobManager.kill(request.jobId()));
+        } catch (Exception e) {
+            logger.error("Kill job failed", e);
+            return "终止任务失败: " + e.getMessage();
+        }
+    }
+
+    private static String describe(JobManager.JobInfo job) {
+        return job.id() + " [" + job.status() + (job.exitCode() == null ? "" : " 退出码 " + job.exitCode()) + "]"
+                + " pid=" + job.pid()
+                + " 运行 " + job.elapsed().toSeconds() + "s"
+                + " CPU " + job.cpuTime().toMillis() + "ms"
+                + " 内存 " + job.rssBytes() / 1024 + "KB"
+                + " 日志 " + job.logBytes() + "B"
+                + " 命令: " + job.command();
+    }
+
+    // Request records
+    public record JobRequest(
+            @JsonPropertyDescription("任务ID，如 job-1") String jobId
+    ) {}
+
+    public record TailRequest(
+            @JsonPropertyDescription("任务ID，如 job-1") String jobId,
+            @JsonPropertyDescription("读取的行数（默认50）") Integer lines
+    ) {}
+
+    public record ReadLogRequest(
+            @JsonPropertyDescription("任务ID，如 job-1") String jobId,
+            @JsonPropertyDescription("起始字节偏移（默认0）") Long offset,
+            @JsonPropertyDescription("读取的最大字节数（默认且最多65536）") Integer length
+    ) {}
+}
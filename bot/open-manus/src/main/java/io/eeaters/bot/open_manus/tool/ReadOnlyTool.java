@@ -0,0 +1,17 @@
+package io.eeaters.bot.open_manus.tool;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记不修改文件和系统状态的工具方法。agent 在同一轮中可以并发执行这类调用，
+ * 未标记的工具视为有副作用，按调用顺序执行。
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadOnlyTool {
+}
@@ -0,0 +1,112 @@
+package io.eeaters.bot.open_manus.tool;
+
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import io.eeaters.bot.open_manus.search.CodeSearchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.PatternSyntaxException;
+
+@Component
+public class SearchTools {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchTools.class);
+
+    private static final int DEFAULT_MAX_RESULTS = 50;
+
+    private static final int MAX_RESULTS = 200;
+
+    // 每个文件最多列出的匹配行，其余只计数
+    private static final int MAX_LINES_PER_FILE = 10;
+
+    private static final int MAX_LINE_LENGTH = 200;
+
+    // 累计匹配这么多行后停止扫描，结果只统计已扫描的文件
+    private static final int LINE_BUDGET = 2000;
+
+    private static final int MAX_RESPONSE_LENGTH = 16000;
+
+    @Autowired
+    private CodeSearchService codeSearchService;
+
+    @ReadOnlyTool
+    @Tool(description = "在工作空间中搜索代码，支持字面量和正则表达式，可按文件 glob 过滤。返回按相关性排序、带行号的匹配行，比用 grep 更快")
+    public String searchCode(SearchRequest request) {
+        try {
+            if (request.query() == null || request.query().isEmpty()) {
+                return "错误：搜索内容不能为空";
+            }
+            boolean regex = Boolean.TRUE.equals(request.regex());
+            boolean ignoreCase = Boolean.TRUE.equals(request.ignoreCase());
+            int maxResults = request.maxResults() == null ? DEFAULT_MAX_RESULTS
+                    : Math.max(1, Math.min(request.maxResults(), MAX_RESULTS));
+
+            CodeSearchService.SearchResult result = codeSearchService.search(request.query(), regex, ignoreCase,
+                    request.glob(), MAX_LINES_PER_FILE, LINE_BUDGET);
+            if (result.files().isEmpty()) {
+                return "没有找到匹配: " + request.query() + "（已索引 " + result.indexed() + " 个文件）";
+            }
+            return format(result, maxResults);
+        } catch (PatternSyntaxException e) {
+            return "错误：正则表达式无效: " + e.getDescription();
+        } catch (Exception e) {
+            logger.error("Search code failed", e);
+            return "搜索失败: " + e.getMessage();
+        }
+    }
+
+    private String format(CodeSearchService.SearchResult result, int maxResults) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(result.files().size()).append(" 个文件中 ").append(result.lineCount()).append(" 行匹配")
+                .append("（已索引 ").append(result.indexed()).append(" 个文件，扫描 ").append(result.scanned())
+                .append(" 个，耗时 ").append(result.elapsed().toMillis()).append("ms）\n");
+        if (result.truncated()) {
+            sb.append("匹配过多，只扫描了部分文件，请使用更具体的搜索内容或 glob\n");
+        }
+
+        Path currentDir = Paths.get("").toAbsolutePath().normalize();
+        int shown = 0;
+        for (CodeSearchService.FileMatches file : result.files()) {
+            if (shown >= maxResults || sb.length() > MAX_RESPONSE_LENGTH) {
+                break;
+            }
+            Path path = file.path().startsWith(currentDir) ? currentDir.relativize(file.path()) : file.path();
+            sb.append('\n').append(path).append('\n');
+            int printed = 0;
+            for (CodeSearchService.LineMatch line : file.lines()) {
+                if (shown >= maxResults || sb.length() > MAX_RESPONSE_LENGTH) {
+                    break;
+                }
+                String text = line.text().strip();
+                if (text.length() > MAX_LINE_LENGTH) {
+                    text = text.substring(0, MAX_LINE_LENGTH) + "...";
+                }
+                sb.append(line.line()).append(": ").append(text).append('\n');
+                shown++;
+                printed++;
+            }
+            if (file.lineCount() > printed) {
+                sb.append("（该文件还有 ").append(file.lineCount() - printed).append(" 行匹配）\n");
+            }
+        }
+
+        if (shown < result.lineCount()) {
+            sb.append("\n仅显示前 ").append(shown).append(" 行，可用 glob 缩小范围或用 viewFile 查看上下文");
+        }
+        return sb.toString().trim();
+    }
+
+    // Request records
+    public record SearchRequest(
+            @JsonPropertyDescription("搜索内容") String query,
+            @JsonPropertyDescription("是否按 Java 正则表达式搜索（默认false，按字面量）") Boolean regex,
+            @JsonPropertyDescription("是否忽略大小写（默认false）") Boolean ignoreCase,
+            @JsonPropertyDescription("文件过滤 glob，如 *.java、*.{ts,tsx}、src/**/*.py（默认搜索全部文件）") String glob,
+            @JsonPropertyDescription("最多返回的匹配行数（默认50，最多200）") Integer maxResults
+    ) {}
+}
@@ -1,13 +1,22 @@
 package io.eeaters.bot.open_manus.tool;
 
 import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import io.eeaters.bot.open_manus.docker.DockerService;
+import io.eeaters.bot.open_manus.network.NetworkProbe;
+import io.eeaters.bot.open_manus.process.JobManager;
+import io.eeaters.bot.open_manus.process.ProcessInspector;
+import io.eeaters.bot.open_manus.process.ProcessResult;
+import io.eeaters.bot.open_manus.process.ProcessRunner;
+import io.eeaters.bot.open_manus.process.ShellSessionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
 import java.nio.file.*;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.regex.Pattern;
@@ -17,12 +26,31 @@ public class SystemTools {
 
     private static final Logger logger = LoggerFactory.getLogger(SystemTools.class);
     private static final long COMMAND_TIMEOUT_SECONDS = 120;
+    private static final int DEFAULT_PROCESS_LIMIT = 50;
+    private static final int MAX_COMMAND_LENGTH = 120;
+    private static final int PING_COUNT = 4;
     private static final Pattern DANGEROUS_COMMANDS = Pattern.compile(
             "(rm\\s+-rf|dd\\s+if=|mkfs\\.|format\\s|fdisk\\s|shutdown\\s|reboot\\s|passwd\\s|su\\s|sudo\\s+su|chmod\\s+777|chown\\s+root)",
             Pattern.CASE_INSENSITIVE
     );
 
-    private Process currentProcess = null;
+    @Autowired
+    private ProcessRunner processRunner;
+
+    @Autowired
+    private ShellSessionPool shellSessionPool;
+
+    @Autowired
+    private JobManager jobManager;
+
+    @Autowired
+    private ProcessInspector processInspector;
+
+    @Autowired
+    private NetworkProbe networkProbe;
+
+    @Autowired
+    private DockerService dockerService;
 
     @Tool(description = "执行bash命令。支持各种系统操作，包括文件管理、进程管理、网络操作等。长时运行命令应使用后台执行。")
     public String executeBash(BashRequest request) {
@@ -49,7 +77,7 @@ public class SystemTools {
             if (backgroundRun) {
                 return executeInBackground(command);
             } else {
-                return executeCommand(command);
+                return executeCommand(command, true);
             }
 
         } catch (Exception e) {
@@ -67,15 +95,18 @@ public class SystemTools {
                 return "错误：Docker命令不能为空";
             }
 
-            // 构建完整的Docker命令
-            String fullCommand = "docker " + command;
-
-            // 检查Docker是否可用
-            if (!isDockerAvailable()) {
+            // 检查Docker是否可用（结果有缓存）
+            if (!dockerService.isAvailable()) {
                 return "错误：Docker不可用。请确保Docker已安装并正在运行。";
             }
 
-            return executeCommand(fullCommand);
+            // 常用命令直接调用 Engine API，其余交给 docker CLI
+            String result = dockerService.execute(command.trim());
+            if (result != null) {
+                return result;
+            }
+
+            return executeCommand("docker " + command);
 
         } catch (Exception e) {
             logger.error("Docker execution failed", e);
@@ -83,29 +114,29 @@ public class SystemTools {
         }
     }
 
-    @Tool(description = "管理系统进程。可以查看进程列表、终止进程等")
+    @Tool(description = "管理系统进程。可以查看进程列表（支持按命令行或用户过滤、按cpu或rss排序、分页）、终止进程、查看端口占用等")
     public String manageProcess(ProcessRequest request) {
         try {
             String action = request.action();
 
             switch (action.toLowerCase()) {
                 case "list":
-                    return executeCommand("ps aux");
+                    return listProcesses(request);
                 case "kill":
                     if (request.pid() == null) {
                         return "错误：终止进程需要提供进程ID (pid)";
                     }
-                    return executeCommand("kill -TERM " + request.pid());
+                    return killProcess(request.pid(), false);
                 case "force_kill":
                     if (request.pid() == null) {
                         return "错误：强制终止进程需要提供进程ID (pid)";
                     }
-                    return executeCommand("kill -KILL " + request.pid());
+                    return killProcess(request.pid(), true);
                 case "port":
                     if (request.port() == null) {
                         return "错误：查看端口占用需要提供端口号";
                     }
-                    return executeCommand("lsof -i :" + request.port());
+                    return describePort(request.port());
                 default:
                     return "错误：不支持的操作。支持的操作：list, kill, force_kill, port";
             }
@@ -116,41 +147,96 @@ public class SystemTools {
         }
     }
 
-    @Tool(description = "网络诊断工具。包括ping、curl、网络连接测试等")
+    @ReadOnlyTool
+    @Tool(description = "网络诊断工具。包括ping、curl（HTTP HEAD）、nslookup（DNS解析）、telnet（TCP端口连接测试）等，可一次并发探测多个目标和端口，返回各自的耗时")
     public String networkDiagnostic(NetworkRequest request) {
         try {
             String action = request.action();
-            String target = request.target();
+            List<String> targets = new ArrayList<>();
+            if (request.target() != null && !request.target().trim().isEmpty()) {
+                targets.add(request.target().trim());
+            }
+            if (request.targets() != null) {
+                request.targets().stream().filter(t -> t != null && !t.isBlank()).map(String::trim).forEach(targets::add);
+            }
 
-            if (target == null || target.trim().isEmpty()) {
+            if (targets.isEmpty()) {
                 return "错误：网络诊断需要提供目标地址";
             }
 
-            String command;
+            StringBuilder result = new StringBuilder();
             switch (action.toLowerCase()) {
                 case "ping":
-                    command = "ping -c 4 " + target;
+                    for (NetworkProbe.PingResult ping : networkProbe.ping(targets, PING_COUNT)) {
+                        result.append(ping.host());
+                        if (ping.error() != null) {
+                            result.append(" 失败: ").append(ping.error());
+                        } else {
+                            result.append(" (").append(ping.address()).append(") ")
+                                    .append(ping.received()).append("/").append(ping.sent()).append(" 可达");
+                            if (ping.received() > 0) {
+                                result.append(" min/avg/max ").append(ping.minMillis()).append("/")
+                                        .append(ping.avgMillis()).append("/").append(ping.maxMillis()).append(" ms");
+                            }
+                        }
+                        result.append("\n");
+                    }
                     break;
                 case "curl":
-                    command = "curl -I " + target;
-                    break;
                 case "wget":
-                    command = "wget --spider " + target;
+                    for (NetworkProbe.HttpResult http : networkProbe.head(targets)) {
+                        result.append(http.url());
+                        if (http.error() != null) {
+                            result.append(" 失败: ").append(http.error());
+                        } else {
+                            result.append(" ").append(http.status()).append(" ").append(http.version());
+                            if (http.server() != null) {
+                                result.append(" server=").append(http.server());
+                            }
+                            if (http.contentType() != null) {
+                                result.append(" content-type=").append(http.contentType());
+                            }
+                            if (http.location() != null) {
+                                result.append(" location=").append(http.location());
+                            }
+                        }
+                        result.append(" ").append(http.elapsedMillis()).append(" ms\n");
+                    }
                     break;
                 case "nslookup":
-                    command = "nslookup " + target;
+                    for (NetworkProbe.DnsResult dns : networkProbe.resolve(targets)) {
+                        result.append(dns.host()).append(dns.error() != null
+                                ? " 解析失败: " + dns.error()
+                                : " -> " + String.join(", ", dns.addresses()));
+                        result.append(" ").append(dns.elapsedMillis()).append(" ms\n");
+                    }
                     break;
                 case "telnet":
-                    if (request.port() == null) {
+                    List<Integer> ports = new ArrayList<>();
+                    if (request.port() != null) {
+                        ports.add(request.port());
+                    }
+                    if (request.ports() != null) {
+                        ports.addAll(request.ports());
+                    }
+                    if (ports.isEmpty()) {
                         return "错误：telnet需要提供端口号";
                     }
-                    command = "timeout 5 telnet " + target + " " + request.port();
+                    for (NetworkProbe.ConnectResult connect : networkProbe.connect(targets, ports)) {
+                        result.append(connect.host()).append(":").append(connect.port());
+                        if (connect.address() != null && !connect.address().equals(connect.host())) {
+                            result.append(" (").append(connect.address()).append(")");
+                        }
+                        result.append(connect.open() ? " 连接成功" : " 连接失败: " + connect.error())
+                                .append(" dns ").append(connect.dnsMillis()).append(" ms")
+                                .append(" connect ").append(connect.connectMillis()).append(" ms\n");
+                    }
                     break;
                 default:
                     return "错误：不支持的网络操作。支持的操作：ping, curl, wget, nslookup, telnet";
             }
 
-            return executeCommand(command);
+            return result.toString().trim();
 
         } catch (Exception e) {
             logger.error("Network diagnostic failed", e);
@@ -159,42 +245,30 @@ public class SystemTools {
     }
 
     private String executeCommand(String command) {
+        return executeCommand(command, false);
+    }
+
+    /**
+     * @param stateful 在当前任务的常驻 shell 中执行，cd、export 对之后的命令生效
+     */
+    private String executeCommand(String command, boolean stateful) {
         try {
             logger.info("Executing command: {}", command);
 
-            ProcessBuilder pb = new ProcessBuilder("/bin/bash", "-c", command);
-            pb.directory(new File(System.getProperty("user.dir")));
-            pb.redirectErrorStream(true);
-
-            Process process = pb.start();
-            currentProcess = process;
-
-            // 读取输出
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                }
-            }
+            ProcessResult result = shellSessionPool.execute(command, Duration.ofSeconds(COMMAND_TIMEOUT_SECONDS),
+                    stateful);
+            String output = result.output().trim();
 
-            // 等待命令完成
-            boolean finished = process.waitFor(COMMAND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-            if (!finished) {
-                process.destroyForcibly();
+            if (result.timedOut()) {
                 return "命令执行超时（超过" + COMMAND_TIMEOUT_SECONDS + "秒），已强制终止进程。\n部分输出：\n" + output;
             }
 
-            int exitCode = process.exitValue();
-            String result = output.toString().trim();
-
-            if (exitCode != 0) {
-                return "命令执行失败，退出码: " + exitCode + "\n输出：\n" +
-                       (result.isEmpty() ? "无输出" : result);
+            if (result.exitCode() != 0) {
+                return "命令执行失败，退出码: " + result.exitCode() + "\n输出：\n" +
+                       (output.isEmpty() ? "无输出" : output);
             }
 
-            return result.isEmpty() ? "命令执行完成，无输出" : result;
+            return output.isEmpty() ? "命令执行完成，无输出" : output;
 
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -202,29 +276,27 @@ public class SystemTools {
         } catch (Exception e) {
             logger.error("Command execution failed", e);
             return "命令执行异常: " + e.getMessage();
-        } finally {
-            currentProcess = null;
         }
     }
 
     private String executeInBackground(String command) {
         try {
-            // 确保命令以 & 结尾
-            if (!command.endsWith("&")) {
-                command += " &";
+            // 任务由 JobManager 跟踪，去掉结尾的 &，否则记录的只是立即退出的 bash
+            String trimmed = command.trim();
+            if (trimmed.endsWith("&") && !trimmed.endsWith("&&")) {
+                trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
             }
 
-            ProcessBuilder pb = new ProcessBuilder("/bin/bash", "-c", command);
-            pb.directory(new File(System.getProperty("user.dir")));
-            pb.redirectErrorStream(true);
-            pb.redirectOutput(ProcessBuilder.Redirect.appendTo(
-                    new File("background_" + System.currentTimeMillis() + ".log")));
-
-            Process process = pb.start();
+            // 在当前任务常驻 shell 的目录中启动，与前面的 cd 保持一致
+            JobManager.JobInfo job = jobManager.start(trimmed, shellSessionPool.currentDirectory());
 
             // 不等待后台进程完成
-            return "后台命令已启动，进程ID: " + process.pid() + "\n命令: " + command;
+            return "后台任务已启动: " + job.id() + "，进程ID: " + job.pid() + "\n命令: " + trimmed
+                    + "\n使用 tailJob 查看输出，killJob 终止任务";
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "后台命令执行被中断";
         } catch (Exception e) {
             logger.error("Background execution failed", e);
             return "后台命令执行失败: " + e.getMessage();
@@ -232,19 +304,8 @@ public class SystemTools {
     }
 
     private String interruptCurrentProcess() {
-        if (currentProcess != null && currentProcess.isAlive()) {
-            currentProcess.destroy();
-            try {
-                if (!currentProcess.waitFor(5, TimeUnit.SECONDS)) {
-                    currentProcess.destroyForcibly();
-                }
-                return "已发送中断信号给当前进程";
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return "中断进程时被取消";
-            }
-        }
-        return "没有正在运行的进程";
+        int killed = shellSessionPool.interruptAll() + processRunner.killRunning();
+        return killed > 0 ? "已终止 " + killed + " 个正在运行的进程" : "没有正在运行的进程";
     }
 
     private boolean isDangerousCommand(String command) {
@@ -261,13 +322,62 @@ public class SystemTools {
                lowerCommand.contains("daemon");
     }
 
-    private boolean isDockerAvailable() {
-        try {
-            Process process = new ProcessBuilder("docker", "--version").start();
-            return process.waitFor(5, TimeUnit.SECONDS) && process.exitValue() == 0;
-        } catch (Exception e) {
-            return false;
+    private String listProcesses(ProcessRequest request) {
+        int offset = request.offset() == null ? 0 : request.offset();
+        int limit = request.limit() == null ? DEFAULT_PROCESS_LIMIT : request.limit();
+        ProcessInspector.Page<ProcessInspector.ProcessEntry> page =
+                processInspector.list(request.filter(), request.sortBy(), offset, limit);
+
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("共 %d 个进程，显示第 %d-%d 个%n", page.total(),
+                page.items().isEmpty() ? 0 : page.offset() + 1, page.offset() + page.items().size()));
+        result.append(String.format("%-8s %-8s %-10s %-2s %6s %10s %10s  %s%n",
+                "PID", "PPID", "USER", "S", "%CPU", "CPU(s)", "RSS(KB)", "COMMAND"));
+        for (ProcessInspector.ProcessEntry entry : page.items()) {
+            result.append(String.format("%-8d %-8d %-10s %-2s %6.1f %10.2f %10d  %s%n",
+                    entry.pid(), entry.ppid(), entry.user(), entry.state(), entry.cpuPercent(),
+                    entry.cpuTime().toMillis() / 1000.0, entry.rssBytes() / 1024, abbreviate(entry.command())));
+        }
+        if (page.offset() + page.items().size() < page.total()) {
+            result.append("还有更多进程，使用 offset=").append(page.offset() + page.items().size()).append(" 继续查看");
         }
+        return result.toString().trim();
+    }
+
+    private String killProcess(long pid, boolean force) {
+        Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+        if (handle.isEmpty()) {
+            return "进程不存在: " + pid;
+        }
+        boolean requested = force ? handle.get().destroyForcibly() : handle.get().destroy();
+        if (!requested) {
+            return "无法终止进程 " + pid + "（权限不足或不允许终止）";
+        }
+        return (force ? "已发送 SIGKILL 到进程 " : "已发送 SIGTERM 到进程 ") + pid;
+    }
+
+    private String describePort(int port) {
+        List<ProcessInspector.SocketEntry> sockets = processInspector.portOwners(port);
+        if (sockets.isEmpty()) {
+            return "端口 " + port + " 没有被占用";
+        }
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%-6s %-24s %-24s %-12s %-8s %s%n", "PROTO", "LOCAL", "REMOTE", "STATE", "PID",
+                "COMMAND"));
+        for (ProcessInspector.SocketEntry socket : sockets) {
+            result.append(String.format("%-6s %-24s %-24s %-12s %-8s %s%n", socket.protocol(), socket.local(),
+                    socket.remote(), socket.state(), socket.pid() == null ? "-" : socket.pid(),
+                    socket.command() == null ? "" : abbreviate(socket.command())));
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * 命令行合并为一行并截断，避免个别进程的超长参数占满输出
+     */
+    private static String abbreviate(String command) {
+        String line = command.replaceAll("\\s+", " ").trim();
+        return line.length() > MAX_COMMAND_LENGTH ? line.substring(0, MAX_COMMAND_LENGTH) + "..." : line;
     }
 
     // Request records
@@ -282,12 +392,18 @@ public class SystemTools {
     public record ProcessRequest(
             @JsonPropertyDescription("操作类型：list, kill, force_kill, port") String action,
             @JsonPropertyDescription("进程ID（用于kill操作）") Integer pid,
-            @JsonPropertyDescription("端口号（用于port操作）") Integer port
+            @JsonPropertyDescription("端口号（用于port操作）") Integer port,
+            @JsonPropertyDescription("按命令行或用户过滤，忽略大小写（用于list操作）") String filter,
+            @JsonPropertyDescription("排序方式：pid（默认）、cpu、rss（用于list操作）") String sortBy,
+            @JsonPropertyDescription("跳过的进程数（用于list操作，默认0）") Integer offset,
+            @JsonPropertyDescription("返回的进程数（用于list操作，默认50）") Integer limit
     ) {}
 
     public record NetworkRequest(
             @JsonPropertyDescription("网络操作类型：ping, curl, wget, nslookup, telnet") String action,
             @JsonPropertyDescription("目标地址或域名") String target,
-            @JsonPropertyDescription("端口号（telnet需要）") Integer port
+            @JsonPropertyDescription("端口号（telnet需要）") Integer port,
+            @JsonPropertyDescription("同时探测的多个目标地址或域名，与target合并") List<String> targets,
+            @JsonPropertyDescription("同时探测的多个端口（telnet），与port合并") List<Integer> ports
     ) {}
 }
\ No newline at end of file
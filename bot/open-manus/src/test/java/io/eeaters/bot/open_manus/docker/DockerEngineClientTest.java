@@ -0,0 +1,184 @@
+package io.eeaters.bot.open_manus.docker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 用本地 unix socket 上的假服务端验证 {@link DockerEngineClient} 的响应解析和连接复用
+ */
+class DockerEngineClientTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private Path directory;
+
+    private FakeEngine engine;
+
+    private DockerEngineClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("docker-engine-test");
+        engine = new FakeEngine(directory.resolve("docker.sock"));
+        client = new DockerEngineClient(engine.socket, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        engine.close();
+        Files.deleteIfExists(engine.socket);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    void chunkedResponseIsReadAndConnectionReused() throws IOException {
+        // 块头带扩展，末尾带 trailer，读完后连接应放回空闲池
+        engine.respond("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Transfer-Encoding: chunked\r\n"
+                + "\r\n"
+                + "5\r\n[{\"Id\r\n"
+                + "7;name=value\r\n\":\"abc\"\r\n"
+                + "2\r\n}]\r\n"
+                + "0\r\n"
+                + "X-Trailer: done\r\n"
+                + "\r\n", false);
+
+        DockerEngineClient.Response first = client.send("GET", "/containers/json", TIMEOUT);
+        assertEquals(200, first.status());
+        assertEquals("[{\"Id\":\"abc\"}]", first.body());
+
+        DockerEngineClient.Response second = client.send("GET", "/containers/json", TIMEOUT);
+        assertEquals("[{\"Id\":\"abc\"}]", second.body());
+        assertEquals(1, engine.accepted.get());
+        assertEquals(List.of("GET /containers/json HTTP/1.1", "GET /containers/json HTTP/1.1"), engine.requests);
+    }
+
+    @Test
+    void reconnectsWhenIdleConnectionWasClosedByServer() throws IOException {
+        // 服务端回完响应后关闭连接但没有发 Connection: close，客户端会把它当作可复用连接
+        engine.respond("HTTP/1.1 200 OK\r\n"
+                + "Content-Length: 2\r\n"
+                + "\r\n"
+                + "OK", true);
+
+        assertEquals("OK", client.send("GET", "/_ping", TIMEOUT).body());
+        engine.awaitClosed(1);
+
+        DockerEngineClient.Response response = client.send("GET", "/_ping", TIMEOUT);
+        assertEquals(200, response.status());
+        assertEquals("OK", response.body());
+        assertEquals(2, engine.accepted.get());
+    }
+
+    /**
+     * 对每个请求回同一个响应；closeAfterResponse 为 true 时每次响应后关闭连接
+     */
+    private static final class FakeEngine implements AutoCloseable {
+
+        final Path socket;
+
+        final AtomicInteger accepted = new AtomicInteger();
+
+        final AtomicInteger closed = new AtomicInteger();
+
+        final List<String> requests = new CopyOnWriteArrayList<>();
+
+        private final ServerSocketChannel server;
+
+        private volatile String response;
+
+        private volatile boolean closeAfterResponse;
+
+        FakeEngine(Path socket) throws IOException {
+            this.socket = socket;
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Thread.ofVirtual().name("fake-docker-engine").start(this::acceptLoop);
+        }
+
+        void respond(String response, boolean closeAfterResponse) {
+            this.response = response;
+            this.closeAfterResponse = closeAfterResponse;
+        }
+
+        void awaitClosed(int count) {
+            long deadline = System.nanoTime() + TIMEOUT.toNanos();
+            while (closed.get() < count) {
+                if (System.nanoTime() > deadline) {
+                    fail("Fake engine did not close the connection");
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void acceptLoop() {
+            while (server.isOpen()) {
+                try {
+                    SocketChannel channel = server.accept();
+                    accepted.incrementAndGet();
+                    Thread.ofVirtual().start(() -> serve(channel));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(SocketChannel channel) {
+            try (channel) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.US_ASCII));
+                OutputStream output = Channels.newOutputStream(channel);
+                String requestLine;
+                while ((requestLine = reader.readLine()) != null) {
+                    requests.add(requestLine);
+                    String header;
+                    while ((header = reader.readLine()) != null && !header.isEmpty()) {
+                        // 请求没有请求体，跳过请求头即可
+                    }
+                    output.write(response.getBytes(StandardCharsets.US_ASCII));
+                    output.flush();
+                    if (closeAfterResponse) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // 客户端关闭连接
+            } finally {
+                closed.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
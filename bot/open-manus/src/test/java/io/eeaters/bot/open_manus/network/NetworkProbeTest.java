@@ -0,0 +1,97 @@
+package io.eeaters.bot.open_manus.network;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用本机回环地址上的监听端口验证 {@link NetworkProbe}，不依赖外部网络
+ */
+class NetworkProbeTest {
+
+    private NetworkProbe probe;
+
+    private ServerSocket listener;
+
+    private HttpServer httpServer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        probe = new NetworkProbe(Duration.ofSeconds(2));
+        listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/moved");
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        httpServer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        probe.shutdown();
+        listener.close();
+        httpServer.stop(0);
+    }
+
+    @Test
+    void connectReportsOpenAndClosedPortsInInputOrder() throws IOException {
+        int openPort = listener.getLocalPort();
+        int closedPort;
+        try (ServerSocket unused = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = unused.getLocalPort();
+        }
+
+        List<NetworkProbe.ConnectResult> results = probe.connect(List.of("127.0.0.1"), List.of(openPort, closedPort));
+
+        assertEquals(2, results.size());
+        NetworkProbe.ConnectResult open = results.get(0);
+        assertEquals(openPort, open.port());
+        assertTrue(open.open());
+        assertEquals("127.0.0.1", open.address());
+        assertNull(open.error());
+        NetworkProbe.ConnectResult closed = results.get(1);
+        assertEquals(closedPort, closed.port());
+        assertFalse(closed.open());
+        assertNotNull(closed.error());
+    }
+
+    @Test
+    void headDoesNotFollowRedirects() {
+        String url = "127.0.0.1:" + httpServer.getAddress().getPort() + "/";
+
+        List<NetworkProbe.HttpResult> results = probe.head(List.of(url));
+
+        NetworkProbe.HttpResult result = results.get(0);
+        assertEquals(302, result.status());
+        assertEquals("/moved", result.location());
+        assertEquals("text/plain", result.contentType());
+        assertNull(result.error());
+    }
+
+    @Test
+    void resolveAndFailuresStayPerTarget() {
+        List<NetworkProbe.DnsResult> results = probe.resolve(List.of("localhost", "invalid host name"));
+
+        assertFalse(results.get(0).addresses().isEmpty());
+        assertNull(results.get(0).error());
+        assertTrue(results.get(1).addresses().isEmpty());
+        assertNotNull(results.get(1).error());
+    }
+}
@@ -52,9 +52,6 @@ public class Main {
 			}
 
 			try {
-				taskWorkflow.initialize();
-				logger.info("Workflow initialized successfully");
-
 				GraphRepresentation graph = taskWorkflow.getGraphRepresentation();
 				logger.info("Workflow Graph:\n{}", graph.content());
 
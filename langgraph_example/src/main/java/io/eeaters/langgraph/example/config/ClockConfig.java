@@ -0,0 +1,20 @@
+package io.eeaters.langgraph.example.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+/**
+ * 工作流使用的时钟。所有与重试、退避、过期相关的时间计算都从这里取当前时间， 仿真和测试时可以替换为
+ * {@link io.eeaters.langgraph.example.simulation.VirtualClock}。
+ */
+@Configuration
+public class ClockConfig {
+
+	@Bean
+	public Clock workflowClock() {
+		return Clock.systemDefaultZone();
+	}
+
+}
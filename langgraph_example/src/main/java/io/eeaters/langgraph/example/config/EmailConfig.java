@@ -27,6 +27,18 @@ public class EmailConfig {
 
 	private String fromName;
 
+	/**
+	 * 邮件收发方式：imap 连接真实邮箱；replay 从 replayPath 指向的 mbox 文件或 maildir 目录离线重放。
+	 */
+	private String transport = "imap";
+
+	private String replayPath;
+
+	/**
+	 * 重放加速倍数，60 表示快照中的一小时在一分钟内重放完。
+	 */
+	private double replaySpeed = 60;
+
 	public String getHost() {
 		return host;
 	}
@@ -107,6 +119,30 @@ public class EmailConfig {
 		this.fromName = fromName;
 	}
 
+	public String getTransport() {
+		return transport;
+	}
+
+	public void setTransport(String transport) {
+		this.transport = transport;
+	}
+
+	public String getReplayPath() {
+		return replayPath;
+	}
+
+	public void setReplayPath(String replayPath) {
+		this.replayPath = replayPath;
+	}
+
+	public double getReplaySpeed() {
+		return replaySpeed;
+	}
+
+	public void setReplaySpeed(double replaySpeed) {
+		this.replaySpeed = replaySpeed;
+	}
+
 	public boolean isEnableDebug() {
 		return false;
 	}
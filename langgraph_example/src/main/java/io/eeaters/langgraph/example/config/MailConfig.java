@@ -1,12 +1,20 @@
 package io.eeaters.langgraph.example.config;
 
+import io.eeaters.langgraph.example.mail.MailSnapshot;
+import io.eeaters.langgraph.example.mail.MailTransport;
+import io.eeaters.langgraph.example.mail.ReplayMailTransport;
 import io.eeaters.langgraph.example.service.ConfigService;
+import jakarta.mail.MessagingException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.util.Properties;
 
 @Configuration
@@ -32,4 +40,15 @@ public class MailConfig {
 		return mailSender;
 	}
 
+	/**
+	 * email.transport=replay 时从快照离线重放收件箱，发出的邮件不会真正发送
+	 */
+	@Bean
+	@ConditionalOnProperty(prefix = "email", name = "transport", havingValue = "replay")
+	public MailTransport replayMailTransport(Clock clock) throws IOException, MessagingException {
+		EmailConfig emailConfig = configService.getEmailConfig();
+		MailSnapshot snapshot = MailSnapshot.load(Path.of(emailConfig.getReplayPath()));
+		return new ReplayMailTransport(snapshot, clock, emailConfig.getReplaySpeed());
+	}
+
 }
\ No newline at end of file
@@ -1,9 +1,15 @@
 package io.eeaters.langgraph.example.config;
 
 import io.eeaters.langgraph.example.model.Party;
+import io.eeaters.langgraph.example.model.PartyContact;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Configuration
 @ConfigurationProperties(prefix = "workflow")
 public class WorkflowConfig {
@@ -24,6 +30,43 @@ public class WorkflowConfig {
 
 	private boolean enableDebug = false;
 
+	private String archivePath = "data/workflow-archive.jsonl.gz";
+
+	/**
+	 * 参与协调的各方。为空时沿用 firstParty/secondParty 及对应邮箱的两方配置。
+	 */
+	private List<PartyContact> parties = new ArrayList<>();
+
+	/**
+	 * 达成一致所需的同意回复数，0 表示需要全部参与方同意。
+	 */
+	private int replyQuorum = 0;
+
+	/**
+	 * 为 true 时即使只有两方也使用并行发送、汇合回复的流程。
+	 */
+	private boolean parallelFanOut = false;
+
+	/**
+	 * 节点默认截止时间（秒），超时后中断节点线程并按失败处理。
+	 */
+	private long nodeTimeoutSeconds = 60;
+
+	/**
+	 * 按节点 id 覆盖截止时间（秒）。
+	 */
+	private Map<String, Long> nodeTimeouts = new HashMap<>();
+
+	/**
+	 * 同一依赖（SMTP/IMAP）连续失败多少次后熔断。
+	 */
+	private int circuitFailureThreshold = 5;
+
+	/**
+	 * 熔断打开后多少秒放行一次探测调用。
+	 */
+	private long circuitOpenSeconds = 60;
+
 	public Party getFirstParty() {
 		return firstParty;
 	}
@@ -88,4 +131,68 @@ public class WorkflowConfig {
 		this.enableDebug = enableDebug;
 	}
 
-}
\ No newline at end of file
+	public String getArchivePath() {
+		return archivePath;
+	}
+
+	public void setArchivePath(String archivePath) {
+		this.archivePath = archivePath;
+	}
+
+	public List<PartyContact> getParties() {
+		return parties;
+	}
+
+	public void setParties(List<PartyContact> parties) {
+		this.parties = parties;
+	}
+
+	public int getReplyQuorum() {
+		return replyQuorum;
+	}
+
+	public void setReplyQuorum(int replyQuorum) {
+		this.replyQuorum = replyQuorum;
+	}
+
+	public boolean isParallelFanOut() {
+		return parallelFanOut;
+	}
+
+	public void setParallelFanOut(boolean parallelFanOut) {
+		this.parallelFanOut = parallelFanOut;
+	}
+
+	public long getNodeTimeoutSeconds() {
+		return nodeTimeoutSeconds;
+	}
+
+	public void setNodeTimeoutSeconds(long nodeTimeoutSeconds) {
+		this.nodeTimeoutSeconds = nodeTimeoutSeconds;
+	}
+
+	public Map<String, Long> getNodeTimeouts() {
+		return nodeTimeouts;
+	}
+
+	public void setNodeTimeouts(Map<String, Long> nodeTimeouts) {
+		this.nodeTimeouts = nodeTimeouts;
+	}
+
+	public int getCircuitFailureThreshold() {
+		return circuitFailureThreshold;
+	}
+
+	public void setCircuitFailureThreshold(int circuitFailureThreshold) {
+		this.circuitFailureThreshold = circuitFailureThreshold;
+	}
+
+	public long getCircuitOpenSeconds() {
+		return circuitOpenSeconds;
+	}
+
+	public void setCircuitOpenSeconds(long circuitOpenSeconds) {
+		this.circuitOpenSeconds = circuitOpenSeconds;
+	}
+
+}
@@ -1,18 +1,45 @@
 package io.eeaters.langgraph.example.controller;
 
+import io.eeaters.langgraph.example.model.Party;
+import io.eeaters.langgraph.example.model.Task;
+import io.eeaters.langgraph.example.model.TaskQuery;
+import io.eeaters.langgraph.example.model.TaskStatus;
 import io.eeaters.langgraph.example.model.WorkflowExecution;
 import io.eeaters.langgraph.example.service.TaskService;
 import io.eeaters.langgraph.example.service.WorkflowExecutionService;
+import io.eeaters.langgraph.example.workflow.TaskWorkflow;
+import io.eeaters.langgraph.example.workflow.WorkflowGraphRegistry;
+import io.eeaters.langgraph.example.workflow.WorkflowState;
+import jakarta.annotation.PreDestroy;
+import org.bsc.langgraph4j.NodeOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/workflow")
@@ -26,6 +53,19 @@ public class WorkflowController {
     @Autowired
     private TaskService taskService;
 
+    @Autowired
+    private WorkflowGraphRegistry graphRegistry;
+
+    @Autowired
+    private TaskWorkflow taskWorkflow;
+
+    private final ExecutorService streamExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PreDestroy
+    public void shutdown() {
+        streamExecutor.shutdownNow();
+    }
+
     @GetMapping("/status")
     public Map<String, Object> getWorkflowStatus() {
         Map<String, Object> status = new HashMap<>();
@@ -63,4 +103,123 @@ public class WorkflowController {
     public List<WorkflowExecution> getWaitingExecutions() {
         return workflowExecutionService.getExecutionsWaitingForReply();
     }
-}
\ No newline at end of file
+
+    @GetMapping("/archive")
+    public List<WorkflowExecution> getArchivedExecutions(@RequestParam String taskId,
+                                                         @RequestParam(defaultValue = "100") int limit) {
+        return workflowExecutionService.findArchivedExecutions(taskId, limit);
+    }
+
+    /**
+     * 已预编译的工作流图变体及当前使用的变体指纹
+     */
+    @GetMapping("/definitions")
+    public Map<String, Object> getDefinitions() {
+        Map<String, Object> definitions = new LinkedHashMap<>();
+        definitions.put("active", graphRegistry.active().fingerprint());
+        definitions.put("variants", graphRegistry.getVariants().stream()
+                .map(WorkflowGraphRegistry.Variant::fingerprint)
+                .toList());
+        return definitions;
+    }
+
+    /**
+     * 按当前配置重新编译工作流图并原子替换，进行中的任务继续使用原来的图
+     */
+    @PostMapping("/definitions/reload")
+    public Set<String> reloadDefinitions() {
+        return graphRegistry.reload();
+    }
+
+    /**
+     * 按计划时间范围、状态、当前参与方和地点查询任务，结果按计划时间升序
+     */
+    @GetMapping("/tasks")
+    public List<Task> queryTasks(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Set<TaskStatus> status,
+            @RequestParam(required = false) Party party,
+            @RequestParam(required = false) String location,
+            @RequestParam(defaultValue = "100") int limit) {
+        return taskService.queryTasks(TaskQuery.builder()
+                .scheduledFrom(from)
+                .scheduledTo(to)
+                .statuses(status)
+                .currentParty(party)
+                .location(location)
+                .limit(limit)
+                .build());
+    }
+
+    /**
+     * 创建任务并执行工作流，每个节点完成后以 SSE 事件推送其输出，直到中断等待或结束
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamExecution(@RequestBody Task task) {
+        if (task.getId() == null) {
+            task.setId(UUID.randomUUID().toString());
+        }
+        SseEmitter emitter = new SseEmitter(0L);
+        streamExecutor.execute(() -> stream(emitter, listener -> taskWorkflow.execute(task, listener)));
+        return emitter;
+    }
+
+    /**
+     * 从检查点恢复工作流并推送后续节点的输出
+     */
+    @PostMapping(value = "/stream/{threadId}/resume", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamResume(@PathVariable String threadId) {
+        SseEmitter emitter = new SseEmitter(0L);
+        streamExecutor.execute(() -> stream(emitter, listener -> taskWorkflow.resume(threadId, Map.of(), listener)));
+        return emitter;
+    }
+
+    private void stream(SseEmitter emitter,
+                        Function<Consumer<NodeOutput<WorkflowState>>, Optional<WorkflowState>> run) {
+        // 客户端断开后工作流照常执行，只是不再推送
+        AtomicBoolean connected = new AtomicBoolean(true);
+        emitter.onCompletion(() -> connected.set(false));
+        emitter.onTimeout(() -> connected.set(false));
+        emitter.onError(e -> connected.set(false));
+
+        try {
+            Optional<WorkflowState> result = run.apply(output ->
+                    send(emitter, connected, "node", toEvent(output.node(), output.state())));
+            send(emitter, connected, "done", result
+                    .map(state -> toEvent(state.getCurrentStep(), state))
+                    .orElseGet(() -> Map.of("retryScheduled", true)));
+            emitter.complete();
+        } catch (Exception e) {
+            logger.error("Workflow stream failed", e);
+            send(emitter, connected, "error", Map.of("message", String.valueOf(e.getMessage())));
+            emitter.complete();
+        }
+    }
+
+    private void send(SseEmitter emitter, AtomicBoolean connected, String name, Object data) {
+        if (!connected.get()) {
+            return;
+        }
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            connected.set(false);
+        }
+    }
+
+    private Map<String, Object> toEvent(String node, WorkflowState state) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("node", node);
+        event.put("step", state.getCurrentStep());
+        Task task = state.getTask();
+        if (task != null) {
+            event.put("taskId", task.getId());
+            event.put("taskStatus", task.getStatus());
+        }
+        event.put("retryCount", state.getRetryCount());
+        event.put("completed", state.isCompleted());
+        event.put("terminated", state.isTerminated());
+        return event;
+    }
+}
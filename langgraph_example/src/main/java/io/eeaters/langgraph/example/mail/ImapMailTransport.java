@@ -0,0 +1,88 @@
+package io.eeaters.langgraph.example.mail;
+
+import io.eeaters.langgraph.example.config.EmailConfig;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Store;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * 通过 SMTP 发送、IMAP 读取收件箱的默认通道
+ */
+@Component
+@ConditionalOnProperty(prefix = "email", name = "transport", havingValue = "imap", matchIfMissing = true)
+public class ImapMailTransport implements MailTransport {
+
+	@Autowired
+	private EmailConfig emailConfig;
+
+	@Autowired
+	private JavaMailSender mailSender;
+
+	/**
+	 * 显式设置 Message-ID 并返回，对方回复的 References 会引用它，回复才能关联回本次请求
+	 */
+	@Override
+	public String send(String to, String subject, String content) throws MessagingException {
+		MimeMessage message = mailSender.createMimeMessage();
+		MimeMessageHelper helper = new MimeMessageHelper(message, StandardCharsets.UTF_8.name());
+		helper.setFrom(emailConfig.getFromAddress());
+		helper.setTo(to);
+		helper.setSubject(subject);
+		helper.setText(content);
+
+		String messageId = "<" + UUID.randomUUID() + "@" + domainOf(emailConfig.getFromAddress()) + ">";
+		message.setHeader("Message-ID", messageId);
+
+		mailSender.send(message);
+
+		return messageId;
+	}
+
+	@Override
+	public void readInbox(MessageHandler handler) throws MessagingException {
+		Properties props = new Properties();
+		props.put("mail.store.protocol", emailConfig.getProtocol());
+		props.put("mail.imap.ssl.enable", emailConfig.isSsl());
+		props.put("mail.imap.host", emailConfig.getHost());
+		props.put("mail.imap.port", emailConfig.getPort());
+
+		Session session = Session.getDefaultInstance(props);
+		session.setDebug(emailConfig.isEnableDebug());
+
+		Store store = session.getStore(emailConfig.getProtocol());
+		store.connect(emailConfig.getUsername(), emailConfig.getPassword());
+		try {
+			Folder inbox = store.getFolder(emailConfig.getInboxFolder());
+			inbox.open(Folder.READ_ONLY);
+			try {
+				for (Message message : inbox.getMessages()) {
+					handler.handle(message);
+				}
+			}
+			finally {
+				inbox.close(false);
+			}
+		}
+		finally {
+			store.close();
+		}
+	}
+
+	private static String domainOf(String address) {
+		int at = address == null ? -1 : address.lastIndexOf('@');
+		return at >= 0 ? address.substring(at + 1) : "localhost";
+	}
+
+}
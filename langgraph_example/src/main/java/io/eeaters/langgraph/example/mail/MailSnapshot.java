@@ -0,0 +1,129 @@
+package io.eeaters.langgraph.example.mail;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 从 mbox 文件或 maildir 目录加载的收件箱快照，邮件按发送时间排序。
+ */
+public final class MailSnapshot {
+
+	private static final Session SESSION = Session.getInstance(new Properties());
+
+	// mboxrd 转义：正文中以 From 开头的行被写成 >From，多层转义逐层去掉一个 >
+	private static final Pattern ESCAPED_FROM = Pattern.compile("^>+From ");
+
+	private final List<Entry> entries;
+
+	/**
+	 * 快照中的一封邮件。没有 Date 头的邮件沿用前一封的时间，保持文件中的顺序。
+	 */
+	public record Entry(Instant sentAt, MimeMessage message) {
+	}
+
+	private MailSnapshot(List<Entry> entries) {
+		this.entries = entries;
+	}
+
+	public static MailSnapshot load(Path path) throws IOException, MessagingException {
+		List<byte[]> raw = Files.isDirectory(path) ? readMaildir(path) : readMbox(path);
+
+		List<Entry> entries = new ArrayList<>(raw.size());
+		Instant previous = Instant.EPOCH;
+		for (byte[] bytes : raw) {
+			MimeMessage message = new MimeMessage(SESSION, new ByteArrayInputStream(bytes));
+			Date sentDate = message.getSentDate();
+			Instant sentAt = sentDate != null ? sentDate.toInstant() : previous;
+			entries.add(new Entry(sentAt, message));
+			previous = sentAt;
+		}
+		entries.sort(Comparator.comparing(Entry::sentAt));
+		return new MailSnapshot(List.copyOf(entries));
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * maildir 中 cur 和 new 目录下的每个文件是一封邮件；也接受直接存放邮件文件的目录
+	 */
+	private static List<byte[]> readMaildir(Path dir) throws IOException {
+		List<Path> files = new ArrayList<>();
+		for (String sub : List.of("cur", "new")) {
+			Path subDir = dir.resolve(sub);
+			if (Files.isDirectory(subDir)) {
+				try (Stream<Path> list = Files.list(subDir)) {
+					list.filter(Files::isRegularFile).forEach(files::add);
+				}
+			}
+		}
+		if (files.isEmpty()) {
+			try (Stream<Path> list = Files.list(dir)) {
+				list.filter(Files::isRegularFile).forEach(files::add);
+			}
+		}
+		files.sort(Comparator.comparing(Path::getFileName));
+
+		List<byte[]> raw = new ArrayList<>(files.size());
+		for (Path file : files) {
+			raw.add(Files.readAllBytes(file));
+		}
+		return raw;
+	}
+
+	/**
+	 * 按 "From " 分隔行切分 mbox。以 ISO-8859-1 读取使每个字节原样保留，由 MimeMessage 自行处理编码。
+	 */
+	private static List<byte[]> readMbox(Path file) throws IOException {
+		List<byte[]> raw = new ArrayList<>();
+		ByteArrayOutputStream current = null;
+		boolean previousBlank = true;
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (previousBlank && line.startsWith("From ")) {
+					if (current != null) {
+						raw.add(current.toByteArray());
+					}
+					current = new ByteArrayOutputStream();
+					previousBlank = false;
+					continue;
+				}
+				if (current != null) {
+					String unescaped = ESCAPED_FROM.matcher(line).lookingAt() ? line.substring(1) : line;
+					current.writeBytes(unescaped.getBytes(StandardCharsets.ISO_8859_1));
+					current.write('\n');
+				}
+				previousBlank = line.isEmpty();
+			}
+		}
+		if (current != null) {
+			raw.add(current.toByteArray());
+		}
+		return raw;
+	}
+
+}
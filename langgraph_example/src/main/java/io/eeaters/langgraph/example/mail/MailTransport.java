@@ -0,0 +1,29 @@
+package io.eeaters.langgraph.example.mail;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+
+/**
+ * 邮件收发的底层通道。{@link io.eeaters.langgraph.example.service.EmailService} 只负责解析和判断回复，
+ * 连接真实邮箱还是重放快照由这里的实现决定。
+ */
+public interface MailTransport {
+
+	/**
+	 * 发送邮件，返回可用于关联回复的邮件 id
+	 */
+	String send(String to, String subject, String content) throws MessagingException;
+
+	/**
+	 * 依次把收件箱中的邮件交给 handler。邮件只在回调期间保证可读。
+	 */
+	void readInbox(MessageHandler handler) throws MessagingException;
+
+	@FunctionalInterface
+	interface MessageHandler {
+
+		void handle(Message message) throws MessagingException;
+
+	}
+
+}
@@ -0,0 +1,215 @@
+package io.eeaters.langgraph.example.mail;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 离线重放收件箱快照的通道。快照中的邮件按发送时间间隔、以 speed 倍速依次出现在收件箱中，第一封在创建时即可见。
+ * <p>
+ * 快照里的回复引用的是当时真实发出的邮件 id。回复按去掉 Re: 等前缀后的主题归为同一件事（job）， 发送时如果主题以某个 job 的主题结尾，认领该 job
+ * 中收件人回复过的线程，否则按时间顺序认领收件人的下一个线程， 返回线程的根邮件 id，使回复能按 References 关联回本次发送的请求；没有可认领的线程时返回新
+ * id，不会收到回复。
+ */
+public class ReplayMailTransport implements MailTransport {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplayMailTransport.class);
+
+	private static final Pattern MESSAGE_ID = Pattern.compile("<[^>]+>");
+
+	private static final Pattern REPLY_PREFIX = Pattern.compile("^(\\s*(re|fw|fwd|回复|答复|转发)\\s*[:：]\\s*)+",
+			Pattern.CASE_INSENSITIVE);
+
+	private final MimeMessage[] messages;
+
+	private final long[] visibleAt;
+
+	private final Clock clock;
+
+	/**
+	 * job 主题 -> 回复人地址（小写）-> 尚未认领的线程根邮件 id，按首次回复时间排序
+	 */
+	private final Map<String, Map<String, String>> unclaimedJobs = new LinkedHashMap<>();
+
+	private final List<String> jobs;
+
+	private final Set<String> senders = new LinkedHashSet<>();
+
+	private final AtomicLong sent = new AtomicLong();
+
+	private final AtomicLong claimed = new AtomicLong();
+
+	private final AtomicLong inboxReads = new AtomicLong();
+
+	private final AtomicLong messagesRead = new AtomicLong();
+
+	public ReplayMailTransport(MailSnapshot snapshot, Clock clock, double speed) throws MessagingException {
+		if (speed <= 0) {
+			throw new IllegalArgumentException("Replay speed must be positive: " + speed);
+		}
+		this.clock = clock;
+		int size = snapshot.size();
+		this.messages = new MimeMessage[size];
+		this.visibleAt = new long[size];
+
+		long anchor = clock.millis();
+		Instant first = size > 0 ? snapshot.getEntries().get(0).sentAt() : Instant.EPOCH;
+		for (int i = 0; i < size; i++) {
+			MailSnapshot.Entry entry = snapshot.getEntries().get(i);
+			messages[i] = entry.message();
+			visibleAt[i] = anchor + (long) ((entry.sentAt().toEpochMilli() - first.toEpochMilli()) / speed);
+
+			String sender = senderAddress(entry.message());
+			String threadId = threadRoot(entry.message());
+			if (sender != null && threadId != null) {
+				senders.add(sender);
+				unclaimedJobs.computeIfAbsent(jobOf(entry.message()), key -> new LinkedHashMap<>())
+					.putIfAbsent(sender, threadId);
+			}
+		}
+		this.jobs = List.copyOf(unclaimedJobs.keySet());
+		logger.info("Replay mailbox loaded: {} messages, {} senders, {} jobs", size, senders.size(), jobs.size());
+	}
+
+	@Override
+	public String send(String to, String subject, String content) {
+		sent.incrementAndGet();
+		String threadId = to == null ? null : claim(to.toLowerCase(), subject == null ? "" : subject);
+		if (threadId == null) {
+			return UUID.randomUUID().toString();
+		}
+		claimed.incrementAndGet();
+		return threadId;
+	}
+
+	@Override
+	public void readInbox(MessageHandler handler) throws MessagingException {
+		inboxReads.incrementAndGet();
+		int visible = visibleCount(clock.millis());
+		messagesRead.addAndGet(visible);
+		for (int i = 0; i < visible; i++) {
+			handler.handle(messages[i]);
+		}
+	}
+
+	/**
+	 * 在 time 之后第一封变为可见的邮件的时间，全部可见后返回 null
+	 */
+	public Instant nextVisibleAfter(Instant time) {
+		int next = visibleCount(time.toEpochMilli());
+		return next < visibleAt.length ? Instant.ofEpochMilli(visibleAt[next]) : null;
+	}
+
+	/**
+	 * 快照中回复过邮件的地址，按首次出现顺序
+	 */
+	public Set<String> getSenders() {
+		return senders;
+	}
+
+	/**
+	 * 快照中的 job 主题，按首次回复时间排序。以 job 主题结尾的发送会认领该 job 的线程。
+	 */
+	public List<String> getJobs() {
+		return jobs;
+	}
+
+	public int getMessageCount() {
+		return messages.length;
+	}
+
+	public long getSentCount() {
+		return sent.get();
+	}
+
+	public long getClaimedCount() {
+		return claimed.get();
+	}
+
+	public long getInboxReads() {
+		return inboxReads.get();
+	}
+
+	public long getMessagesRead() {
+		return messagesRead.get();
+	}
+
+	private String claim(String to, String subject) {
+		synchronized (unclaimedJobs) {
+			for (int i = 0; i < subject.length(); i++) {
+				Map<String, String> job = unclaimedJobs.get(subject.substring(i));
+				if (job != null) {
+					return job.remove(to);
+				}
+			}
+			for (Map<String, String> job : unclaimedJobs.values()) {
+				String threadId = job.remove(to);
+				if (threadId != null) {
+					return threadId;
+				}
+			}
+			return null;
+		}
+	}
+
+	private int visibleCount(long now) {
+		int low = 0;
+		int high = visibleAt.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (visibleAt[mid] <= now) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static String jobOf(MimeMessage message) throws MessagingException {
+		String subject = message.getSubject();
+		return subject == null ? "" : REPLY_PREFIX.matcher(subject).replaceFirst("").trim();
+	}
+
+	private static String senderAddress(MimeMessage message) throws MessagingException {
+		Address[] from = message.getFrom();
+		if (from != null && from.length > 0 && from[0] instanceof InternetAddress address
+				&& address.getAddress() != null) {
+			return address.getAddress().toLowerCase();
+		}
+		return null;
+	}
+
+	/**
+	 * 与 EmailService 相同，以 References 中的第一个 id 作为线程根，没有时取 In-Reply-To
+	 */
+	private static String threadRoot(MimeMessage message) throws MessagingException {
+		for (String header : new String[] { "References", "In-Reply-To" }) {
+			String value = message.getHeader(header, " ");
+			if (value != null) {
+				Matcher matcher = MESSAGE_ID.matcher(value);
+				if (matcher.find()) {
+					return matcher.group();
+				}
+			}
+		}
+		return null;
+	}
+
+}
@@ -2,7 +2,7 @@ package io.eeaters.langgraph.example.model;
 
 public enum Party {
 
-	TRAILER_COMPANY("拖车公司"), WAREHOUSE("仓库");
+	TRAILER_COMPANY("拖车公司"), WAREHOUSE("仓库"), CARRIER("承运商"), CUSTOMS_BROKER("报关行");
 
 	private final String description;
 
@@ -14,4 +14,4 @@ public enum Party {
 		return description;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package io.eeaters.langgraph.example.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 参与协调的一方。同一角色可以有多个联系方（例如多个仓库），用 id 区分。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PartyContact {
+
+	private String id;
+
+	private Party role;
+
+	private String email;
+
+}
@@ -0,0 +1,23 @@
+package io.eeaters.langgraph.example.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 并行分支向某一方发出的协调邮件，汇合节点据此匹配各方的回复。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PartyRequest implements Serializable {
+
+	private String partyId;
+
+	private String email;
+
+	private String emailId;
+
+}
@@ -6,14 +6,18 @@ import lombok.Builder.Default;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.io.Serializable;
+import java.time.Clock;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-public class Task {
+public class Task implements Serializable {
 
 	@Default
 	private String id = UUID.randomUUID().toString();
@@ -33,26 +37,35 @@ public class Task {
 	@Default
 	private Party nextParty = Party.WAREHOUSE;
 
-	@Default
-	private LocalDateTime createdAt = LocalDateTime.now();
+	private LocalDateTime createdAt;
 
-	@Default
-	private LocalDateTime updatedAt = LocalDateTime.now();
+	private LocalDateTime updatedAt;
 
 	private String emailThreadId;
 
 	private String finalConfirmedTime;
 
-	public void updateStatus(TaskStatus newStatus) {
+	/**
+	 * 并行流程中已发出的协调邮件。分支失败后从检查点恢复时据此跳过已发送的参与方
+	 */
+	@Default
+	private List<PartyRequest> partyRequests = new ArrayList<>();
+
+	/**
+	 * 存储中的版本号，每次写入加一；0 表示尚未保存。写回时以此作为期望版本做比较交换
+	 */
+	private long version;
+
+	public void updateStatus(TaskStatus newStatus, Clock clock) {
 		this.status = newStatus;
-		this.updatedAt = LocalDateTime.now();
+		this.updatedAt = LocalDateTime.now(clock);
 	}
 
 	@Override
 	public String toString() {
 		return "Task{" + "id='" + id + '\'' + ", title='" + title + '\'' + ", scheduledTime=" + scheduledTime
 				+ ", location='" + location + '\'' + ", status=" + status + ", currentParty=" + currentParty
-				+ ", nextParty=" + nextParty + '}';
+				+ ", nextParty=" + nextParty + ", version=" + version + '}';
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package io.eeaters.langgraph.example.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Builder.Default;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 任务查询条件，未设置的条件不参与过滤。scheduledFrom 包含、scheduledTo 不包含，结果按 scheduledTime 升序。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskQuery {
+
+	/**
+	 * 尚未达成最终确认的状态
+	 */
+	public static final Set<TaskStatus> UNCONFIRMED = EnumSet.of(TaskStatus.CREATED, TaskStatus.AUTO_REPLY_SENT,
+			TaskStatus.WAITING_FIRST_REPLY, TaskStatus.FIRST_REPLY_RECEIVED, TaskStatus.CONFIRMATION_SENT,
+			TaskStatus.WAITING_SECOND_REPLY, TaskStatus.SECOND_REPLY_RECEIVED);
+
+	private LocalDateTime scheduledFrom;
+
+	private LocalDateTime scheduledTo;
+
+	private Set<TaskStatus> statuses;
+
+	private Party currentParty;
+
+	private String location;
+
+	@Default
+	private int limit = 100;
+
+}
@@ -6,6 +6,7 @@ import lombok.Builder.Default;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
 
 @Data
@@ -34,8 +35,6 @@ public class WorkflowExecution {
 
 	private String lastEmailId;
 
-	private String executionData;
-
 	private LocalDateTime createdAt;
 
 	private LocalDateTime updatedAt;
@@ -56,7 +55,8 @@ public class WorkflowExecution {
 	}
 
 	public WorkflowExecution(String taskId, String threadId, String currentStep, WorkflowStatus status,
-			WorkflowType type) {
+			WorkflowType type, Clock clock) {
+		LocalDateTime now = LocalDateTime.now(clock);
 		this.id = java.util.UUID.randomUUID().toString();
 		this.taskId = taskId;
 		this.threadId = threadId;
@@ -64,47 +64,64 @@ public class WorkflowExecution {
 		this.status = status;
 		this.type = type;
 		this.retryCount = 0;
-		this.createdAt = LocalDateTime.now();
-		this.updatedAt = LocalDateTime.now();
-		this.lastExecutedAt = LocalDateTime.now();
-		this.nextRetryAt = calculateNextRetryAt();
+		this.createdAt = now;
+		this.updatedAt = now;
+		this.lastExecutedAt = now;
+		this.nextRetryAt = calculateNextRetryAt(now);
 	}
 
-	public void incrementRetryCount() {
+	public void incrementRetryCount(Clock clock) {
+		LocalDateTime now = LocalDateTime.now(clock);
 		this.retryCount++;
-		this.updatedAt = LocalDateTime.now();
-		this.lastExecutedAt = LocalDateTime.now();
-		this.nextRetryAt = calculateNextRetryAt();
+		this.updatedAt = now;
+		this.lastExecutedAt = now;
+		this.nextRetryAt = calculateNextRetryAt(now);
 	}
 
-	public void updateStatus(WorkflowStatus newStatus) {
+	public void updateStatus(WorkflowStatus newStatus, Clock clock) {
+		LocalDateTime now = LocalDateTime.now(clock);
 		this.status = newStatus;
-		this.updatedAt = LocalDateTime.now();
+		this.updatedAt = now;
 		if (newStatus == WorkflowStatus.COMPLETED || newStatus == WorkflowStatus.FAILED
 				|| newStatus == WorkflowStatus.TERMINATED) {
-			this.completedAt = LocalDateTime.now();
+			this.completedAt = now;
 		}
 	}
 
-	public void updateStep(String newStep) {
+	public void updateStep(String newStep, Clock clock) {
+		LocalDateTime now = LocalDateTime.now(clock);
 		this.currentStep = newStep;
-		this.updatedAt = LocalDateTime.now();
-		this.lastExecutedAt = LocalDateTime.now();
+		this.updatedAt = now;
+		this.lastExecutedAt = now;
+	}
+
+	/**
+	 * 以 now 为起点初始化时间字段，供 builder 创建的实例使用
+	 */
+	public void initializeTimestamps(Clock clock) {
+		LocalDateTime now = LocalDateTime.now(clock);
+		if (this.createdAt == null) {
+			this.createdAt = now;
+		}
+		this.updatedAt = now;
+		this.lastExecutedAt = now;
+		this.nextRetryAt = calculateNextRetryAt(now);
 	}
 
-	private LocalDateTime calculateNextRetryAt() {
+	private LocalDateTime calculateNextRetryAt(LocalDateTime now) {
 		// 指数退避策略：1分钟, 2分钟, 4分钟, 8分钟, 最大30分钟
 		long delayMinutes = Math.min((long) Math.pow(2, this.retryCount), 30);
-		return LocalDateTime.now().plusMinutes(delayMinutes);
+		return now.plusMinutes(delayMinutes);
 	}
 
-	public boolean isReadyForRetry() {
-		return LocalDateTime.now().isAfter(this.nextRetryAt)
+	public boolean isReadyForRetry(LocalDateTime now) {
+		return now.isAfter(this.nextRetryAt)
 				&& (this.status == WorkflowStatus.WAITING_FOR_REPLY || this.status == WorkflowStatus.PENDING);
 	}
 
 	public boolean isWaitingForReply() {
-		return this.status == WorkflowStatus.WAITING_FOR_REPLY && "WAIT_FOR_REPLY".equals(this.currentStep);
+		return this.status == WorkflowStatus.WAITING_FOR_REPLY
+				&& ("WAIT_FOR_REPLY".equals(this.currentStep) || "JOIN_REPLIES".equals(this.currentStep));
 	}
 
 }
\ No newline at end of file
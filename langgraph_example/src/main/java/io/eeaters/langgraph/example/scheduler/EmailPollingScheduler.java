@@ -15,6 +15,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -60,6 +61,22 @@ public class EmailPollingScheduler {
 		}
 	}
 
+	/**
+	 * 每30秒重试因节点失败（超时、熔断、邮件服务异常）而待重试的执行，从最近的检查点恢复
+	 */
+	@Scheduled(fixedRate = 30000) // 30秒
+	public void retryFailedExecutions() {
+		List<WorkflowExecution> readyExecutions = workflowExecutionService.getExecutionsReadyForRetry()
+			.stream()
+			.filter(execution -> execution.getStatus() == WorkflowExecution.WorkflowStatus.PENDING)
+			.toList();
+
+		for (WorkflowExecution execution : readyExecutions) {
+			logger.info("Retrying step {} for task: {}", execution.getCurrentStep(), execution.getTaskId());
+			resumeWorkflow(execution, Map.of());
+		}
+	}
+
 	/**
 	 * 每5分钟清理过期的执行记录
 	 */
@@ -79,6 +96,12 @@ public class EmailPollingScheduler {
 			return;
 		}
 
+		// 并行汇合的任务由 JOIN_REPLIES 节点自行按各方拉取邮件，直接恢复即可
+		if ("JOIN_REPLIES".equals(execution.getCurrentStep())) {
+			resumeWorkflow(execution, Map.of());
+			return;
+		}
+
 		// 检查新邮件
 		List<EmailResponse> responses = emailService.checkNewEmails(execution.getLastEmailId());
 
@@ -93,15 +116,29 @@ public class EmailPollingScheduler {
 		logger.info("Received email response for task: {}, subject: {}, isPositive: {}", task.getId(),
 				latestResponse.getSubject(), latestResponse.isPositive());
 
-		// 更新任务状态
-		updateTaskBasedOnResponse(task, latestResponse);
-		taskService.saveTask(task);
+		// 更新任务状态，与并发的更新冲突时基于最新版本重试
+		Task updatedTask = taskService.updateTask(task.getId(),
+				current -> updateTaskBasedOnResponse(current, latestResponse));
+		if (updatedTask == null) {
+			logger.warn("Task {} was deleted while processing execution: {}", task.getId(), execution.getId());
+			return;
+		}
+
+		// 准备恢复输入
+		Map<String, Object> resumeInput = new HashMap<>();
+		resumeInput.put("task", updatedTask);
+		resumeInput.put("currentStep", "WAIT_FOR_REPLY");
+		resumeInput.put("latestResponse", latestResponse);
+		resumeInput.put("retryCount", execution.getRetryCount());
+		if (execution.getLastEmailId() != null) {
+			resumeInput.put("lastEmailId", execution.getLastEmailId());
+		}
 
 		// 恢复工作流执行
-		resumeWorkflow(execution, task, latestResponse);
+		resumeWorkflow(execution, resumeInput);
 	}
 
-	private void updateTaskBasedOnResponse(Task task, EmailResponse response) {
+	private Task updateTaskBasedOnResponse(Task task, EmailResponse response) {
 		if (response.isPositive()) {
 			if (response.getProposedTime() != null) {
 				task.setScheduledTime(response.getProposedTime());
@@ -126,23 +163,14 @@ public class EmailPollingScheduler {
 				task.setStatus(TaskStatus.FIRST_REPLY_RECEIVED);
 			}
 		}
+
+		return task;
 	}
 
-	private void resumeWorkflow(WorkflowExecution execution, Task task, EmailResponse response) {
+	private void resumeWorkflow(WorkflowExecution execution, Map<String, Object> resumeInput) {
 		try {
-			logger.info("Resuming workflow for execution: {} with new email response", execution.getId());
-
-			// 构建工作流状态
-			WorkflowState state = new WorkflowState();
-			state.setTask(task);
-			state.setLatestResponse(response);
-			state.setCurrentStep("WAIT_FOR_REPLY");
-			state.setRetryCount(execution.getRetryCount());
-			state.setLastEmailId(execution.getLastEmailId());
-
-			// 准备恢复输入
-			Map<String, Object> resumeInput = Map.of("task", task, "currentStep", "WAIT_FOR_REPLY", "lastEmailId",
-					execution.getLastEmailId(), "latestResponse", response, "retryCount", execution.getRetryCount());
+			logger.info("Resuming workflow for execution: {} at step: {}", execution.getId(),
+					execution.getCurrentStep());
 
 			// 恢复工作流执行
 			Optional<WorkflowState> result = taskWorkflow.resume(execution.getThreadId(), resumeInput);
@@ -157,13 +185,19 @@ public class EmailPollingScheduler {
 					workflowExecutionService.updateExecutionStatus(execution.getId(),
 							WorkflowExecution.WorkflowStatus.COMPLETED);
 				}
+				else if (newState.isTerminated()) {
+					workflowExecutionService.updateExecutionStatus(execution.getId(),
+							WorkflowExecution.WorkflowStatus.TERMINATED);
+				}
 				else {
 					workflowExecutionService.updateExecutionStep(execution.getId(), newState.getCurrentStep());
 
 					// 如果还是在等待状态，更新为等待回复
-					if ("WAIT_FOR_REPLY".equals(newState.getCurrentStep())) {
+					if ("WAIT_FOR_REPLY".equals(newState.getCurrentStep())
+							|| "JOIN_REPLIES".equals(newState.getCurrentStep())) {
 						workflowExecutionService.updateExecutionStatus(execution.getId(),
 								WorkflowExecution.WorkflowStatus.WAITING_FOR_REPLY);
+						workflowExecutionService.incrementRetryCount(execution.getId());
 					}
 					else {
 						workflowExecutionService.updateExecutionStatus(execution.getId(),
@@ -172,8 +206,8 @@ public class EmailPollingScheduler {
 				}
 			}
 			else {
+				// 节点失败已由工作流记录为待重试或终止
 				logger.warn("Workflow resume returned no result for execution: {}", execution.getId());
-				workflowExecutionService.incrementRetryCount(execution.getId());
 			}
 
 		}
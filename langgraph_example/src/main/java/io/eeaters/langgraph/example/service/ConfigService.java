@@ -3,11 +3,14 @@ package io.eeaters.langgraph.example.service;
 import io.eeaters.langgraph.example.config.EmailConfig;
 import io.eeaters.langgraph.example.config.WorkflowConfig;
 import io.eeaters.langgraph.example.model.Party;
+import io.eeaters.langgraph.example.model.PartyContact;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 public class ConfigService {
 
@@ -19,10 +22,43 @@ public class ConfigService {
 	@Autowired
 	private EmailConfig emailConfig;
 
-	public String getEmailForParty(Party party) {
+	/**
+	 * 返回参与协调的各方。未配置 workflow.parties 时由 firstParty/secondParty 组成两方列表。
+	 */
+	public List<PartyContact> getParties() {
+		List<PartyContact> parties = workflowConfig.getParties();
+		if (parties != null && !parties.isEmpty()) {
+			return parties;
+		}
+		Party first = workflowConfig.getFirstParty();
+		Party second = workflowConfig.getSecondParty();
+		return List.of(new PartyContact(first.name(), first, getLegacyEmail(first)),
+				new PartyContact(second.name(), second, getLegacyEmail(second)));
+	}
+
+	/**
+	 * 达成一致所需的同意回复数，未配置或超出参与方数量时要求全部同意。
+	 */
+	public int getReplyQuorum() {
+		int partyCount = getParties().size();
+		int quorum = workflowConfig.getReplyQuorum();
+		return quorum <= 0 || quorum > partyCount ? partyCount : quorum;
+	}
+
+	/**
+	 * 顺序流程按角色区分两方，超过两方或两方角色相同时只能使用并行流程
+	 */
+	public boolean isParallelCoordination() {
+		List<PartyContact> parties = getParties();
+		return workflowConfig.isParallelFanOut() || parties.size() > 2
+				|| parties.stream().map(PartyContact::getRole).distinct().count() < parties.size();
+	}
+
+	private String getLegacyEmail(Party party) {
 		return switch (party) {
 			case TRAILER_COMPANY -> workflowConfig.getTrailerCompanyEmail();
 			case WAREHOUSE -> workflowConfig.getWarehouseEmail();
+			default -> null;
 		};
 	}
 
@@ -61,15 +97,15 @@ public class ConfigService {
 	public boolean validateConfiguration() {
 		boolean isValid = true;
 
-		if (workflowConfig.getTrailerCompanyEmail() == null
-				|| workflowConfig.getTrailerCompanyEmail().trim().isEmpty()) {
-			logger.error("Trailer company email is not configured");
-			isValid = false;
-		}
-
-		if (workflowConfig.getWarehouseEmail() == null || workflowConfig.getWarehouseEmail().trim().isEmpty()) {
-			logger.error("Warehouse email is not configured");
-			isValid = false;
+		for (PartyContact contact : getParties()) {
+			if (contact.getId() == null || contact.getId().trim().isEmpty()) {
+				logger.error("Party id is not configured for role {}", contact.getRole());
+				isValid = false;
+			}
+			if (contact.getEmail() == null || contact.getEmail().trim().isEmpty()) {
+				logger.error("Email is not configured for party {}", contact.getId());
+				isValid = false;
+			}
 		}
 
 		if (emailConfig.getHost() == null || emailConfig.getHost().trim().isEmpty()) {
@@ -1,6 +1,6 @@
 package io.eeaters.langgraph.example.service;
 
-import io.eeaters.langgraph.example.config.EmailConfig;
+import io.eeaters.langgraph.example.mail.MailTransport;
 import io.eeaters.langgraph.example.model.EmailResponse;
 import jakarta.mail.*;
 import jakarta.mail.internet.InternetAddress;
@@ -8,11 +8,10 @@ import jakarta.mail.internet.MimeMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -25,27 +24,32 @@ public class EmailService {
 	private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
 
 	@Autowired
-	private EmailConfig emailConfig;
+	private MailTransport mailTransport;
 
 	@Autowired
-	private JavaMailSender mailSender;
+	private Clock clock;
 
 	private static final Pattern TIME_PATTERN = Pattern.compile("(\\d{1,2})[:：](\\d{2})\\s*(AM|PM|上午|下午)?",
 			Pattern.CASE_INSENSITIVE);
 
 	private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{4})[-/年](\\d{1,2})[-/月](\\d{1,2})[日]?");
 
-	public String sendEmail(String to, String subject, String content) {
-		try {
-			SimpleMailMessage message = new SimpleMailMessage();
-			message.setFrom(emailConfig.getFromAddress());
-			message.setTo(to);
-			message.setSubject(subject);
-			message.setText(content);
+	/**
+	 * 每次轮询都会重新读取整个收件箱，已解析过的邮件按 Message-ID 缓存，避免重复下载和解码正文
+	 */
+	private static final int PARSED_CACHE_SIZE = 10_000;
 
-			mailSender.send(message);
+	private final Map<String, EmailResponse> parsedMessages = Collections
+		.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, EmailResponse> eldest) {
+				return size() > PARSED_CACHE_SIZE;
+			}
+		});
 
-			String messageId = UUID.randomUUID().toString();
+	public String sendEmail(String to, String subject, String content) {
+		try {
+			String messageId = mailTransport.send(to, subject, content);
 			logger.info("Email sent successfully to: {}, subject: {}, messageId: {}", to, subject, messageId);
 
 			return messageId;
@@ -57,37 +61,24 @@ public class EmailService {
 	}
 
 	public List<EmailResponse> checkNewEmails(String lastEmailThreadId) {
-		List<EmailResponse> responses = new ArrayList<>();
-
-		Properties props = new Properties();
-		props.put("mail.store.protocol", emailConfig.getProtocol());
-		props.put("mail.imap.ssl.enable", emailConfig.isSsl());
-		props.put("mail.imap.host", emailConfig.getHost());
-		props.put("mail.imap.port", emailConfig.getPort());
+		return checkNewEmails(lastEmailThreadId == null ? null : List.of(lastEmailThreadId));
+	}
 
-		Session session = Session.getDefaultInstance(props);
-		session.setDebug(emailConfig.isEnableDebug());
+	/**
+	 * 一次连接收件箱，取回与任一线程相关的新邮件，供并行分支汇合时统一拉取
+	 */
+	public List<EmailResponse> checkNewEmails(Collection<String> threadIds) {
+		List<EmailResponse> responses = new ArrayList<>();
 
 		try {
-			Store store = session.getStore(emailConfig.getProtocol());
-			store.connect(emailConfig.getUsername(), emailConfig.getPassword());
-
-			Folder inbox = store.getFolder(emailConfig.getInboxFolder());
-			inbox.open(Folder.READ_ONLY);
-
-			Message[] messages = inbox.getMessages();
-			for (Message message : messages) {
-				if (isMessageNewerThan(message, lastEmailThreadId)) {
-					EmailResponse response = parseMessage(message);
+			mailTransport.readInbox(message -> {
+				if (isMessageNewerThan(message, threadIds)) {
+					EmailResponse response = parseCached(message);
 					if (response != null) {
 						responses.add(response);
 					}
 				}
-			}
-
-			inbox.close(false);
-			store.close();
-
+			});
 		}
 		catch (Exception e) {
 			logger.error("Failed to check emails", e);
@@ -97,16 +88,18 @@ public class EmailService {
 		return responses;
 	}
 
-	private boolean isMessageNewerThan(Message message, String lastThreadId) throws MessagingException {
-		if (lastThreadId == null) {
+	private boolean isMessageNewerThan(Message message, Collection<String> threadIds) throws MessagingException {
+		if (threadIds == null || threadIds.isEmpty()) {
 			return true;
 		}
 
 		String[] references = message.getHeader("References");
 		if (references != null && references.length > 0) {
 			for (String ref : references) {
-				if (ref.contains(lastThreadId)) {
-					return true;
+				for (String threadId : threadIds) {
+					if (threadId != null && ref.contains(threadId)) {
+						return true;
+					}
 				}
 			}
 		}
@@ -115,17 +108,37 @@ public class EmailService {
 		return subject != null && subject.toLowerCase().contains("re:");
 	}
 
+	/**
+	 * 返回副本，调用方修改解析结果不会影响缓存
+	 */
+	private EmailResponse parseCached(Message message) throws MessagingException {
+		String messageId = message instanceof MimeMessage mime ? mime.getMessageID() : null;
+		if (messageId == null) {
+			return parseMessage(message);
+		}
+		EmailResponse cached = parsedMessages.get(messageId);
+		if (cached == null) {
+			cached = parseMessage(message);
+			if (cached == null) {
+				return null;
+			}
+			parsedMessages.put(messageId, cached);
+		}
+		return cached.toBuilder().build();
+	}
+
 	private EmailResponse parseMessage(Message message) {
 		try {
 			String id = ((MimeMessage) message).getMessageID();
-			String from = Arrays.toString(message.getFrom());
+			// 保持 RFC 822 地址列表格式，匹配发件人时可以重新解析
+			String from = InternetAddress.toString(message.getFrom());
 			String to = Arrays.toString(message.getRecipients(Message.RecipientType.TO));
 			String subject = message.getSubject();
 
 			Object content = message.getContent();
 			String contentStr = content instanceof String ? (String) content : content.toString();
 
-			LocalDateTime receivedAt = LocalDateTime.now();
+			LocalDateTime receivedAt = LocalDateTime.now(clock);
 			String emailThreadId = extractThreadId(message);
 
 			boolean isPositive = analyzeSentiment(contentStr);
@@ -212,9 +225,10 @@ public class EmailService {
 		Matcher dateMatcher = DATE_PATTERN.matcher(content);
 		Matcher timeMatcher = TIME_PATTERN.matcher(content);
 
-		int year = LocalDateTime.now().getYear();
-		int month = LocalDateTime.now().getMonthValue();
-		int day = LocalDateTime.now().getDayOfMonth();
+		LocalDate today = LocalDate.now(clock);
+		int year = today.getYear();
+		int month = today.getMonthValue();
+		int day = today.getDayOfMonth();
 		int hour = 10;
 		int minute = 0;
 
@@ -1,71 +1,292 @@
 package io.eeaters.langgraph.example.service;
 
 import io.eeaters.langgraph.example.model.Task;
+import io.eeaters.langgraph.example.model.TaskQuery;
 import io.eeaters.langgraph.example.model.TaskStatus;
+import io.eeaters.langgraph.example.store.CompactCodec;
+import io.eeaters.langgraph.example.store.CompactId;
+import io.eeaters.langgraph.example.store.TaskIndex;
+import io.eeaters.langgraph.example.store.TaskRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 @Service
 public class TaskService {
 
 	private static final Logger logger = LoggerFactory.getLogger(TaskService.class);
 
-	private final Map<String, Task> taskStore = new ConcurrentHashMap<>();
+	// 以紧凑形式保存，读取时返回独立的 Task 副本，修改后需要调用 saveTask 写回。
+	// 存储的 TaskRecord 不可变，写入通过比较版本号完成，不会丢失并发更新；索引在同一个键的 compute 中维护
+	private final Map<CompactId, TaskRecord> taskStore = new ConcurrentHashMap<>();
 
+	private final TaskIndex taskIndex = new TaskIndex();
+
+	private static final int MAX_UPDATE_ATTEMPTS = 16;
+
+	// 任务被删除后的回调，参数为任务 id
+	private final List<Consumer<String>> deletionListeners = new CopyOnWriteArrayList<>();
+
+	private final Clock clock;
+
+	public TaskService(Clock clock) {
+		this.clock = clock;
+	}
+
+	public void addDeletionListener(Consumer<String> listener) {
+		deletionListeners.add(listener);
+	}
+
+	/**
+	 * 以 task 的版本号为期望版本写入：版本为 0 时新建，否则要求与存储中的版本一致。 成功后 task 的版本号更新为新版本，版本不一致时抛出
+	 * {@link ConcurrentModificationException}
+	 */
 	public Task saveTask(Task task) {
+		if (!compareAndSet(task)) {
+			throw new ConcurrentModificationException(
+					"Task " + task.getId() + " was modified concurrently, expected version " + task.getVersion());
+		}
+		return task;
+	}
+
+	/**
+	 * 与 {@link #saveTask(Task)} 相同，但版本冲突时返回 false 而不是抛出异常
+	 */
+	public boolean compareAndSet(Task task) {
 		String taskId = task.getId();
-		taskStore.put(taskId, task);
-		logger.info("Task saved: {}", taskId);
+		CompactId key = CompactId.of(taskId);
+		long expectedVersion = task.getVersion();
 
-		return task;
+		LocalDateTime now = LocalDateTime.now(clock);
+		if (task.getCreatedAt() == null) {
+			task.setCreatedAt(now);
+		}
+		task.setUpdatedAt(now);
+		task.setVersion(expectedVersion + 1);
+		TaskRecord next = TaskRecord.from(task);
+
+		boolean written = swap(key, expectedVersion, next);
+		if (!written) {
+			task.setVersion(expectedVersion);
+			logger.debug("Version conflict saving task {}, expected version {}", taskId, expectedVersion);
+			return false;
+		}
+		logger.info("Task saved: {}, version {}", taskId, next.version());
+		return true;
+	}
+
+	/**
+	 * 读取最新快照、应用 mutation 并比较交换写回，版本冲突时基于新的快照重试。 mutation 可能被执行多次，不应有副作用；任务不存在时返回 null
+	 */
+	public Task updateTask(String taskId, UnaryOperator<Task> mutation) {
+		CompactId key = CompactId.of(taskId);
+		for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+			TaskRecord current = taskStore.get(key);
+			if (current == null) {
+				return null;
+			}
+
+			Task task = mutation.apply(current.toTask());
+			task.setUpdatedAt(LocalDateTime.now(clock));
+			task.setVersion(current.version() + 1);
+			if (swap(key, current.version(), TaskRecord.from(task))) {
+				return task;
+			}
+			Thread.onSpinWait();
+		}
+		throw new ConcurrentModificationException(
+				"Task " + taskId + " update gave up after " + MAX_UPDATE_ATTEMPTS + " conflicting attempts");
+	}
+
+	/**
+	 * 存储中的版本等于 expectedVersion（0 表示不存在）时写入 next 并更新索引。只在写入的瞬间持有该键的锁
+	 */
+	private boolean swap(CompactId key, long expectedVersion, TaskRecord next) {
+		boolean[] written = new boolean[1];
+		taskStore.compute(key, (id, current) -> {
+			long currentVersion = current != null ? current.version() : 0;
+			if (currentVersion != expectedVersion) {
+				return current;
+			}
+			taskIndex.reindex(current, next);
+			written[0] = true;
+			return next;
+		});
+		return written[0];
 	}
 
 	public Task getTask(String taskId) {
-		return taskStore.get(taskId);
+		TaskRecord record = taskStore.get(CompactId.of(taskId));
+		return record != null ? record.toTask() : null;
 	}
 
 	public List<Task> getAllTasks() {
-		return new ArrayList<>(taskStore.values());
+		return taskStore.values().stream().map(TaskRecord::toTask).toList();
 	}
 
 	public List<Task> getTasksByStatus(TaskStatus status) {
-		return taskStore.values().stream().filter(task -> task.getStatus() == status).toList();
+		return queryTasks(TaskQuery.builder().statuses(EnumSet.of(status)).limit(Integer.MAX_VALUE).build());
+	}
+
+	/**
+	 * 按条件查询任务。从各条件对应的索引中选出候选最少的一个驱动查询，再用记录本身校验其余条件； 时间范围候选只计数到当前最小候选数为止，因此开销与最小候选集成正比
+	 */
+	public List<Task> queryTasks(TaskQuery query) {
+		long from = CompactCodec.packTime(query.getScheduledFrom());
+		long to = CompactCodec.packTime(query.getScheduledTo());
+		boolean hasRange = from != CompactCodec.NONE || to != CompactCodec.NONE;
+
+		// 各哈希索引的候选集，多个状态时按状态集合拼接，不复制 id
+		Collection<Set<CompactId>> smallest = null;
+		int smallestSize = Integer.MAX_VALUE;
+		List<Collection<Set<CompactId>>> hashCandidates = new ArrayList<>();
+		if (query.getStatuses() != null) {
+			hashCandidates.add(query.getStatuses().stream().map(taskIndex::withStatus).toList());
+		}
+		if (query.getCurrentParty() != null) {
+			hashCandidates.add(List.of(taskIndex.withCurrentParty(query.getCurrentParty())));
+		}
+		if (query.getLocation() != null) {
+			hashCandidates.add(List.of(taskIndex.atLocation(CompactCodec.intern(query.getLocation()))));
+		}
+		for (Collection<Set<CompactId>> candidate : hashCandidates) {
+			int size = candidate.stream().mapToInt(Set::size).sum();
+			if (size < smallestSize) {
+				smallest = candidate;
+				smallestSize = size;
+			}
+		}
+
+		Collection<? extends Iterable<CompactId>> candidates;
+		boolean ordered;
+		if (hasRange && (smallest == null || taskIndex.countScheduledBetween(from, to, smallestSize) < smallestSize)) {
+			candidates = List.of(taskIndex.scheduledBetween(from, to));
+			ordered = true;
+		}
+		else if (smallest != null) {
+			candidates = smallest;
+			ordered = false;
+		}
+		else {
+			candidates = List.of(taskStore.keySet());
+			ordered = false;
+		}
+
+		int limit = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+		List<TaskRecord> matches = new ArrayList<>();
+		// 其余哈希索引先做成员判断，只为可能匹配的 id 读取记录
+		List<Collection<Set<CompactId>>> filters = new ArrayList<>(hashCandidates);
+		if (!ordered) {
+			filters.remove(smallest);
+		}
+		scan: for (Iterable<CompactId> ids : candidates) {
+			for (CompactId id : ids) {
+				if (!inAll(filters, id)) {
+					continue;
+				}
+				TaskRecord record = taskStore.get(id);
+				if (record != null && matches(record, query, from, to)) {
+					matches.add(record);
+					if (ordered && matches.size() >= limit) {
+						break scan;
+					}
+				}
+			}
+		}
+
+		Stream<TaskRecord> results = matches.stream();
+		if (!ordered) {
+			results = results.sorted(Comparator.comparingLong(TaskRecord::scheduledTime)).limit(limit);
+		}
+		return results.map(TaskRecord::toTask).toList();
+	}
+
+	private static boolean inAll(List<Collection<Set<CompactId>>> filters, CompactId id) {
+		for (Collection<Set<CompactId>> filter : filters) {
+			boolean found = false;
+			for (Set<CompactId> ids : filter) {
+				if (ids.contains(id)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(TaskRecord record, TaskQuery query, long from, long to) {
+		if (from != CompactCodec.NONE
+				&& (record.scheduledTime() == CompactCodec.NONE || record.scheduledTime() < from)) {
+			return false;
+		}
+		if (to != CompactCodec.NONE && (record.scheduledTime() == CompactCodec.NONE || record.scheduledTime() >= to)) {
+			return false;
+		}
+		if (query.getStatuses() != null && !query.getStatuses().contains(record.taskStatus())) {
+			return false;
+		}
+		if (query.getCurrentParty() != null && record.currentParty() != CompactCodec.ordinal(query.getCurrentParty())) {
+			return false;
+		}
+		return query.getLocation() == null || query.getLocation().equals(record.location());
 	}
 
 	public Task updateTaskStatus(String taskId, TaskStatus newStatus) {
-		Task task = taskStore.get(taskId);
-		if (task != null) {
-			task.updateStatus(newStatus);
-			taskStore.put(taskId, task);
-			logger.info("Task {} status updated to: {}", taskId, newStatus);
+		Task updated = updateTask(taskId, task -> {
+			task.updateStatus(newStatus, clock);
 			return task;
+		});
+		if (updated != null) {
+			logger.info("Task {} status updated to: {}", taskId, newStatus);
 		}
-		return null;
+		return updated;
 	}
 
 	public void deleteTask(String taskId) {
-		Task removed = taskStore.remove(taskId);
-		if (removed != null) {
+		boolean[] removed = new boolean[1];
+		taskStore.computeIfPresent(CompactId.of(taskId), (id, record) -> {
+			taskIndex.reindex(record, null);
+			removed[0] = true;
+			return null;
+		});
+		if (removed[0]) {
 			logger.info("Task deleted: {}", taskId);
+			notifyDeleted(taskId);
 		}
 	}
 
+	/**
+	 * 用 updatedTask 替换已有任务，updatedTask 的版本号须与存储中的一致。 是否存在和版本比较在同一次比较交换中完成，任务不存在时返回
+	 * null，版本不一致时抛出 {@link ConcurrentModificationException}
+	 */
 	public Task updateTask(String taskId, Task updatedTask) {
-		Task existingTask = taskStore.get(taskId);
-		if (existingTask != null) {
-			taskStore.put(taskId, updatedTask);
+		updatedTask.setId(taskId);
+		// 期望版本 0 在 compareAndSet 中表示新建，这里只替换已有任务
+		if (updatedTask.getVersion() != 0 && compareAndSet(updatedTask)) {
 			logger.info("Task updated: {}", taskId);
 			return updatedTask;
 		}
-		return null;
+		if (!exists(taskId)) {
+			return null;
+		}
+		throw new ConcurrentModificationException(
+				"Task " + taskId + " was modified concurrently, expected version " + updatedTask.getVersion());
 	}
 
 	public boolean exists(String taskId) {
-		return taskStore.containsKey(taskId);
+		return taskStore.containsKey(CompactId.of(taskId));
 	}
 
 	public long getTaskCount() {
@@ -73,8 +294,22 @@ public class TaskService {
 	}
 
 	public void clearAllTasks() {
+		List<String> taskIds = taskStore.keySet().stream().map(id -> id.toString()).toList();
 		taskStore.clear();
+		taskIndex.clear();
 		logger.info("All tasks cleared");
+		taskIds.forEach(this::notifyDeleted);
+	}
+
+	private void notifyDeleted(String taskId) {
+		for (Consumer<String> listener : deletionListeners) {
+			try {
+				listener.accept(taskId);
+			}
+			catch (RuntimeException e) {
+				logger.error("Deletion listener failed for task {}", taskId, e);
+			}
+		}
 	}
 
-}
\ No newline at end of file
+}
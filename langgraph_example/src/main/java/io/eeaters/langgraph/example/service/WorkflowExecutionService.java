@@ -1,136 +1,413 @@
 package io.eeaters.langgraph.example.service;
 
 import io.eeaters.langgraph.example.model.WorkflowExecution;
+import io.eeaters.langgraph.example.store.CompactCodec;
+import io.eeaters.langgraph.example.store.CompactId;
+import io.eeaters.langgraph.example.store.ExecutionArchive;
+import io.eeaters.langgraph.example.store.ExecutionRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 public class WorkflowExecutionService {
 
 	private static final Logger logger = LoggerFactory.getLogger(WorkflowExecutionService.class);
 
-	// 简单的内存存储，实际项目中应该使用数据库
-	private final Map<String, WorkflowExecution> executionStore = new ConcurrentHashMap<>();
+	private static final Comparator<ExecutionRecord> BY_NEXT_RETRY = Comparator
+		.comparingLong(ExecutionRecord::nextRetryAt);
 
-	private final Map<String, String> taskIdToExecutionId = new ConcurrentHashMap<>();
+	// 简单的内存存储，实际项目中应该使用数据库；以紧凑形式保存，读取时还原为 WorkflowExecution 副本
+	private final Map<CompactId, ExecutionRecord> executionStore = new ConcurrentHashMap<>();
+
+	private final Map<CompactId, CompactId> taskIdToExecutionId = new ConcurrentHashMap<>();
+
+	private static final long EXPIRY_BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	// 按 updatedAt 所在小时分桶的过期索引。updatedAt 总是取当前时间，新记录只会进入最新的桶，
+	// 旧桶只会有记录被移出，清理时整桶摘除，空桶也随之回收
+	private final ConcurrentSkipListMap<Long, Set<CompactId>> expiryBuckets = new ConcurrentSkipListMap<>();
+
+	// 等待重试的执行按 nextRetryAt 排序，调度器只取出已到期的部分，不必每个节拍扫描全部记录
+	private final ConcurrentSkipListSet<RetryDue> retryIndex = new ConcurrentSkipListSet<>();
+
+	// 执行记录被删除或清理后的回调，用于释放按线程保存的状态
+	private final List<Consumer<WorkflowExecution>> removalListeners = new CopyOnWriteArrayList<>();
+
+	private final Clock clock;
+
+	private final ExecutionArchive executionArchive;
+
+	public WorkflowExecutionService(Clock clock, ExecutionArchive executionArchive) {
+		this.clock = clock;
+		this.executionArchive = executionArchive;
+	}
+
+	public void addRemovalListener(Consumer<WorkflowExecution> listener) {
+		removalListeners.add(listener);
+	}
 
 	public WorkflowExecution saveExecution(WorkflowExecution execution) {
 		if (execution.getId() == null) {
 			execution.setId(UUID.randomUUID().toString());
 		}
 
-		execution.setUpdatedAt(LocalDateTime.now());
-		executionStore.put(execution.getId(), execution);
-		taskIdToExecutionId.put(execution.getTaskId(), execution.getId());
+		execution.setUpdatedAt(LocalDateTime.now(clock));
+		ExecutionRecord record = ExecutionRecord.from(execution);
+		executionStore.compute(record.id(), (id, previous) -> {
+			reindexExpiry(previous, record);
+			reindexRetry(previous, record);
+			return record;
+		});
+		taskIdToExecutionId.put(record.taskId(), record.id());
 
 		logger.info("Saved workflow execution: {} for task: {}", execution.getId(), execution.getTaskId());
 		return execution;
 	}
 
 	public WorkflowExecution getExecution(String executionId) {
-		return executionStore.get(executionId);
+		ExecutionRecord record = executionStore.get(CompactId.of(executionId));
+		return record != null ? record.toExecution() : null;
 	}
 
 	public WorkflowExecution getExecutionByTaskId(String taskId) {
-		String executionId = taskIdToExecutionId.get(taskId);
-		return executionId != null ? executionStore.get(executionId) : null;
+		CompactId executionId = taskIdToExecutionId.get(CompactId.of(taskId));
+		ExecutionRecord record = executionId != null ? executionStore.get(executionId) : null;
+		return record != null ? record.toExecution() : null;
 	}
 
 	public List<WorkflowExecution> getExecutionsByStatus(WorkflowExecution.WorkflowStatus status) {
 		return executionStore.values()
 			.stream()
-			.filter(execution -> execution.getStatus() == status)
-			.sorted(Comparator.comparing(WorkflowExecution::getNextRetryAt))
+			.filter(record -> record.executionStatus() == status)
+			.sorted(BY_NEXT_RETRY)
+			.map(ExecutionRecord::toExecution)
 			.toList();
 	}
 
+	/**
+	 * 已到重试时间的执行，按 nextRetryAt 排序。只遍历重试索引中已到期的部分
+	 */
 	public List<WorkflowExecution> getExecutionsReadyForRetry() {
-		return executionStore.values()
-			.stream()
-			.filter(WorkflowExecution::isReadyForRetry)
-			.sorted(Comparator.comparing(WorkflowExecution::getNextRetryAt))
-			.toList();
+		long now = CompactCodec.packTime(LocalDateTime.now(clock));
+		List<WorkflowExecution> ready = new ArrayList<>();
+		for (RetryDue due : retryIndex.headSet(RetryDue.first(now))) {
+			ExecutionRecord record = executionStore.get(due.id());
+			if (record != null && record.isReadyForRetry(now)) {
+				ready.add(record.toExecution());
+			}
+		}
+		return ready;
+	}
+
+	/**
+	 * 最早的下次重试时间，没有等待重试的执行时返回 null
+	 */
+	public LocalDateTime getNextRetryAt() {
+		RetryDue first = retryIndex.isEmpty() ? null : retryIndex.first();
+		return first != null ? CompactCodec.unpackTime(first.dueAt()) : null;
 	}
 
 	public List<WorkflowExecution> getExecutionsWaitingForReply() {
 		return executionStore.values()
 			.stream()
-			.filter(WorkflowExecution::isWaitingForReply)
-			.sorted(Comparator.comparing(WorkflowExecution::getNextRetryAt))
+			.filter(ExecutionRecord::isWaitingForReply)
+			.sorted(BY_NEXT_RETRY)
+			.map(ExecutionRecord::toExecution)
 			.toList();
 	}
 
 	public WorkflowExecution updateExecutionStatus(String executionId, WorkflowExecution.WorkflowStatus newStatus) {
-		WorkflowExecution execution = executionStore.get(executionId);
+		WorkflowExecution execution = update(executionId, e -> e.updateStatus(newStatus, clock));
 		if (execution != null) {
-			execution.updateStatus(newStatus);
 			logger.info("Updated execution {} status to: {}", executionId, newStatus);
 		}
 		return execution;
 	}
 
 	public WorkflowExecution updateExecutionStep(String executionId, String newStep) {
-		WorkflowExecution execution = executionStore.get(executionId);
+		WorkflowExecution execution = update(executionId, e -> e.updateStep(newStep, clock));
 		if (execution != null) {
-			execution.updateStep(newStep);
 			logger.info("Updated execution {} step to: {}", executionId, newStep);
 		}
 		return execution;
 	}
 
 	public WorkflowExecution incrementRetryCount(String executionId) {
-		WorkflowExecution execution = executionStore.get(executionId);
+		WorkflowExecution execution = update(executionId, e -> e.incrementRetryCount(clock));
 		if (execution != null) {
-			execution.incrementRetryCount();
 			logger.info("Incremented retry count for execution {} to: {}", executionId, execution.getRetryCount());
 		}
 		return execution;
 	}
 
+	/**
+	 * 原子地还原、修改并写回一条执行记录，记录不存在时返回 null
+	 */
+	private WorkflowExecution update(String executionId, Consumer<WorkflowExecution> mutation) {
+		ExecutionRecord updated = executionStore.computeIfPresent(CompactId.of(executionId), (id, record) -> {
+			WorkflowExecution execution = record.toExecution();
+			mutation.accept(execution);
+			ExecutionRecord next = ExecutionRecord.from(execution);
+			reindexExpiry(record, next);
+			reindexRetry(record, next);
+			return next;
+		});
+		return updated != null ? updated.toExecution() : null;
+	}
+
 	public WorkflowExecution deleteExecution(String executionId) {
-		WorkflowExecution execution = executionStore.remove(executionId);
-		if (execution != null) {
-			taskIdToExecutionId.remove(execution.getTaskId());
+		ExecutionRecord record = executionStore.remove(CompactId.of(executionId));
+		if (record != null) {
+			Set<CompactId> bucket = expiryBuckets.get(expiryBucketOf(record.updatedAt()));
+			if (bucket != null) {
+				bucket.remove(record.id());
+			}
+			reindexRetry(record, null);
+			taskIdToExecutionId.remove(record.taskId(), record.id());
 			logger.info("Deleted workflow execution: {}", executionId);
+			WorkflowExecution execution = record.toExecution();
+			notifyRemoved(execution);
+			return execution;
 		}
-		return execution;
+		return null;
 	}
 
 	public List<WorkflowExecution> getAllExecutions() {
-		return new ArrayList<>(executionStore.values());
+		return executionStore.values().stream().map(ExecutionRecord::toExecution).toList();
 	}
 
+	/**
+	 * 清理 updatedAt 早于保留期的执行记录并写入归档。只处理整桶早于截止时间的桶， 因此开销与过期记录数成正比；截止时间所在小时的记录会在下一个小时被清理。
+	 * 先写归档再从内存移除，归档失败时记录和桶都保留，下次清理时重试
+	 */
 	public void cleanupOldExecutions(int daysToKeep) {
-		LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysToKeep);
-		List<String> toDelete = executionStore.values()
-			.stream()
-			.filter(execution -> execution.getUpdatedAt().isBefore(cutoffDate))
-			.map(WorkflowExecution::getId)
-			.toList();
+		long cutoff = CompactCodec.packTime(LocalDateTime.now(clock).minusDays(daysToKeep));
+		long cutoffBucket = expiryBucketOf(cutoff);
+
+		Map<Long, Set<CompactId>> buckets = expiryBuckets.headMap(cutoffBucket);
+		List<ExecutionRecord> expired = new ArrayList<>();
+		for (Set<CompactId> bucket : buckets.values()) {
+			for (CompactId id : bucket) {
+				ExecutionRecord record = executionStore.get(id);
+				if (record != null && record.updatedAt() < cutoff) {
+					expired.add(record);
+				}
+			}
+		}
+
+		if (!expired.isEmpty()) {
+			executionArchive.append(expired.stream().map(ExecutionRecord::toExecution).toList());
+		}
+
+		int removedCount = 0;
+		for (ExecutionRecord record : expired) {
+			boolean[] removed = new boolean[1];
+			executionStore.computeIfPresent(record.id(), (key, current) -> {
+				if (current != record) {
+					// 归档后被并发更新并移到了新桶，保留最新版本
+					return current;
+				}
+				removed[0] = true;
+				reindexRetry(current, null);
+				return null;
+			});
+			if (removed[0]) {
+				taskIdToExecutionId.remove(record.taskId(), record.id());
+				notifyRemoved(record.toExecution());
+				removedCount++;
+			}
+		}
+
+		// 旧桶不会再有新记录加入，剩下的 id 都已移除或移到了新桶
+		buckets.forEach((key, bucket) -> {
+			bucket.removeIf(id -> {
+				ExecutionRecord record = executionStore.get(id);
+				return record == null || record.updatedAt() >= cutoff;
+			});
+			if (bucket.isEmpty()) {
+				expiryBuckets.remove(key, bucket);
+			}
+		});
+
+		if (removedCount > 0) {
+			logger.info("Cleaned up {} old workflow executions", removedCount);
+		}
+	}
+
+	public List<WorkflowExecution> findArchivedExecutions(String taskId, int limit) {
+		return executionArchive.findByTaskId(taskId, limit);
+	}
 
-		toDelete.forEach(this::deleteExecution);
+	private void notifyRemoved(WorkflowExecution execution) {
+		for (Consumer<WorkflowExecution> listener : removalListeners) {
+			try {
+				listener.accept(execution);
+			}
+			catch (RuntimeException e) {
+				logger.error("Removal listener failed for workflow execution {}", execution.getId(), e);
+			}
+		}
+	}
+
+	private void reindexExpiry(ExecutionRecord previous, ExecutionRecord next) {
+		long nextBucket = expiryBucketOf(next.updatedAt());
+		if (previous != null) {
+			long previousBucket = expiryBucketOf(previous.updatedAt());
+			if (previousBucket == nextBucket) {
+				return;
+			}
+			Set<CompactId> bucket = expiryBuckets.get(previousBucket);
+			if (bucket != null) {
+				bucket.remove(previous.id());
+			}
+		}
+		expiryBuckets.computeIfAbsent(nextBucket, key -> ConcurrentHashMap.newKeySet()).add(next.id());
+	}
 
-		if (!toDelete.isEmpty()) {
-			logger.info("Cleaned up {} old workflow executions", toDelete.size());
+	/**
+	 * 在持有该记录的 compute 中调用，同一条记录的索引变更不会交错
+	 */
+	private void reindexRetry(ExecutionRecord previous, ExecutionRecord next) {
+		RetryDue previousDue = RetryDue.of(previous);
+		RetryDue nextDue = RetryDue.of(next);
+		if (Objects.equals(previousDue, nextDue)) {
+			return;
 		}
+		if (previousDue != null) {
+			retryIndex.remove(previousDue);
+		}
+		if (nextDue != null) {
+			retryIndex.add(nextDue);
+		}
+	}
+
+	private static long expiryBucketOf(long updatedAt) {
+		return Math.floorDiv(updatedAt, EXPIRY_BUCKET_MILLIS);
+	}
+
+	/**
+	 * 重试索引的条目，按到期时间排序，同一时间的条目按 id 区分
+	 */
+	private record RetryDue(long dueAt, CompactId id) implements Comparable<RetryDue> {
+
+		private static final Comparator<CompactId> BY_ID = Comparator.comparingLong(CompactId::mostSignificantBits)
+			.thenComparingLong(CompactId::leastSignificantBits)
+			.thenComparing(CompactId::raw, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+		private static final CompactId LOWEST = new CompactId(Long.MIN_VALUE, Long.MIN_VALUE, null);
+
+		/**
+		 * 只有等待回复和待重试的记录会被调度器取出
+		 */
+		static RetryDue of(ExecutionRecord record) {
+			if (record == null || record.nextRetryAt() == CompactCodec.NONE) {
+				return null;
+			}
+			WorkflowExecution.WorkflowStatus status = record.executionStatus();
+			if (status != WorkflowExecution.WorkflowStatus.WAITING_FOR_REPLY
+					&& status != WorkflowExecution.WorkflowStatus.PENDING) {
+				return null;
+			}
+			return new RetryDue(record.nextRetryAt(), record.id());
+		}
+
+		/**
+		 * 排在 dueAt 时刻所有条目之前的边界，headSet 取到的都早于 dueAt
+		 */
+		static RetryDue first(long dueAt) {
+			return new RetryDue(dueAt, LOWEST);
+		}
+
+		@Override
+		public int compareTo(RetryDue other) {
+			int byDue = Long.compare(dueAt, other.dueAt);
+			return byDue != 0 ? byDue : BY_ID.compare(id, other.id);
+		}
+
 	}
 
 	public WorkflowExecution createWaitingExecution(String taskId, String threadId, String lastEmailId) {
+		return createWaitingExecution(taskId, threadId, lastEmailId, "WAIT_FOR_REPLY");
+	}
+
+	/**
+	 * 创建等待回复的执行记录。同一任务已有未结束的执行时复用它并保留重试计数，避免每轮等待都新增一条记录
+	 */
+	public WorkflowExecution createWaitingExecution(String taskId, String threadId, String lastEmailId, String step) {
+		WorkflowExecution existing = getExecutionByTaskId(taskId);
+		if (existing != null && (existing.getStatus() == WorkflowExecution.WorkflowStatus.WAITING_FOR_REPLY
+				|| existing.getStatus() == WorkflowExecution.WorkflowStatus.RUNNING
+				|| existing.getStatus() == WorkflowExecution.WorkflowStatus.PENDING)) {
+			WorkflowExecution reused = update(existing.getId(), e -> {
+				e.setThreadId(threadId);
+				e.setLastEmailId(lastEmailId);
+				e.updateStep(step, clock);
+				e.updateStatus(WorkflowExecution.WorkflowStatus.WAITING_FOR_REPLY, clock);
+			});
+			if (reused != null) {
+				return reused;
+			}
+		}
+
 		WorkflowExecution execution = WorkflowExecution.builder()
 			.taskId(taskId)
 			.threadId(threadId)
-			.currentStep("WAIT_FOR_REPLY")
+			.currentStep(step)
 			.status(WorkflowExecution.WorkflowStatus.WAITING_FOR_REPLY)
 			.type(WorkflowExecution.WorkflowType.EMAIL_COORDINATION)
 			.lastEmailId(lastEmailId)
 			.build();
+		execution.initializeTimestamps(clock);
+
+		return saveExecution(execution);
+	}
+
+	/**
+	 * 记录节点失败：执行转为 PENDING 并递增连续失败次数，到 nextRetryAt 后由调度器重试
+	 */
+	public WorkflowExecution recordNodeFailure(String taskId, String threadId, String step) {
+		WorkflowExecution existing = getExecutionByTaskId(taskId);
+		if (existing != null && existing.getStatus() != WorkflowExecution.WorkflowStatus.COMPLETED
+				&& existing.getStatus() != WorkflowExecution.WorkflowStatus.TERMINATED) {
+			WorkflowExecution failed = update(existing.getId(), e -> {
+				if (e.getStatus() != WorkflowExecution.WorkflowStatus.PENDING) {
+					// 等待回复期间累计的轮询次数不算作节点失败
+					e.setRetryCount(0);
+				}
+				e.setThreadId(threadId);
+				e.updateStep(step, clock);
+				e.updateStatus(WorkflowExecution.WorkflowStatus.PENDING, clock);
+				e.incrementRetryCount(clock);
+			});
+			if (failed != null) {
+				logger.info("Recorded failure of step {} for execution {}, attempt {}", step, failed.getId(),
+						failed.getRetryCount());
+				return failed;
+			}
+		}
+
+		WorkflowExecution execution = WorkflowExecution.builder()
+			.taskId(taskId)
+			.threadId(threadId)
+			.currentStep(step)
+			.status(WorkflowExecution.WorkflowStatus.PENDING)
+			.type(WorkflowExecution.WorkflowType.EMAIL_COORDINATION)
+			.build();
+		execution.initializeTimestamps(clock);
+		execution.incrementRetryCount(clock);
 
 		return saveExecution(execution);
 	}
 
-}
\ No newline at end of file
+}
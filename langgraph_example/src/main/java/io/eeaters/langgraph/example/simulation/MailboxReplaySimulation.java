@@ -0,0 +1,265 @@
+package io.eeaters.langgraph.example.simulation;
+
+import ch.qos.logback.classic.Level;
+import io.eeaters.langgraph.example.config.EmailConfig;
+import io.eeaters.langgraph.example.config.WorkflowConfig;
+import io.eeaters.langgraph.example.mail.MailSnapshot;
+import io.eeaters.langgraph.example.mail.MailTransport;
+import io.eeaters.langgraph.example.mail.ReplayMailTransport;
+import io.eeaters.langgraph.example.model.Party;
+import io.eeaters.langgraph.example.model.PartyContact;
+import io.eeaters.langgraph.example.model.Task;
+import io.eeaters.langgraph.example.model.TaskStatus;
+import io.eeaters.langgraph.example.scheduler.EmailPollingScheduler;
+import io.eeaters.langgraph.example.service.ConfigService;
+import io.eeaters.langgraph.example.service.EmailService;
+import io.eeaters.langgraph.example.service.TaskService;
+import io.eeaters.langgraph.example.service.WorkflowExecutionService;
+import io.eeaters.langgraph.example.store.ExecutionArchive;
+import io.eeaters.langgraph.example.util.EmailTemplate;
+import io.eeaters.langgraph.example.workflow.NodeExecutor;
+import io.eeaters.langgraph.example.workflow.TaskWorkflow;
+import io.eeaters.langgraph.example.workflow.WorkflowGraphRegistry;
+import io.eeaters.langgraph.example.workflow.nodes.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * 把真实收件箱的快照（mbox 文件或 maildir 目录）离线重放给 EmailService 和 TaskWorkflow。
+ *
+ * <p>
+ * 快照中每个回复过邮件的地址作为一个参与方，每个 job（去掉回复前缀后主题相同的一组线程）对应一个任务。 任务并行向所有参与方发送请求，发送时认领该 job
+ * 中参与方的历史线程，之后线程中的回复按原始时间间隔在虚拟时间上出现， 由调度器拉取、关联并恢复工作流。
+ * 没有新邮件出现的轮询节拍会被直接跳过，因此几周的流量可以在几秒内重放完成。
+ *
+ * <p>
+ * 结束后统计各状态的任务数和解析、关联、恢复的耗时，可以用期望的状态分布断言重放结果。
+ */
+public class MailboxReplaySimulation {
+
+	private final Path snapshotPath;
+
+	private final Duration pollInterval;
+
+	private final int replyQuorum;
+
+	private final int maxRetryAttempts;
+
+	public MailboxReplaySimulation(Path snapshotPath, Duration pollInterval, int replyQuorum, int maxRetryAttempts) {
+		this.snapshotPath = snapshotPath;
+		this.pollInterval = pollInterval;
+		this.replyQuorum = replyQuorum;
+		this.maxRetryAttempts = maxRetryAttempts;
+	}
+
+	public Result run() throws Exception {
+		long loadStart = System.nanoTime();
+		MailSnapshot snapshot = MailSnapshot.load(snapshotPath);
+		Duration loadTime = Duration.ofNanos(System.nanoTime() - loadStart);
+
+		Instant start = snapshot.size() > 0 ? snapshot.getEntries().get(0).sentAt() : Instant.now();
+		VirtualClock clock = new VirtualClock(start, ZoneId.systemDefault());
+		ReplayMailTransport transport = new ReplayMailTransport(snapshot, clock, 1);
+
+		List<PartyContact> parties = new ArrayList<>();
+		transport.getSenders()
+			.forEach(email -> parties
+				.add(new PartyContact("party-" + (parties.size() + 1), roleOf(parties.size()), email)));
+		if (parties.isEmpty()) {
+			throw new IllegalStateException("No replies found in snapshot: " + snapshotPath);
+		}
+		List<String> jobs = transport.getJobs();
+		int taskCount = jobs.size();
+
+		try (AnnotationConfigApplicationContext context = createContext(clock, transport, parties)) {
+			TaskWorkflow taskWorkflow = context.getBean(TaskWorkflow.class);
+			TaskService taskService = context.getBean(TaskService.class);
+			WorkflowExecutionService executionService = context.getBean(WorkflowExecutionService.class);
+			EmailPollingScheduler scheduler = context.getBean(EmailPollingScheduler.class);
+
+			long wallStart = System.nanoTime();
+			for (int i = 0; i < taskCount; i++) {
+				taskWorkflow.execute(Task.builder()
+					.id(UUID.randomUUID().toString())
+					.title(jobs.get(i))
+					.location("replay")
+					.scheduledTime(LocalDateTime.now(clock).plusDays(1))
+					.build());
+			}
+			Duration startTime = Duration.ofNanos(System.nanoTime() - wallStart);
+
+			long ticks = 0;
+			long resumes = 0;
+			long totalTickNanos = 0;
+			long maxTickNanos = 0;
+			boolean drained = false;
+			while (!drained) {
+				int waiting = executionService.getExecutionsWaitingForReply().size();
+				if (waiting == 0) {
+					break;
+				}
+				Instant next = transport.nextVisibleAfter(clock.instant());
+				if (next == null) {
+					// 全部邮件已可见，再轮询一次处理最后出现的回复
+					drained = true;
+					clock.advance(pollInterval);
+				}
+				else {
+					long idle = Duration.between(clock.instant(), next).toMillis();
+					long skipped = Math.max(0, (idle + pollInterval.toMillis() - 1) / pollInterval.toMillis());
+					clock.advance(pollInterval.multipliedBy(Math.max(1, skipped)));
+				}
+
+				long tickStart = System.nanoTime();
+				scheduler.checkWaitingForReplyTasks();
+				scheduler.retryFailedExecutions();
+				long tickNanos = System.nanoTime() - tickStart;
+
+				ticks++;
+				resumes += waiting;
+				totalTickNanos += tickNanos;
+				maxTickNanos = Math.max(maxTickNanos, tickNanos);
+			}
+			Duration wallTime = Duration.ofNanos(System.nanoTime() - wallStart);
+
+			Map<TaskStatus, Long> statuses = taskService.getAllTasks()
+				.stream()
+				.collect(Collectors.groupingBy(Task::getStatus, () -> new EnumMap<>(TaskStatus.class),
+						Collectors.counting()));
+
+			return new Result(transport.getMessageCount(), parties.size(), taskCount, transport.getSentCount(),
+					transport.getClaimedCount(), Duration.between(start, clock.instant()), ticks, resumes,
+					transport.getInboxReads(), transport.getMessagesRead(), loadTime, startTime, wallTime,
+					Duration.ofNanos(maxTickNanos), Duration.ofNanos(ticks > 0 ? totalTickNanos / ticks : 0), statuses);
+		}
+	}
+
+	/**
+	 * 只注册工作流相关的组件，不启用定时调度和 Web，轮询由重放循环按虚拟时间驱动
+	 */
+	private AnnotationConfigApplicationContext createContext(Clock clock, MailTransport transport,
+			List<PartyContact> parties) {
+		WorkflowConfig workflowConfig = new WorkflowConfig();
+		workflowConfig.setParties(parties);
+		workflowConfig.setReplyQuorum(replyQuorum);
+		workflowConfig.setParallelFanOut(true);
+		workflowConfig.setMaxRetryAttempts(maxRetryAttempts);
+
+		EmailConfig emailConfig = new EmailConfig();
+		emailConfig.setTransport("replay");
+		emailConfig.setHost("replay");
+		emailConfig.setUsername("replay");
+		emailConfig.setPassword("replay");
+		emailConfig.setFromAddress("replay@localhost");
+
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.registerBean(Clock.class, () -> clock);
+		context.registerBean(WorkflowConfig.class, () -> workflowConfig);
+		context.registerBean(EmailConfig.class, () -> emailConfig);
+		context.registerBean(MailTransport.class, () -> transport);
+		context.registerBean(ExecutionArchive.class, () -> new ExecutionArchive((Path) null));
+		context.register(ConfigService.class, TaskService.class, WorkflowExecutionService.class, EmailService.class,
+				EmailTemplate.class, CreateTaskNode.class, SendAutoReplyNode.class, WaitForReplyNode.class,
+				SendConfirmationNode.class, SendFinalAgreementNode.class, SendPartyRequestNode.class,
+				JoinRepliesNode.class, NodeExecutor.class, WorkflowGraphRegistry.class, TaskWorkflow.class,
+				EmailPollingScheduler.class);
+		context.refresh();
+		return context;
+	}
+
+	private static Party roleOf(int index) {
+		return switch (index) {
+			case 0 -> Party.TRAILER_COMPANY;
+			case 1 -> Party.WAREHOUSE;
+			default -> Party.CARRIER;
+		};
+	}
+
+	public record Result(int messages, int parties, int tasks, long requestsSent, long threadsClaimed,
+			Duration simulated, long ticks, long resumes, long inboxReads, long messagesScanned, Duration loadTime,
+			Duration startTime, Duration wallTime, Duration maxTickCost, Duration averageTickCost,
+			Map<TaskStatus, Long> statuses) {
+
+		/**
+		 * 与期望的状态分布比较，返回不一致的描述，全部一致时为空
+		 */
+		public List<String> verify(Map<TaskStatus, Long> expected) {
+			List<String> mismatches = new ArrayList<>();
+			expected.forEach((status, count) -> {
+				long actual = statuses.getOrDefault(status, 0L);
+				if (actual != count) {
+					mismatches.add(status + ": expected " + count + ", actual " + actual);
+				}
+			});
+			return mismatches;
+		}
+
+		@Override
+		public String toString() {
+			double wallSeconds = Math.max(wallTime.toNanos(), 1) / 1e9;
+			return "messages=" + messages + ", parties=" + parties + ", tasks=" + tasks + ", requestsSent="
+					+ requestsSent + ", threadsClaimed=" + threadsClaimed + ", simulated=" + simulated + ", ticks="
+					+ ticks + ", resumes=" + resumes + ", inboxReads=" + inboxReads + ", messagesScanned="
+					+ messagesScanned + ", loadTime=" + loadTime.toMillis() + "ms" + ", startTime="
+					+ startTime.toMillis() + "ms" + ", wallTime=" + wallTime.toMillis() + "ms" + ", maxTickCost="
+					+ maxTickCost.toNanos() / 1000 + "us" + ", averageTickCost=" + averageTickCost.toNanos() / 1000
+					+ "us" + ", resumesPerSecond=" + Math.round(resumes / wallSeconds) + ", messagesScannedPerSecond="
+					+ Math.round(messagesScanned / wallSeconds) + ", statuses=" + statuses;
+		}
+
+	}
+
+	/**
+	 * 参数：快照路径、轮询间隔分钟数（默认 5）、法定同意数（默认 0，即全部同意）、 期望的状态分布（例如
+	 * COMPLETED=12,FIRST_REPLY_RECEIVED=3，不一致时以非零状态退出）
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: MailboxReplaySimulation <mbox-file|maildir> [pollMinutes] [quorum] [expected]");
+			System.exit(2);
+		}
+		Path snapshot = Path.of(args[0]);
+		int pollMinutes = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int quorum = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		Map<TaskStatus, Long> expected = args.length > 3 ? parseExpected(args[3]) : Map.of();
+
+		// 每封邮件和每次恢复都会打印 INFO 日志，重放时只保留告警
+		((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("io.eeaters.langgraph.example")).setLevel(Level.WARN);
+
+		// 重放期间不希望因轮询次数终止任务，等待只由快照中的回复结束
+		MailboxReplaySimulation simulation = new MailboxReplaySimulation(snapshot, Duration.ofMinutes(pollMinutes),
+				quorum, Integer.MAX_VALUE);
+		Result result = simulation.run();
+		System.out.println("Mailbox replay finished: " + result);
+
+		List<String> mismatches = result.verify(expected);
+		if (!mismatches.isEmpty()) {
+			System.err.println("Unexpected task states: " + mismatches);
+			System.exit(1);
+		}
+	}
+
+	private static Map<TaskStatus, Long> parseExpected(String spec) {
+		return List.of(spec.split(","))
+			.stream()
+			.map(String::trim)
+			.filter(entry -> !entry.isEmpty())
+			.map(entry -> entry.split("="))
+			.collect(Collectors.toMap(pair -> TaskStatus.valueOf(pair[0].trim()),
+					pair -> Long.parseLong(pair[1].trim()), (a, b) -> b, () -> new EnumMap<>(TaskStatus.class)));
+	}
+
+}
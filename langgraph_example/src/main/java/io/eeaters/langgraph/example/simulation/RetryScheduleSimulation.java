@@ -0,0 +1,143 @@
+package io.eeaters.langgraph.example.simulation;
+
+import ch.qos.logback.classic.Level;
+import io.eeaters.langgraph.example.model.WorkflowExecution;
+import io.eeaters.langgraph.example.service.WorkflowExecutionService;
+import io.eeaters.langgraph.example.store.ExecutionArchive;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 在虚拟时间上重放重试调度：创建一批等待回复的执行记录，按调度器的节拍推进虚拟时钟， 每个节拍取出到期的执行并递增重试次数（模拟一直没有收到回复），
+ * 达到最大重试次数后与生产环境一样终止执行，统计每个节拍的耗时。
+ *
+ * <p>
+ * 到期时间取自执行服务的重试索引，没有任何执行到期的节拍会被直接跳过，因此一周的调度可以在几秒内重放完成。
+ */
+public class RetryScheduleSimulation {
+
+	private final int executionCount;
+
+	private final Duration horizon;
+
+	private final Duration tickInterval;
+
+	private final Duration creationSpread;
+
+	private final int maxRetryAttempts;
+
+	public RetryScheduleSimulation(int executionCount, Duration horizon, Duration tickInterval, Duration creationSpread,
+			int maxRetryAttempts) {
+		this.executionCount = executionCount;
+		this.horizon = horizon;
+		this.tickInterval = tickInterval;
+		this.creationSpread = creationSpread;
+		this.maxRetryAttempts = maxRetryAttempts;
+	}
+
+	public Result run() {
+		VirtualClock clock = VirtualClock.startingNow();
+		WorkflowExecutionService executionService = new WorkflowExecutionService(clock,
+				new ExecutionArchive((Path) null));
+
+		Instant start = clock.instant();
+		long spreadStepMillis = executionCount > 0 ? creationSpread.toMillis() / executionCount : 0;
+		for (int i = 0; i < executionCount; i++) {
+			clock.setInstant(start.plusMillis(spreadStepMillis * i));
+			executionService.createWaitingExecution(UUID.randomUUID().toString(), UUID.randomUUID().toString(), null);
+		}
+
+		Instant end = start.plus(horizon);
+		clock.setInstant(start.plus(creationSpread));
+
+		long wallStart = System.nanoTime();
+		long ticks = 0;
+		long skippedTicks = 0;
+		long retries = 0;
+		long terminated = 0;
+		long totalTickNanos = 0;
+		long maxTickNanos = 0;
+
+		while (clock.instant().isBefore(end)) {
+			long tickStart = System.nanoTime();
+			List<WorkflowExecution> ready = executionService.getExecutionsReadyForRetry();
+			for (WorkflowExecution execution : ready) {
+				WorkflowExecution retried = executionService.incrementRetryCount(execution.getId());
+				if (retried != null && retried.getRetryCount() >= maxRetryAttempts) {
+					executionService.updateExecutionStatus(retried.getId(),
+							WorkflowExecution.WorkflowStatus.TERMINATED);
+					terminated++;
+				}
+			}
+			long tickNanos = System.nanoTime() - tickStart;
+
+			ticks++;
+			retries += ready.size();
+			totalTickNanos += tickNanos;
+			maxTickNanos = Math.max(maxTickNanos, tickNanos);
+
+			long skipped = ticksUntilNextDue(executionService, clock, end);
+			skippedTicks += skipped;
+			clock.advance(tickInterval.multipliedBy(skipped + 1));
+		}
+
+		Duration wallTime = Duration.ofNanos(System.nanoTime() - wallStart);
+		return new Result(executionCount, horizon, ticks, skippedTicks, retries, terminated, wallTime,
+				Duration.ofNanos(maxTickNanos), Duration.ofNanos(ticks > 0 ? totalTickNanos / ticks : 0));
+	}
+
+	/**
+	 * 计算在下一个执行到期之前可以跳过多少个空节拍，没有执行等待重试时直接跳到模拟结束
+	 */
+	private long ticksUntilNextDue(WorkflowExecutionService executionService, VirtualClock clock, Instant end) {
+		LocalDateTime now = LocalDateTime.now(clock);
+		LocalDateTime earliest = executionService.getNextRetryAt();
+		if (earliest == null) {
+			earliest = LocalDateTime.ofInstant(end, clock.getZone());
+		}
+		if (!earliest.isAfter(now)) {
+			return 0;
+		}
+		long idleMillis = Duration.between(now, earliest).toMillis();
+		return Math.max(0, idleMillis / tickInterval.toMillis() - 1);
+	}
+
+	public record Result(int executions, Duration simulated, long ticks, long skippedTicks, long retries,
+			long terminated, Duration wallTime, Duration maxTickCost, Duration averageTickCost) {
+
+		@Override
+		public String toString() {
+			return "executions=" + executions + ", simulated=" + simulated + ", ticks=" + ticks + ", skippedTicks="
+					+ skippedTicks + ", retries=" + retries + ", terminated=" + terminated + ", wallTime="
+					+ wallTime.toMillis() + "ms" + ", maxTickCost=" + maxTickCost.toNanos() / 1000 + "us"
+					+ ", averageTickCost=" + averageTickCost.toNanos() / 1000 + "us";
+		}
+
+	}
+
+	/**
+	 * 参数：执行数量（默认 100000）、模拟天数（默认 7）、创建时间分散的分钟数（默认 0，即同时到期的最坏情况）、 最大重试次数（默认 3，与
+	 * workflow.maxRetryAttempts 一致）
+	 */
+	public static void main(String[] args) {
+		int executions = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		int days = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+		int spreadMinutes = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		int maxRetryAttempts = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		// 每次重试都会打印 INFO 日志，仿真时只保留告警
+		((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("io.eeaters.langgraph.example")).setLevel(Level.WARN);
+
+		RetryScheduleSimulation simulation = new RetryScheduleSimulation(executions, Duration.ofDays(days),
+				Duration.ofSeconds(30), Duration.ofMinutes(spreadMinutes), maxRetryAttempts);
+		Result result = simulation.run();
+		System.out.println("Retry schedule simulation finished: " + result);
+	}
+
+}
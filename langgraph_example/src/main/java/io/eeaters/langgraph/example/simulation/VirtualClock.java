@@ -0,0 +1,62 @@
+package io.eeaters.langgraph.example.simulation;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可手动推进的虚拟时钟，时间只在调用 {@link #advance(Duration)} 或 {@link #setInstant(Instant)} 时变化。
+ */
+public class VirtualClock extends Clock {
+
+	private final AtomicLong epochMillis;
+
+	private final ZoneId zone;
+
+	public VirtualClock(Instant start, ZoneId zone) {
+		this(new AtomicLong(start.toEpochMilli()), zone);
+	}
+
+	private VirtualClock(AtomicLong epochMillis, ZoneId zone) {
+		this.epochMillis = epochMillis;
+		this.zone = zone;
+	}
+
+	public static VirtualClock startingNow() {
+		return new VirtualClock(Instant.now(), ZoneId.systemDefault());
+	}
+
+	public Instant advance(Duration duration) {
+		return Instant.ofEpochMilli(epochMillis.addAndGet(duration.toMillis()));
+	}
+
+	public void setInstant(Instant instant) {
+		epochMillis.set(instant.toEpochMilli());
+	}
+
+	@Override
+	public ZoneId getZone() {
+		return zone;
+	}
+
+	/**
+	 * 返回的时钟与当前实例共享同一个时间源
+	 */
+	@Override
+	public Clock withZone(ZoneId zone) {
+		return new VirtualClock(epochMillis, zone);
+	}
+
+	@Override
+	public Instant instant() {
+		return Instant.ofEpochMilli(epochMillis.get());
+	}
+
+	@Override
+	public long millis() {
+		return epochMillis.get();
+	}
+
+}
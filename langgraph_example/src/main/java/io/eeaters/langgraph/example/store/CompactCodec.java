@@ -0,0 +1,37 @@
+package io.eeaters.langgraph.example.store;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 紧凑存储使用的编码工具。{@link LocalDateTime} 按 UTC 偏移编码为毫秒值（只用于存储，不代表真实时区）， 枚举编码为序号，重复度高的字符串做驻留。
+ */
+public final class CompactCodec {
+
+	public static final long NONE = Long.MIN_VALUE;
+
+	private CompactCodec() {
+	}
+
+	public static long packTime(LocalDateTime time) {
+		return time != null ? time.toInstant(ZoneOffset.UTC).toEpochMilli() : NONE;
+	}
+
+	public static LocalDateTime unpackTime(long millis) {
+		return millis != NONE ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC) : null;
+	}
+
+	public static byte ordinal(Enum<?> value) {
+		return value != null ? (byte) value.ordinal() : -1;
+	}
+
+	public static <E extends Enum<E>> E fromOrdinal(E[] values, byte ordinal) {
+		return ordinal >= 0 ? values[ordinal] : null;
+	}
+
+	public static String intern(String value) {
+		return value != null ? value.intern() : null;
+	}
+
+}
@@ -0,0 +1,39 @@
+package io.eeaters.langgraph.example.store;
+
+import java.util.UUID;
+
+/**
+ * 紧凑的标识符表示。UUID 格式的字符串保存为两个 long，其他格式保留原始字符串。
+ */
+public record CompactId(long mostSignificantBits, long leastSignificantBits, String raw) {
+
+	public static CompactId of(String id) {
+		if (id == null) {
+			return null;
+		}
+		if (id.length() == 36 && id.charAt(8) == '-' && id.charAt(13) == '-' && id.charAt(18) == '-'
+				&& id.charAt(23) == '-') {
+			try {
+				UUID uuid = UUID.fromString(id);
+				// 只有规范的小写形式才能无损还原
+				if (uuid.toString().equals(id)) {
+					return new CompactId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), null);
+				}
+			}
+			catch (IllegalArgumentException e) {
+				// 不是合法的 UUID，按原始字符串保存
+			}
+		}
+		return new CompactId(0L, 0L, id);
+	}
+
+	public static String toString(CompactId id) {
+		return id != null ? id.toString() : null;
+	}
+
+	@Override
+	public String toString() {
+		return raw != null ? raw : new UUID(mostSignificantBits, leastSignificantBits).toString();
+	}
+
+}
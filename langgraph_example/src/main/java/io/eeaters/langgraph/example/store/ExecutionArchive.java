@@ -0,0 +1,204 @@
+package io.eeaters.langgraph.example.store;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.eeaters.langgraph.example.config.WorkflowConfig;
+import io.eeaters.langgraph.example.model.WorkflowExecution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 过期执行记录的归档文件。每次归档追加一个 gzip 成员，内容为每行一条 JSON 的执行记录； 读取时 {@link GZIPInputStream}
+ * 会依次解压所有成员，因此文件只追加、不改写。
+ * <p>
+ * 写入串行进行，每次成功写入后记录已提交的长度；查询不加锁，只读取已提交的部分，不会读到正在写入的成员，也不会阻塞写入。 写入失败时截回已提交的长度。
+ */
+@Component
+public class ExecutionArchive {
+
+	private static final Logger logger = LoggerFactory.getLogger(ExecutionArchive.class);
+
+	private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+		.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+		.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+	private final Path archiveFile;
+
+	private final Object writeLock = new Object();
+
+	// 已完整写入的字节数，查询只读到这里
+	private volatile long committedLength;
+
+	@Autowired
+	public ExecutionArchive(WorkflowConfig workflowConfig) {
+		this(workflowConfig.getArchivePath() == null || workflowConfig.getArchivePath().isBlank() ? null
+				: Path.of(workflowConfig.getArchivePath()));
+	}
+
+	/**
+	 * @param archiveFile 归档文件路径，为 null 时不归档，过期记录直接丢弃
+	 */
+	public ExecutionArchive(Path archiveFile) {
+		this.archiveFile = archiveFile;
+		try {
+			this.committedLength = archiveFile != null && Files.exists(archiveFile) ? Files.size(archiveFile) : 0;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Failed to read workflow archive " + archiveFile, e);
+		}
+	}
+
+	public boolean isEnabled() {
+		return archiveFile != null;
+	}
+
+	public void append(Collection<WorkflowExecution> executions) {
+		if (archiveFile == null || executions.isEmpty()) {
+			return;
+		}
+
+		synchronized (writeLock) {
+			appendLocked(executions);
+		}
+	}
+
+	private void appendLocked(Collection<WorkflowExecution> executions) {
+		try {
+			Path parent = archiveFile.toAbsolutePath().getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			try (Writer writer = new OutputStreamWriter(
+					new GZIPOutputStream(new BufferedOutputStream(
+							Files.newOutputStream(archiveFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND))),
+					StandardCharsets.UTF_8)) {
+				for (WorkflowExecution execution : executions) {
+					writer.write(objectMapper.writeValueAsString(execution));
+					writer.write('\n');
+				}
+			}
+			committedLength = Files.size(archiveFile);
+			logger.info("Archived {} workflow executions to {}", executions.size(), archiveFile);
+		}
+		catch (IOException e) {
+			logger.error("Failed to archive {} workflow executions", executions.size(), e);
+			truncateToCommitted();
+			throw new UncheckedIOException("Failed to archive workflow executions", e);
+		}
+	}
+
+	/**
+	 * 去掉写到一半的 gzip 成员，否则之后追加的成员都无法读取
+	 */
+	private void truncateToCommitted() {
+		try (FileChannel channel = FileChannel.open(archiveFile, StandardOpenOption.WRITE)) {
+			channel.truncate(committedLength);
+		}
+		catch (IOException e) {
+			logger.error("Failed to truncate workflow archive {} to {} bytes", archiveFile, committedLength, e);
+		}
+	}
+
+	/**
+	 * 顺序扫描归档文件，返回满足条件的前 limit 条记录
+	 */
+	public List<WorkflowExecution> query(Predicate<WorkflowExecution> filter, int limit) {
+		List<WorkflowExecution> result = new ArrayList<>();
+		long length = committedLength;
+		if (archiveFile == null || length == 0) {
+			return result;
+		}
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(
+						new BufferedInputStream(new LimitedInputStream(Files.newInputStream(archiveFile), length))),
+				StandardCharsets.UTF_8))) {
+			String line;
+			while (result.size() < limit && (line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				WorkflowExecution execution = objectMapper.readValue(line, WorkflowExecution.class);
+				if (filter.test(execution)) {
+					result.add(execution);
+				}
+			}
+		}
+		catch (IOException e) {
+			logger.error("Failed to read workflow archive {}", archiveFile, e);
+			throw new UncheckedIOException("Failed to read workflow archive", e);
+		}
+		return result;
+	}
+
+	public List<WorkflowExecution> findByTaskId(String taskId, int limit) {
+		return query(execution -> taskId.equals(execution.getTaskId()), limit);
+	}
+
+	/**
+	 * 只读取前 remaining 个字节
+	 */
+	private static final class LimitedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		LimitedInputStream(InputStream in, long limit) {
+			super(in);
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+package io.eeaters.langgraph.example.store;
+
+import io.eeaters.langgraph.example.model.WorkflowExecution;
+import io.eeaters.langgraph.example.model.WorkflowExecution.WorkflowStatus;
+import io.eeaters.langgraph.example.model.WorkflowExecution.WorkflowType;
+
+/**
+ * {@link WorkflowExecution} 在存储中的紧凑形式，读取时通过 {@link #toExecution()} 还原。
+ */
+public record ExecutionRecord(CompactId id, CompactId taskId, CompactId threadId, String currentStep, byte status,
+		byte type, int retryCount, long lastExecutedAt, long nextRetryAt, CompactId lastEmailId, long createdAt,
+		long updatedAt, long completedAt) {
+
+	private static final WorkflowStatus[] STATUSES = WorkflowStatus.values();
+
+	private static final WorkflowType[] TYPES = WorkflowType.values();
+
+	public static ExecutionRecord from(WorkflowExecution execution) {
+		return new ExecutionRecord(CompactId.of(execution.getId()), CompactId.of(execution.getTaskId()),
+				CompactId.of(execution.getThreadId()), CompactCodec.intern(execution.getCurrentStep()),
+				CompactCodec.ordinal(execution.getStatus()), CompactCodec.ordinal(execution.getType()),
+				execution.getRetryCount(), CompactCodec.packTime(execution.getLastExecutedAt()),
+				CompactCodec.packTime(execution.getNextRetryAt()), CompactId.of(execution.getLastEmailId()),
+				CompactCodec.packTime(execution.getCreatedAt()), CompactCodec.packTime(execution.getUpdatedAt()),
+				CompactCodec.packTime(execution.getCompletedAt()));
+	}
+
+	public WorkflowExecution toExecution() {
+		return new WorkflowExecution(id.toString(), CompactId.toString(taskId), CompactId.toString(threadId),
+				currentStep, executionStatus(), CompactCodec.fromOrdinal(TYPES, type), retryCount,
+				CompactCodec.unpackTime(lastExecutedAt), CompactCodec.unpackTime(nextRetryAt),
+				CompactId.toString(lastEmailId), CompactCodec.unpackTime(createdAt), CompactCodec.unpackTime(updatedAt),
+				CompactCodec.unpackTime(completedAt));
+	}
+
+	public WorkflowStatus executionStatus() {
+		return CompactCodec.fromOrdinal(STATUSES, status);
+	}
+
+	/**
+	 * 与 {@link WorkflowExecution#isReadyForRetry} 一致，但直接比较毫秒值，不需要还原对象
+	 */
+	public boolean isReadyForRetry(long nowMillis) {
+		WorkflowStatus current = executionStatus();
+		return nextRetryAt != CompactCodec.NONE && nowMillis > nextRetryAt
+				&& (current == WorkflowStatus.WAITING_FOR_REPLY || current == WorkflowStatus.PENDING);
+	}
+
+	/**
+	 * 与 {@link WorkflowExecution#isWaitingForReply} 一致
+	 */
+	public boolean isWaitingForReply() {
+		return executionStatus() == WorkflowStatus.WAITING_FOR_REPLY
+				&& ("WAIT_FOR_REPLY".equals(currentStep) || "JOIN_REPLIES".equals(currentStep));
+	}
+
+}
@@ -0,0 +1,161 @@
+package io.eeaters.langgraph.example.store;
+
+import io.eeaters.langgraph.example.model.Party;
+import io.eeaters.langgraph.example.model.TaskStatus;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * {@link TaskRecord} 的二级索引：按 (scheduledTime, id) 排序的跳表，以及 status、currentParty、location
+ * 的哈希索引。 索引只保存任务 id，由调用方在同一个键的 compute 中调用 {@link #reindex} 保持与存储一致；
+ * 查询时并发写入可能让索引短暂领先或落后，结果需再用记录本身校验。
+ */
+public class TaskIndex {
+
+	private static final Comparator<ScheduledKey> SCHEDULED_ORDER = Comparator.comparingLong(ScheduledKey::time)
+		.thenComparing(ScheduledKey::id,
+				Comparator.nullsFirst(Comparator.comparingLong(CompactId::mostSignificantBits)
+					.thenComparingLong(CompactId::leastSignificantBits)
+					.thenComparing(CompactId::raw, Comparator.nullsFirst(Comparator.naturalOrder()))));
+
+	// 每个任务一个键，不按时间分桶，因此没有需要回收的空桶
+	private final ConcurrentSkipListSet<ScheduledKey> byScheduledTime = new ConcurrentSkipListSet<>(SCHEDULED_ORDER);
+
+	private final Set<CompactId>[] byStatus = newSets(TaskStatus.values().length);
+
+	private final Set<CompactId>[] byCurrentParty = newSets(Party.values().length);
+
+	private final Map<String, Set<CompactId>> byLocation = new ConcurrentHashMap<>();
+
+	public void reindex(TaskRecord previous, TaskRecord next) {
+		if (previous != null) {
+			if (next == null || previous.scheduledTime() != next.scheduledTime()) {
+				byScheduledTime.remove(new ScheduledKey(previous.scheduledTime(), previous.id()));
+			}
+			if (next == null || previous.status() != next.status()) {
+				remove(byStatus, previous.status(), previous.id());
+			}
+			if (next == null || previous.currentParty() != next.currentParty()) {
+				remove(byCurrentParty, previous.currentParty(), previous.id());
+			}
+			if (next == null || !Objects.equals(previous.location(), next.location())) {
+				remove(byLocation, previous.location(), previous.id());
+			}
+		}
+		if (next != null) {
+			byScheduledTime.add(new ScheduledKey(next.scheduledTime(), next.id()));
+			add(byStatus, next.status(), next.id());
+			add(byCurrentParty, next.currentParty(), next.id());
+			if (next.location() != null) {
+				byLocation.computeIfAbsent(next.location(), key -> ConcurrentHashMap.newKeySet()).add(next.id());
+			}
+		}
+	}
+
+	public void clear() {
+		byScheduledTime.clear();
+		for (Set<CompactId> ids : byStatus) {
+			ids.clear();
+		}
+		for (Set<CompactId> ids : byCurrentParty) {
+			ids.clear();
+		}
+		byLocation.clear();
+	}
+
+	/**
+	 * scheduledTime 在 [from, to) 内的任务，按时间升序。from/to 为 {@link CompactCodec#packTime}
+	 * 的结果，未安排时间的任务不在其中
+	 */
+	public Iterable<CompactId> scheduledBetween(long from, long to) {
+		NavigableSet<ScheduledKey> range = scheduledRange(from, to);
+		return () -> new Iterator<>() {
+
+			private final Iterator<ScheduledKey> keys = range.iterator();
+
+			@Override
+			public boolean hasNext() {
+				return keys.hasNext();
+			}
+
+			@Override
+			public CompactId next() {
+				return keys.next().id();
+			}
+
+		};
+	}
+
+	/**
+	 * 统计时间范围内的任务数，达到 bound 即停止，用于判断时间范围是否比其他索引更有选择性
+	 */
+	public int countScheduledBetween(long from, long to, int bound) {
+		int count = 0;
+		Iterator<ScheduledKey> keys = scheduledRange(from, to).iterator();
+		while (count < bound && keys.hasNext()) {
+			keys.next();
+			count++;
+		}
+		return count;
+	}
+
+	private NavigableSet<ScheduledKey> scheduledRange(long from, long to) {
+		ScheduledKey lower = new ScheduledKey(from == CompactCodec.NONE ? CompactCodec.NONE + 1 : from, null);
+		return to == CompactCodec.NONE ? byScheduledTime.tailSet(lower, true)
+				: byScheduledTime.subSet(lower, true, new ScheduledKey(to, null), false);
+	}
+
+	public Set<CompactId> withStatus(TaskStatus status) {
+		return byStatus[status.ordinal()];
+	}
+
+	public Set<CompactId> withCurrentParty(Party party) {
+		return byCurrentParty[party.ordinal()];
+	}
+
+	public Set<CompactId> atLocation(String location) {
+		return byLocation.getOrDefault(location, Set.of());
+	}
+
+	private record ScheduledKey(long time, CompactId id) {
+	}
+
+	private static void remove(Map<?, Set<CompactId>> index, Object key, CompactId id) {
+		if (key == null) {
+			return;
+		}
+		Set<CompactId> ids = index.get(key);
+		if (ids != null) {
+			ids.remove(id);
+		}
+	}
+
+	private static void add(Set<CompactId>[] index, byte ordinal, CompactId id) {
+		if (ordinal >= 0) {
+			index[ordinal].add(id);
+		}
+	}
+
+	private static void remove(Set<CompactId>[] index, byte ordinal, CompactId id) {
+		if (ordinal >= 0) {
+			index[ordinal].remove(id);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Set<CompactId>[] newSets(int size) {
+		Set<CompactId>[] sets = new Set[size];
+		for (int i = 0; i < size; i++) {
+			sets[i] = ConcurrentHashMap.newKeySet();
+		}
+		return sets;
+	}
+
+}
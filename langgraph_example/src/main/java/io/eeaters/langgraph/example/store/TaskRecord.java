@@ -0,0 +1,58 @@
+package io.eeaters.langgraph.example.store;
+
+import io.eeaters.langgraph.example.model.Party;
+import io.eeaters.langgraph.example.model.PartyRequest;
+import io.eeaters.langgraph.example.model.Task;
+import io.eeaters.langgraph.example.model.TaskStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * {@link Task} 在存储中的紧凑形式：标识符为两个 long，时间为毫秒值，枚举为序号，地点字符串做了驻留。 读取时通过 {@link #toTask()}
+ * 还原为独立的 {@link Task} 副本。记录本身不可变，每次写入都以新记录（版本号加一）替换旧记录。
+ */
+public record TaskRecord(CompactId id, String title, long scheduledTime, String location, byte status,
+		byte currentParty, byte nextParty, long createdAt, long updatedAt, CompactId emailThreadId,
+		String finalConfirmedTime, List<PartyRequest> partyRequests, long version) {
+
+	private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+	private static final Party[] PARTIES = Party.values();
+
+	public static TaskRecord from(Task task) {
+		return new TaskRecord(CompactId.of(task.getId()), task.getTitle(),
+				CompactCodec.packTime(task.getScheduledTime()), CompactCodec.intern(task.getLocation()),
+				CompactCodec.ordinal(task.getStatus()), CompactCodec.ordinal(task.getCurrentParty()),
+				CompactCodec.ordinal(task.getNextParty()), CompactCodec.packTime(task.getCreatedAt()),
+				CompactCodec.packTime(task.getUpdatedAt()), CompactId.of(task.getEmailThreadId()),
+				task.getFinalConfirmedTime(), copyOf(task.getPartyRequests(), List::copyOf), task.getVersion());
+	}
+
+	public Task toTask() {
+		return new Task(id.toString(), title, CompactCodec.unpackTime(scheduledTime), location,
+				CompactCodec.fromOrdinal(STATUSES, status), CompactCodec.fromOrdinal(PARTIES, currentParty),
+				CompactCodec.fromOrdinal(PARTIES, nextParty), CompactCodec.unpackTime(createdAt),
+				CompactCodec.unpackTime(updatedAt), CompactId.toString(emailThreadId), finalConfirmedTime,
+				copyOf(partyRequests, ArrayList::new), version);
+	}
+
+	/**
+	 * PartyRequest 可变，存入和读出时都逐个复制，记录中保存不可变列表
+	 */
+	private static List<PartyRequest> copyOf(List<PartyRequest> requests,
+			Function<List<PartyRequest>, List<PartyRequest>> collector) {
+		if (requests == null || requests.isEmpty()) {
+			return collector.apply(List.of());
+		}
+		return collector.apply(requests.stream()
+			.map(request -> new PartyRequest(request.getPartyId(), request.getEmail(), request.getEmailId()))
+			.toList());
+	}
+
+	public TaskStatus taskStatus() {
+		return CompactCodec.fromOrdinal(STATUSES, status);
+	}
+
+}
@@ -0,0 +1,95 @@
+package io.eeaters.langgraph.example.workflow;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * 连续失败达到阈值后打开，打开期间直接拒绝调用；冷却结束后放行一次探测调用，成功则关闭，失败则重新打开。
+ */
+public class CircuitBreaker {
+
+	private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public enum State {
+
+		CLOSED, OPEN, HALF_OPEN
+
+	}
+
+	private final String name;
+
+	private final int failureThreshold;
+
+	private final Duration openDuration;
+
+	private final Clock clock;
+
+	private State state = State.CLOSED;
+
+	private int consecutiveFailures;
+
+	private Instant openedAt;
+
+	private boolean probeInFlight;
+
+	public CircuitBreaker(String name, int failureThreshold, Duration openDuration, Clock clock) {
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+		this.clock = clock;
+	}
+
+	public synchronized boolean tryAcquire() {
+		if (state == State.OPEN) {
+			if (clock.instant().isBefore(openedAt.plus(openDuration))) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probeInFlight = false;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probeInFlight) {
+				return false;
+			}
+			probeInFlight = true;
+		}
+		return true;
+	}
+
+	public synchronized void onSuccess() {
+		if (state != State.CLOSED) {
+			logger.info("Circuit {} closed", name);
+		}
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		probeInFlight = false;
+	}
+
+	public synchronized void onFailure() {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+			if (state != State.OPEN) {
+				logger.warn("Circuit {} opened after {} consecutive failures", name, consecutiveFailures);
+			}
+			state = State.OPEN;
+			openedAt = clock.instant();
+			probeInFlight = false;
+		}
+	}
+
+	/**
+	 * 调用因与依赖无关的原因失败（如参数校验、版本冲突），不计入失败也不视为恢复；半开时交还探测名额
+	 */
+	public synchronized void onIgnored() {
+		probeInFlight = false;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+}
@@ -0,0 +1,10 @@
+package io.eeaters.langgraph.example.workflow;
+
+/**
+ * 节点依赖的外部服务，同一依赖的节点共用一个熔断器。
+ */
+public enum NodeDependency {
+
+	NONE, SMTP, IMAP
+
+}
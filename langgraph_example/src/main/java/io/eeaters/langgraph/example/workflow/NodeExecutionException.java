@@ -0,0 +1,52 @@
+package io.eeaters.langgraph.example.workflow;
+
+/**
+ * 节点因超时、熔断或依赖调用失败而未能完成。工作流据此把执行记录转为待重试，超过重试次数后终止。
+ */
+public class NodeExecutionException extends RuntimeException {
+
+	public enum Reason {
+
+		TIMEOUT, CIRCUIT_OPEN, FAILED
+
+	}
+
+	private final String nodeId;
+
+	private final NodeDependency dependency;
+
+	private final Reason reason;
+
+	public NodeExecutionException(String nodeId, NodeDependency dependency, Reason reason, String message,
+			Throwable cause) {
+		super(message, cause);
+		this.nodeId = nodeId;
+		this.dependency = dependency;
+		this.reason = reason;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public NodeDependency getDependency() {
+		return dependency;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	/**
+	 * 在异常链中查找节点失败，图执行会把节点异常包装成 CompletionException 等
+	 */
+	public static NodeExecutionException find(Throwable throwable) {
+		for (Throwable t = throwable; t != null; t = t.getCause()) {
+			if (t instanceof NodeExecutionException failure) {
+				return failure;
+			}
+		}
+		return null;
+	}
+
+}
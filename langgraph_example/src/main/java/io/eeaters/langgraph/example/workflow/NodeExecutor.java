@@ -0,0 +1,197 @@
+package io.eeaters.langgraph.example.workflow;
+
+import io.eeaters.langgraph.example.config.WorkflowConfig;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.ParseException;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.bsc.langgraph4j.action.NodeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在虚拟线程上执行节点动作，替代 node_async 在调用线程上同步执行阻塞的 IMAP/SMTP 调用。
+ * 每个节点有截止时间，超时后中断执行线程；同一依赖连续失败时熔断，后续节点直接失败，不再占用线程。
+ */
+@Component
+public class NodeExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeExecutor.class);
+
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "node-deadline");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Map<NodeDependency, CircuitBreaker> circuitBreakers = new EnumMap<>(NodeDependency.class);
+
+	private final WorkflowConfig workflowConfig;
+
+	public NodeExecutor(WorkflowConfig workflowConfig, Clock clock) {
+		this.workflowConfig = workflowConfig;
+		Duration openDuration = Duration.ofSeconds(workflowConfig.getCircuitOpenSeconds());
+		for (NodeDependency dependency : NodeDependency.values()) {
+			if (dependency != NodeDependency.NONE) {
+				circuitBreakers.put(dependency, new CircuitBreaker(dependency.name(),
+						workflowConfig.getCircuitFailureThreshold(), openDuration, clock));
+			}
+		}
+	}
+
+	public AsyncNodeAction<WorkflowState> async(String nodeId, NodeDependency dependency,
+			NodeAction<WorkflowState> action) {
+		return state -> execute(nodeId, dependency, action, state);
+	}
+
+	/**
+	 * 并行分支的调度线程池。分支在这里等待各自节点的结果，用虚拟线程阻塞的代价可以忽略
+	 */
+	public Executor branchExecutor() {
+		return executor;
+	}
+
+	public CircuitBreaker.State getCircuitState(NodeDependency dependency) {
+		CircuitBreaker circuitBreaker = circuitBreakers.get(dependency);
+		return circuitBreaker != null ? circuitBreaker.getState() : CircuitBreaker.State.CLOSED;
+	}
+
+	private CompletableFuture<Map<String, Object>> execute(String nodeId, NodeDependency dependency,
+			NodeAction<WorkflowState> action, WorkflowState state) {
+		CircuitBreaker circuitBreaker = circuitBreakers.get(dependency);
+		if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+			return CompletableFuture.failedFuture(new NodeExecutionException(nodeId, dependency,
+					NodeExecutionException.Reason.CIRCUIT_OPEN, "Circuit open for " + dependency, null));
+		}
+
+		CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+		Future<?> running = executor.submit(() -> {
+			try {
+				result.complete(action.apply(state));
+			}
+			catch (Throwable e) {
+				result.completeExceptionally(new NodeExecutionException(nodeId, dependency,
+						NodeExecutionException.Reason.FAILED, "Node " + nodeId + " failed: " + e.getMessage(), e));
+			}
+		});
+
+		long timeoutSeconds = getTimeoutSeconds(nodeId);
+		ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+			if (result.completeExceptionally(
+					new NodeExecutionException(nodeId, dependency, NodeExecutionException.Reason.TIMEOUT,
+							"Node " + nodeId + " exceeded " + timeoutSeconds + "s", null))) {
+				logger.warn("Node {} exceeded deadline of {}s, cancelling", nodeId, timeoutSeconds);
+				running.cancel(true);
+			}
+		}, timeoutSeconds, TimeUnit.SECONDS);
+
+		return result.whenComplete((update, error) -> {
+			deadline.cancel(false);
+			if (circuitBreaker != null) {
+				if (error == null) {
+					circuitBreaker.onSuccess();
+				}
+				else if (isDependencyFailure(error)) {
+					circuitBreaker.onFailure();
+				}
+				else {
+					circuitBreaker.onIgnored();
+				}
+			}
+		});
+	}
+
+	/**
+	 * 只有超时和邮件服务本身的异常计入熔断，参数校验、版本冲突、模板错误等节点自身的问题不应阻断其他任务的正常调用
+	 */
+	static boolean isDependencyFailure(Throwable error) {
+		if (error instanceof NodeExecutionException e && e.getReason() == NodeExecutionException.Reason.TIMEOUT) {
+			return true;
+		}
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			// 地址和报文解析错误是调用方的问题，AddressException 也是 ParseException
+			if (cause instanceof ParseException || cause instanceof MailParseException) {
+				return false;
+			}
+			if (cause instanceof MailAuthenticationException) {
+				return true;
+			}
+			// 构造邮件失败只有读取附件等 I/O 问题才算依赖故障
+			if (cause instanceof MailPreparationException) {
+				return hasIoCause(cause.getCause());
+			}
+			// JavaMailSenderImpl 逐封发送失败时只带失败邮件的异常，没有 cause
+			if (cause instanceof MailSendException send && send.getCause() == null) {
+				return isSendFailure(send.getMessageExceptions());
+			}
+			if (cause instanceof SendFailedException send && hasInvalidAddresses(send)) {
+				return false;
+			}
+			if (cause instanceof MessagingException || cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSendFailure(Exception[] messageExceptions) {
+		if (messageExceptions.length == 0) {
+			return true;
+		}
+		for (Exception messageException : messageExceptions) {
+			if (isDependencyFailure(messageException)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasInvalidAddresses(SendFailedException error) {
+		Address[] invalid = error.getInvalidAddresses();
+		return invalid != null && invalid.length > 0;
+	}
+
+	private static boolean hasIoCause(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private long getTimeoutSeconds(String nodeId) {
+		Long timeout = workflowConfig.getNodeTimeouts().get(nodeId);
+		return timeout != null ? timeout : workflowConfig.getNodeTimeoutSeconds();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		deadlines.shutdownNow();
+		executor.shutdownNow();
+	}
+
+}
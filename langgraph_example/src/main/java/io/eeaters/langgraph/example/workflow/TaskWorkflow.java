@@ -2,218 +2,157 @@ package io.eeaters.langgraph.example.workflow;
 
 import io.eeaters.langgraph.example.model.Task;
 import io.eeaters.langgraph.example.model.TaskStatus;
+import io.eeaters.langgraph.example.model.WorkflowExecution;
 import io.eeaters.langgraph.example.service.ConfigService;
-import io.eeaters.langgraph.example.workflow.nodes.*;
-import org.bsc.langgraph4j.CompileConfig;
+import io.eeaters.langgraph.example.service.TaskService;
+import io.eeaters.langgraph.example.service.WorkflowExecutionService;
 import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.GraphInput;
 import org.bsc.langgraph4j.GraphRepresentation;
-import org.bsc.langgraph4j.StateGraph;
-import org.bsc.langgraph4j.checkpoint.MemorySaver;
+import org.bsc.langgraph4j.NodeOutput;
+import org.bsc.langgraph4j.RunnableConfig;
 import org.bsc.langgraph4j.state.Channel;
 import org.bsc.langgraph4j.state.Channels;
+import org.bsc.langgraph4j.state.Reducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.Optional;
-
-import static org.bsc.langgraph4j.action.AsyncNodeAction.node_async;
-import static org.bsc.langgraph4j.action.AsyncEdgeAction.edge_async;
-import static org.bsc.langgraph4j.StateGraph.START;
-import static org.bsc.langgraph4j.StateGraph.END;
+import java.util.function.Consumer;
 
 @Component
 public class TaskWorkflow {
 
 	private static final Logger logger = LoggerFactory.getLogger(TaskWorkflow.class);
 
-	public static final Map<String, Channel<?>> SCHEMA = Map.of("task", Channels.base(() -> null), "currentStep",
-			Channels.base(() -> ""), "lastEmailId", Channels.base(() -> ""), "latestResponse",
-			Channels.base(() -> null), "retryCount", Channels.base(() -> 0), "completed", Channels.base(() -> false),
-			"terminated", Channels.base(() -> false));
-
-	@Autowired
-	private CreateTaskNode createTaskNode;
+	// task/latestResponse 没有默认值：默认值为 null 时初始状态无法构建
+	public static final Map<String, Channel<?>> SCHEMA = Map.of("task",
+			Channels.base((Reducer<Object>) (oldValue, newValue) -> newValue), "currentStep", Channels.base(() -> ""),
+			"lastEmailId", Channels.base(() -> ""), "latestResponse",
+			Channels.base((Reducer<Object>) (oldValue, newValue) -> newValue), "retryCount", Channels.base(() -> 0),
+			"completed", Channels.base(() -> false), "terminated", Channels.base(() -> false), "partyRequests",
+			Channels.appender(ArrayList::new), "partyReplies", Channels.base(() -> Map.of()), "quorumReached",
+			Channels.base(() -> false));
 
 	@Autowired
-	private SendAutoReplyNode sendAutoReplyNode;
+	private WorkflowGraphRegistry graphRegistry;
 
 	@Autowired
-	private WaitForReplyNode waitForReplyNode;
+	private ConfigService configService;
 
 	@Autowired
-	private SendConfirmationNode sendConfirmationNode;
+	private NodeExecutor nodeExecutor;
 
 	@Autowired
-	private SendFinalAgreementNode sendFinalAgreementNode;
+	private TaskService taskService;
 
 	@Autowired
-	private ConfigService configService;
-
-	private CompiledGraph<WorkflowState> compiledGraph;
-
-	public void initialize() throws org.bsc.langgraph4j.GraphStateException {
-		if (!configService.validateConfiguration()) {
-			throw new IllegalStateException("Configuration validation failed");
-		}
-
-		StateGraph<WorkflowState> workflow = new StateGraph<>(SCHEMA, WorkflowState::new)
-			.addNode("CREATE_TASK", node_async(createTaskNode.createTask()))
-			.addNode("SEND_AUTO_REPLY", node_async(sendAutoReplyNode.sendAutoReply()))
-			.addNode("WAIT_FOR_REPLY", node_async(waitForReplyNode.waitForReply()))
-			.addNode("SEND_CONFIRMATION", node_async(sendConfirmationNode.sendConfirmation()))
-			.addNode("SEND_FINAL_AGREEMENT", node_async(sendFinalAgreementNode.sendFinalAgreement()))
-			.addNode("COMPLETED", node_async(this::completeTask))
-			.addNode("TERMINATED", node_async(this::terminateTask))
-
-			.addEdge(START, "CREATE_TASK")
-			.addEdge("CREATE_TASK", "SEND_AUTO_REPLY")
-			.addEdge("SEND_AUTO_REPLY", "WAIT_FOR_REPLY")
-			.addEdge("SEND_CONFIRMATION", "WAIT_FOR_REPLY")
-			.addEdge("SEND_FINAL_AGREEMENT", "COMPLETED")
-			.addEdge("COMPLETED", END)
-			.addEdge("TERMINATED", END);
-
-		workflow.addConditionalEdges("WAIT_FOR_REPLY", edge_async(this::decideNextStep),
-				Map.of("SEND_CONFIRMATION", "SEND_CONFIRMATION",
-                        "SEND_AUTO_REPLY", "SEND_AUTO_REPLY",
-                        "WAIT_FOR_REPLY", "WAIT_FOR_REPLY",
-                        "SEND_FINAL_AGREEMENT", "SEND_FINAL_AGREEMENT",
-                        "TERMINATED", "TERMINATED"));
-
-		CompileConfig compileConfig = CompileConfig.builder()
-			.checkpointSaver(new MemorySaver())
-			.interruptAfter("WAIT_FOR_REPLY")
-			.releaseThread(true)
-			.build();
-
-		this.compiledGraph = workflow.compile(compileConfig);
-
-		GraphRepresentation graph = compiledGraph.getGraph(GraphRepresentation.Type.MERMAID);
-		logger.info("Workflow graph:\n{}", graph.content());
-	}
-
-	private Map<String, Object> completeTask(WorkflowState state) {
-		logger.info("Task completed: {}", state.getTask().getId());
-		state.setCompleted(true);
-		return state.toData();
-	}
-
-	private Map<String, Object> terminateTask(WorkflowState state) {
-		logger.warn("Task terminated: {}", state.getTask().getId());
-		state.setTerminated(true);
-		return state.toData();
-	}
-
-	private String decideNextStep(WorkflowState state) {
-		Task task = state.getTask();
-		String currentStep = state.getCurrentStep();
-		int retryCount = state.getRetryCount();
-
-		if (retryCount >= configService.getMaxRetryAttempts()) {
-			logger.warn("Max retry attempts reached for task: {}", task.getId());
-			return "TERMINATED";
-		}
-
-		if (state.getLatestResponse() == null) {
-			logger.info("No response received, continue waiting for task: {}", task.getId());
-			return "WAIT_FOR_REPLY";
-		}
-
-		boolean isPositive = state.getLatestResponse().isPositive();
-		TaskStatus status = task.getStatus();
-
-		logger.info("Decision for task {}: isPositive={}, status={}, retryCount={}", task.getId(), isPositive, status,
-				retryCount);
-
-		if (isPositive) {
-			if (status == TaskStatus.FIRST_REPLY_RECEIVED) {
-				return "SEND_CONFIRMATION";
-			}
-			else if (status == TaskStatus.SECOND_REPLY_RECEIVED) {
-				return "SEND_FINAL_AGREEMENT";
-			}
-		}
-		else {
-			if (state.getLatestResponse().getProposedTime() != null) {
-				return "SEND_AUTO_REPLY";
-			}
-		}
-
-		return "WAIT_FOR_REPLY";
-	}
+	private WorkflowExecutionService workflowExecutionService;
 
 	public Optional<WorkflowState> execute(Task task) {
-		if (compiledGraph == null) {
-			try {
-				initialize();
-			}
-			catch (org.bsc.langgraph4j.GraphStateException e) {
-				throw new RuntimeException("Failed to initialize workflow", e);
-			}
-		}
+		return execute(task, output -> {
+		});
+	}
 
+	/**
+	 * 执行工作流，每个节点完成后立即把其输出交给 listener，返回中断或结束时的最终状态
+	 */
+	public Optional<WorkflowState> execute(Task task, Consumer<NodeOutput<WorkflowState>> listener) {
 		logger.info("Executing workflow for task: {}", task.getId());
 
 		try {
-			Optional<WorkflowState> result = compiledGraph.invoke(Map.of("task", task));
+			WorkflowGraphRegistry.Variant variant = graphRegistry.pin(task.getId());
+			Optional<WorkflowState> result = run(variant, GraphInput.args(Map.of("task", task)),
+					variant.runnableConfig(task.getId(), nodeExecutor), listener);
 			logger.info("Workflow execution completed for task: {}", task.getId());
 			return result;
 		}
 		catch (Exception e) {
+			NodeExecutionException failure = NodeExecutionException.find(e);
+			if (failure != null) {
+				handleNodeFailure(task.getId(), failure);
+				return Optional.empty();
+			}
 			logger.error("Workflow execution failed for task: {}", task.getId(), e);
 			throw e;
 		}
 	}
 
 	public Optional<WorkflowState> resume(String threadId, Map<String, Object> input) {
-		if (compiledGraph == null) {
-			try {
-				initialize();
-			}
-			catch (org.bsc.langgraph4j.GraphStateException e) {
-				throw new RuntimeException("Failed to initialize workflow", e);
-			}
-		}
+		return resume(threadId, input, output -> {
+		});
+	}
 
+	public Optional<WorkflowState> resume(String threadId, Map<String, Object> input,
+			Consumer<NodeOutput<WorkflowState>> listener) {
 		logger.info("Resuming workflow for thread: {}", threadId);
 
 		try {
-			Optional<WorkflowState> result = compiledGraph.invoke(input,
-					org.bsc.langgraph4j.RunnableConfig.builder().threadId(threadId).build());
+			WorkflowGraphRegistry.Variant variant = graphRegistry.forThread(threadId);
+			RunnableConfig config = variant.runnableConfig(threadId, nodeExecutor);
+			if (input != null && !input.isEmpty()) {
+				config = variant.graph().updateState(config, input);
+			}
+			Optional<WorkflowState> result = run(variant, GraphInput.resume(), config, listener);
 			logger.info("Workflow resumed successfully for thread: {}", threadId);
 			return result;
 		}
 		catch (Exception e) {
+			NodeExecutionException failure = NodeExecutionException.find(e);
+			if (failure != null) {
+				handleNodeFailure(threadId, failure);
+				return Optional.empty();
+			}
 			logger.error("Failed to resume workflow for thread: {}", threadId, e);
-			throw e;
+			throw new RuntimeException("Failed to resume workflow", e);
 		}
 	}
 
-	public GraphRepresentation getGraphRepresentation() {
-		if (compiledGraph == null) {
-			try {
-				initialize();
-			}
-			catch (org.bsc.langgraph4j.GraphStateException e) {
-				throw new RuntimeException("Failed to initialize workflow", e);
-			}
+	/**
+	 * 逐个消费图的节点输出，与 invoke 一样以最后一个输出的状态作为结果。图执行到结束节点后释放线程对变体的引用。
+	 */
+	private Optional<WorkflowState> run(WorkflowGraphRegistry.Variant variant, GraphInput input, RunnableConfig config,
+			Consumer<NodeOutput<WorkflowState>> listener) {
+		NodeOutput<WorkflowState> last = null;
+		for (NodeOutput<WorkflowState> output : variant.graph().stream(input, config)) {
+			listener.accept(output);
+			last = output;
 		}
-		return compiledGraph.getGraph(GraphRepresentation.Type.MERMAID);
+		if (last != null && last.isEND()) {
+			config.threadId().ifPresent(graphRegistry::release);
+		}
+		return Optional.ofNullable(last).map(NodeOutput::state);
 	}
 
-	public CompiledGraph<WorkflowState> getCompiledGraph() {
-		if (compiledGraph == null) {
-			try {
-				initialize();
-			}
-			catch (org.bsc.langgraph4j.GraphStateException e) {
-				throw new RuntimeException("Failed to initialize workflow", e);
-			}
+	/**
+	 * 节点失败后把执行记录转为待重试，由调度器在退避时间后从最近的检查点恢复；连续失败超过重试次数则终止任务。 线程 id 与任务 id 一致。
+	 */
+	private void handleNodeFailure(String taskId, NodeExecutionException failure) {
+		logger.warn("Node {} failed for task {} ({}): {}", failure.getNodeId(), taskId, failure.getReason(),
+				failure.getMessage());
+
+		WorkflowExecution execution = workflowExecutionService.recordNodeFailure(taskId, taskId, failure.getNodeId());
+		if (execution.getRetryCount() < configService.getMaxRetryAttempts()) {
+			return;
 		}
-		return compiledGraph;
+
+		workflowExecutionService.updateExecutionStatus(execution.getId(), WorkflowExecution.WorkflowStatus.TERMINATED);
+		taskService.updateTaskStatus(taskId, TaskStatus.CANCELLED);
+		graphRegistry.release(taskId);
+		logger.warn("Task {} terminated after {} failed attempts of node {}", taskId, execution.getRetryCount(),
+				failure.getNodeId());
+	}
+
+	public GraphRepresentation getGraphRepresentation() {
+		return graphRegistry.active().graph().getGraph(GraphRepresentation.Type.MERMAID);
+	}
+
+	public CompiledGraph<WorkflowState> getCompiledGraph() {
+		return graphRegistry.active().graph();
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package io.eeaters.langgraph.example.workflow;
+
+import io.eeaters.langgraph.example.model.Party;
+import io.eeaters.langgraph.example.model.PartyContact;
+import io.eeaters.langgraph.example.service.ConfigService;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 编译一张工作流图所需的全部配置。图中节点和条件边只捕获这里的值，因此相同指纹的定义可以共用同一张已编译的图。
+ *
+ * @param parallel 是否使用并行发送、汇合回复的流程
+ * @param parties 参与方，顺序即发送顺序
+ * @param maxRetryAttempts 条件边使用的最大重试次数
+ * @param interruptAfter 执行到该节点后中断等待回复
+ */
+public record WorkflowDefinition(boolean parallel, List<PartyContact> parties, int maxRetryAttempts,
+		String interruptAfter) {
+
+	public WorkflowDefinition {
+		// PartyContact 可变，复制一份避免配置对象被修改后与指纹不一致
+		parties = parties.stream().map(p -> new PartyContact(p.getId(), p.getRole(), p.getEmail())).toList();
+	}
+
+	public static WorkflowDefinition sequential(ConfigService configService) {
+		return new WorkflowDefinition(false, configService.getParties(), configService.getMaxRetryAttempts(),
+				"WAIT_FOR_REPLY");
+	}
+
+	public static WorkflowDefinition parallel(ConfigService configService) {
+		return new WorkflowDefinition(true, configService.getParties(), configService.getMaxRetryAttempts(),
+				"AWAIT_REPLIES");
+	}
+
+	public static WorkflowDefinition current(ConfigService configService) {
+		return configService.isParallelCoordination() ? parallel(configService) : sequential(configService);
+	}
+
+	/**
+	 * 顺序流程中担任该角色的参与方。两方角色相同时无法区分，这种配置使用并行流程
+	 */
+	public PartyContact contact(Party role) {
+		return parties.stream()
+			.filter(party -> party.getRole() == role)
+			.findFirst()
+			.orElseThrow(() -> new IllegalStateException("No party configured for role " + role));
+	}
+
+	public String fingerprint() {
+		String partyKey = parties.stream()
+			.map(p -> p.getId() + ":" + p.getRole() + ":" + p.getEmail())
+			.collect(Collectors.joining(","));
+		return (parallel ? "parallel" : "sequential") + "|parties=" + partyKey + "|retries=" + maxRetryAttempts
+				+ "|interrupt=" + interruptAfter;
+	}
+
+}
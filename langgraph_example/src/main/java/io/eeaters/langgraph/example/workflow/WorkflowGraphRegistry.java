@@ -0,0 +1,394 @@
+package io.eeaters.langgraph.example.workflow;
+
+import io.eeaters.langgraph.example.model.PartyContact;
+import io.eeaters.langgraph.example.model.Task;
+import io.eeaters.langgraph.example.model.TaskStatus;
+import io.eeaters.langgraph.example.service.ConfigService;
+import io.eeaters.langgraph.example.service.TaskService;
+import io.eeaters.langgraph.example.service.WorkflowExecutionService;
+import io.eeaters.langgraph.example.workflow.nodes.*;
+import org.bsc.langgraph4j.CompileConfig;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.GraphStateException;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.checkpoint.MemorySaver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.bsc.langgraph4j.StateGraph.END;
+import static org.bsc.langgraph4j.StateGraph.START;
+import static org.bsc.langgraph4j.action.AsyncEdgeAction.edge_async;
+import static org.bsc.langgraph4j.action.AsyncNodeAction.node_async;
+
+/**
+ * 按配置指纹保存预编译的工作流图。启动时编译当前配置可用的全部变体，重新加载时先编译新变体再整体替换快照。
+ * <p>
+ * 执行请求只读取快照，不会触发编译。
+ * <p>
+ * 所有变体共用一个检查点存储；中断中的线程固定在启动它的变体上，直到结束前该变体不会被移除。 任务被删除或执行记录被清理后， 线程不会再恢复，这时同时丢弃固定关系和检查点。
+ */
+@Component
+public class WorkflowGraphRegistry implements SmartInitializingSingleton {
+
+	private static final Logger logger = LoggerFactory.getLogger(WorkflowGraphRegistry.class);
+
+	private static final String SEND_REQUEST_PREFIX = "SEND_REQUEST_";
+
+	@Autowired
+	private CreateTaskNode createTaskNode;
+
+	@Autowired
+	private SendAutoReplyNode sendAutoReplyNode;
+
+	@Autowired
+	private WaitForReplyNode waitForReplyNode;
+
+	@Autowired
+	private SendConfirmationNode sendConfirmationNode;
+
+	@Autowired
+	private SendFinalAgreementNode sendFinalAgreementNode;
+
+	@Autowired
+	private SendPartyRequestNode sendPartyRequestNode;
+
+	@Autowired
+	private JoinRepliesNode joinRepliesNode;
+
+	@Autowired
+	private ConfigService configService;
+
+	@Autowired
+	private NodeExecutor nodeExecutor;
+
+	@Autowired
+	private TaskService taskService;
+
+	@Autowired
+	private WorkflowExecutionService workflowExecutionService;
+
+	private final MemorySaver checkpointSaver = new MemorySaver();
+
+	/**
+	 * 线程 id -> 启动该线程的变体指纹
+	 */
+	private final Map<String, String> threadVariants = new ConcurrentHashMap<>();
+
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+	/**
+	 * 一张已编译的图及其定义
+	 */
+	public record Variant(WorkflowDefinition definition, CompiledGraph<WorkflowState> graph) {
+
+		public String fingerprint() {
+			return definition.fingerprint();
+		}
+
+		/**
+		 * 以任务 id 作为线程 id，使中断后的检查点可以按任务恢复
+		 */
+		public RunnableConfig runnableConfig(String threadId, NodeExecutor nodeExecutor) {
+			RunnableConfig.Builder builder = RunnableConfig.builder().threadId(threadId);
+			if (definition.parallel()) {
+				builder.addParallelNodeExecutor("CREATE_TASK", nodeExecutor.branchExecutor());
+			}
+			return builder.build();
+		}
+
+	}
+
+	private record Snapshot(String active, Map<String, Variant> variants) {
+
+		static final Snapshot EMPTY = new Snapshot(null, Map.of());
+
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		// 线程 id 与任务 id 一致
+		taskService.addDeletionListener(this::discard);
+		workflowExecutionService.addRemovalListener(execution -> discard(
+				execution.getThreadId() != null ? execution.getThreadId() : execution.getTaskId()));
+		try {
+			reload();
+		}
+		catch (IllegalStateException e) {
+			logger.error("Workflow graphs not compiled at startup: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * 按当前配置编译全部变体并原子替换。仍有中断线程使用的旧变体会保留到这些线程结束。
+	 */
+	public synchronized Set<String> reload() {
+		if (!configService.validateConfiguration()) {
+			throw new IllegalStateException("Configuration validation failed");
+		}
+
+		WorkflowDefinition current = WorkflowDefinition.current(configService);
+		List<WorkflowDefinition> definitions = new ArrayList<>();
+		definitions.add(current);
+		if (current.parties().size() == 2) {
+			definitions.add(current.parallel() ? WorkflowDefinition.sequential(configService)
+					: WorkflowDefinition.parallel(configService));
+		}
+
+		Snapshot previous = snapshot;
+		Set<String> pinned = new HashSet<>(threadVariants.values());
+		Map<String, Variant> variants = new LinkedHashMap<>();
+		for (WorkflowDefinition definition : definitions) {
+			String fingerprint = definition.fingerprint();
+			Variant existing = previous.variants().get(fingerprint);
+			variants.put(fingerprint, existing != null ? existing : compile(definition));
+		}
+		previous.variants().forEach((fingerprint, variant) -> {
+			if (pinned.contains(fingerprint)) {
+				variants.putIfAbsent(fingerprint, variant);
+			}
+		});
+
+		snapshot = new Snapshot(current.fingerprint(), Map.copyOf(variants));
+		logger.info("Workflow graphs loaded, active: {}, variants: {}", current.fingerprint(), variants.keySet());
+		return variants.keySet();
+	}
+
+	/**
+	 * 当前配置对应的变体，用于启动新的工作流线程
+	 */
+	public Variant active() {
+		Snapshot current = snapshot;
+		if (current.active() == null) {
+			throw new IllegalStateException("Workflow graphs are not loaded");
+		}
+		return current.variants().get(current.active());
+	}
+
+	/**
+	 * 启动线程时记录所用变体，之后恢复该线程都使用同一张图
+	 */
+	public Variant pin(String threadId) {
+		Variant variant = active();
+		threadVariants.put(threadId, variant.fingerprint());
+		return variant;
+	}
+
+	/**
+	 * 线程使用的变体；未记录或旧变体已被移除时退回当前变体
+	 */
+	public Variant forThread(String threadId) {
+		String fingerprint = threadVariants.get(threadId);
+		if (fingerprint != null) {
+			Variant variant = snapshot.variants().get(fingerprint);
+			if (variant != null) {
+				return variant;
+			}
+			logger.warn("Workflow variant {} of thread {} is no longer loaded, using active variant", fingerprint,
+					threadId);
+		}
+		return active();
+	}
+
+	/**
+	 * 线程结束后释放对变体的引用
+	 */
+	public void release(String threadId) {
+		threadVariants.remove(threadId);
+	}
+
+	/**
+	 * 放弃线程：释放对变体的引用并删除它的检查点
+	 */
+	public void discard(String threadId) {
+		if (threadId == null) {
+			return;
+		}
+		threadVariants.remove(threadId);
+		try {
+			checkpointSaver.release(RunnableConfig.builder().threadId(threadId).build());
+		}
+		catch (Exception e) {
+			logger.warn("Failed to release checkpoints of thread {}: {}", threadId, e.getMessage());
+		}
+	}
+
+	public Collection<Variant> getVariants() {
+		return snapshot.variants().values();
+	}
+
+	private Variant compile(WorkflowDefinition definition) {
+		try {
+			CompiledGraph<WorkflowState> graph = definition.parallel() ? buildParallelGraph(definition)
+					: buildSequentialGraph(definition);
+			logger.info("Compiled workflow variant {}", definition.fingerprint());
+			return new Variant(definition, graph);
+		}
+		catch (GraphStateException e) {
+			throw new IllegalStateException("Failed to compile workflow variant " + definition.fingerprint(), e);
+		}
+	}
+
+	private CompiledGraph<WorkflowState> buildSequentialGraph(WorkflowDefinition definition)
+			throws GraphStateException {
+		int maxRetryAttempts = definition.maxRetryAttempts();
+		StateGraph<WorkflowState> workflow = new StateGraph<>(TaskWorkflow.SCHEMA, WorkflowState::new)
+			.addNode("CREATE_TASK",
+					nodeExecutor.async("CREATE_TASK", NodeDependency.NONE, createTaskNode.createTask(definition)))
+			.addNode("SEND_AUTO_REPLY",
+					nodeExecutor.async("SEND_AUTO_REPLY", NodeDependency.SMTP,
+							sendAutoReplyNode.sendAutoReply(definition)))
+			.addNode("WAIT_FOR_REPLY",
+					nodeExecutor.async("WAIT_FOR_REPLY", NodeDependency.IMAP, waitForReplyNode.waitForReply()))
+			.addNode("SEND_CONFIRMATION",
+					nodeExecutor.async("SEND_CONFIRMATION", NodeDependency.SMTP,
+							sendConfirmationNode.sendConfirmation(definition)))
+			.addNode("SEND_FINAL_AGREEMENT",
+					nodeExecutor.async("SEND_FINAL_AGREEMENT", NodeDependency.SMTP,
+							sendFinalAgreementNode.sendFinalAgreement()))
+			.addNode("COMPLETED", node_async(WorkflowGraphRegistry::completeTask))
+			.addNode("TERMINATED", node_async(WorkflowGraphRegistry::terminateTask))
+
+			.addEdge(START, "CREATE_TASK")
+			.addEdge("CREATE_TASK", "SEND_AUTO_REPLY")
+			.addEdge("SEND_AUTO_REPLY", "WAIT_FOR_REPLY")
+			.addEdge("SEND_CONFIRMATION", "WAIT_FOR_REPLY")
+			.addEdge("SEND_FINAL_AGREEMENT", "COMPLETED")
+			.addEdge("COMPLETED", END)
+			.addEdge("TERMINATED", END);
+
+		workflow.addConditionalEdges("WAIT_FOR_REPLY", edge_async(state -> decideNextStep(state, maxRetryAttempts)),
+				Map.of("SEND_CONFIRMATION", "SEND_CONFIRMATION", "SEND_AUTO_REPLY", "SEND_AUTO_REPLY", "WAIT_FOR_REPLY",
+						"WAIT_FOR_REPLY", "SEND_FINAL_AGREEMENT", "SEND_FINAL_AGREEMENT", "TERMINATED", "TERMINATED"));
+
+		return workflow.compile(compileConfig(definition));
+	}
+
+	/**
+	 * CREATE_TASK 之后并行向每个参与方发送协调邮件，所有分支汇合到 JOIN_REPLIES。 未达到法定同意数时经 AWAIT_REPLIES
+	 * 中断，由调度器恢复后重新汇合。
+	 */
+	private CompiledGraph<WorkflowState> buildParallelGraph(WorkflowDefinition definition) throws GraphStateException {
+		int maxRetryAttempts = definition.maxRetryAttempts();
+		StateGraph<WorkflowState> workflow = new StateGraph<>(TaskWorkflow.SCHEMA, WorkflowState::new)
+			.addNode("CREATE_TASK",
+					nodeExecutor.async("CREATE_TASK", NodeDependency.NONE, createTaskNode.createTask(definition)))
+			.addNode("JOIN_REPLIES",
+					nodeExecutor.async("JOIN_REPLIES", NodeDependency.IMAP, joinRepliesNode.joinReplies()))
+			.addNode("AWAIT_REPLIES", node_async(state -> Map.of()))
+			.addNode("SEND_FINAL_AGREEMENT",
+					nodeExecutor.async("SEND_FINAL_AGREEMENT", NodeDependency.SMTP,
+							sendFinalAgreementNode.sendFinalAgreement()))
+			.addNode("COMPLETED", node_async(WorkflowGraphRegistry::completeTask))
+			.addNode("TERMINATED", node_async(WorkflowGraphRegistry::terminateTask))
+			.addEdge(START, "CREATE_TASK");
+
+		for (PartyContact party : definition.parties()) {
+			String nodeId = sendRequestNodeId(party);
+			workflow
+				.addNode(nodeId,
+						nodeExecutor.async(nodeId, NodeDependency.SMTP, sendPartyRequestNode.sendRequest(party)))
+				.addEdge("CREATE_TASK", nodeId)
+				.addEdge(nodeId, "JOIN_REPLIES");
+		}
+
+		workflow.addEdge("AWAIT_REPLIES", "JOIN_REPLIES")
+			.addEdge("SEND_FINAL_AGREEMENT", "COMPLETED")
+			.addEdge("COMPLETED", END)
+			.addEdge("TERMINATED", END)
+			.addConditionalEdges("JOIN_REPLIES", edge_async(state -> decideAfterJoin(state, maxRetryAttempts)),
+					Map.of("SEND_FINAL_AGREEMENT", "SEND_FINAL_AGREEMENT", "AWAIT_REPLIES", "AWAIT_REPLIES",
+							"TERMINATED", "TERMINATED"));
+
+		return workflow.compile(compileConfig(definition));
+	}
+
+	private CompileConfig compileConfig(WorkflowDefinition definition) {
+		return CompileConfig.builder()
+			.checkpointSaver(checkpointSaver)
+			.interruptAfter(definition.interruptAfter())
+			.releaseThread(true)
+			.build();
+	}
+
+	static String sendRequestNodeId(PartyContact party) {
+		return SEND_REQUEST_PREFIX + party.getId().toUpperCase().replaceAll("[^A-Z0-9]+", "_");
+	}
+
+	private static Map<String, Object> completeTask(WorkflowState state) {
+		logger.info("Task completed: {}", state.getTask().getId());
+		state.setCompleted(true);
+		return state.toData();
+	}
+
+	private static Map<String, Object> terminateTask(WorkflowState state) {
+		logger.warn("Task terminated: {}", state.getTask().getId());
+		state.setTerminated(true);
+		return state.toData();
+	}
+
+	private static String decideNextStep(WorkflowState state, int maxRetryAttempts) {
+		Task task = state.getTask();
+		int retryCount = state.getRetryCount();
+
+		if (retryCount >= maxRetryAttempts) {
+			logger.warn("Max retry attempts reached for task: {}", task.getId());
+			return "TERMINATED";
+		}
+
+		if (state.getLatestResponse() == null) {
+			logger.info("No response received, continue waiting for task: {}", task.getId());
+			return "WAIT_FOR_REPLY";
+		}
+
+		boolean isPositive = state.getLatestResponse().isPositive();
+		TaskStatus status = task.getStatus();
+
+		logger.info("Decision for task {}: isPositive={}, status={}, retryCount={}", task.getId(), isPositive, status,
+				retryCount);
+
+		if (isPositive) {
+			if (status == TaskStatus.FIRST_REPLY_RECEIVED) {
+				return "SEND_CONFIRMATION";
+			}
+			else if (status == TaskStatus.SECOND_REPLY_RECEIVED) {
+				return "SEND_FINAL_AGREEMENT";
+			}
+		}
+		else {
+			if (state.getLatestResponse().getProposedTime() != null) {
+				return "SEND_AUTO_REPLY";
+			}
+		}
+
+		return "WAIT_FOR_REPLY";
+	}
+
+	private static String decideAfterJoin(WorkflowState state, int maxRetryAttempts) {
+		if (state.isQuorumReached()) {
+			return "SEND_FINAL_AGREEMENT";
+		}
+		if (state.isTerminated()) {
+			logger.warn("Reply quorum can no longer be reached for task: {}", state.getTask().getId());
+			return "TERMINATED";
+		}
+		if (state.getRetryCount() >= maxRetryAttempts) {
+			logger.warn("Max retry attempts reached for task: {}", state.getTask().getId());
+			return "TERMINATED";
+		}
+		return "AWAIT_REPLIES";
+	}
+
+}
@@ -1,14 +1,20 @@
 package io.eeaters.langgraph.example.workflow;
 
 import io.eeaters.langgraph.example.model.EmailResponse;
+import io.eeaters.langgraph.example.model.PartyRequest;
 import io.eeaters.langgraph.example.model.Task;
 import org.bsc.langgraph4j.state.AgentState;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 public class WorkflowState extends AgentState {
 
+	// AgentState.data() 是只读视图，节点内的修改先记在这里，再由 toData() 作为状态更新返回
+	private final Map<String, Object> updates = new HashMap<>();
+
 	public WorkflowState() {
 		super(Map.of());
 	}
@@ -18,65 +24,111 @@ public class WorkflowState extends AgentState {
 	}
 
 	public Task getTask() {
-		return this.<Task>value("task").orElse(null);
+		return this.<Task>get("task").orElse(null);
 	}
 
 	public void setTask(Task task) {
-		this.data().put("task", task);
+		updates.put("task", task);
 	}
 
 	public String getCurrentStep() {
-		return this.<String>value("currentStep").orElse("");
+		return this.<String>get("currentStep").orElse("");
 	}
 
 	public void setCurrentStep(String currentStep) {
-		this.data().put("currentStep", currentStep);
+		updates.put("currentStep", currentStep);
 	}
 
 	public String getLastEmailId() {
-		return this.<String>value("lastEmailId").orElse(null);
+		return this.<String>get("lastEmailId").orElse(null);
 	}
 
 	public void setLastEmailId(String lastEmailId) {
-		this.data().put("lastEmailId", lastEmailId);
+		updates.put("lastEmailId", lastEmailId);
 	}
 
 	public EmailResponse getLatestResponse() {
-		return this.<EmailResponse>value("latestResponse").orElse(null);
+		return this.<EmailResponse>get("latestResponse").orElse(null);
 	}
 
 	public void setLatestResponse(EmailResponse latestResponse) {
-		this.data().put("latestResponse", latestResponse);
+		updates.put("latestResponse", latestResponse);
 	}
 
 	public int getRetryCount() {
-		return this.<Integer>value("retryCount").orElse(0);
+		return this.<Integer>get("retryCount").orElse(0);
 	}
 
 	public void setRetryCount(int retryCount) {
-		this.data().put("retryCount", retryCount);
+		updates.put("retryCount", retryCount);
 	}
 
 	public boolean isCompleted() {
-		return this.<Boolean>value("completed").orElse(false);
+		return this.<Boolean>get("completed").orElse(false);
 	}
 
 	public void setCompleted(boolean completed) {
-		this.data().put("completed", completed);
+		updates.put("completed", completed);
 	}
 
 	public boolean isTerminated() {
-		return this.<Boolean>value("terminated").orElse(false);
+		return this.<Boolean>get("terminated").orElse(false);
 	}
 
 	public void setTerminated(boolean terminated) {
-		this.data().put("terminated", terminated);
+		updates.put("terminated", terminated);
+	}
+
+	public List<PartyRequest> getPartyRequests() {
+		return this.<List<PartyRequest>>get("partyRequests").orElse(List.of());
+	}
+
+	/**
+	 * 各方的回复，key 为 {@link PartyRequest#getPartyId()}
+	 */
+	public Map<String, EmailResponse> getPartyReplies() {
+		return this.<Map<String, EmailResponse>>get("partyReplies").orElse(Map.of());
+	}
+
+	public void setPartyReplies(Map<String, EmailResponse> partyReplies) {
+		updates.put("partyReplies", partyReplies);
+	}
+
+	public boolean isQuorumReached() {
+		return this.<Boolean>get("quorumReached").orElse(false);
+	}
+
+	public void setQuorumReached(boolean quorumReached) {
+		updates.put("quorumReached", quorumReached);
 	}
 
+	/**
+	 * 节点返回的状态更新。空值不写入（通道保留原值），partyRequests 由各分支直接追加，不在此回写
+	 */
 	public Map<String, Object> toData() {
-		return Map.of("task", getTask(), "currentStep", getCurrentStep(), "lastEmailId", getLastEmailId(),
-				"latestResponse", getLatestResponse(), "retryCount", getRetryCount(), "completed", isCompleted(),
-				"terminated", isTerminated());
+		Map<String, Object> data = new HashMap<>();
+		putIfNotNull(data, "task", getTask());
+		putIfNotNull(data, "currentStep", getCurrentStep());
+		putIfNotNull(data, "lastEmailId", getLastEmailId());
+		putIfNotNull(data, "latestResponse", getLatestResponse());
+		data.put("retryCount", getRetryCount());
+		data.put("completed", isCompleted());
+		data.put("terminated", isTerminated());
+		return data;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> Optional<T> get(String key) {
+		if (updates.containsKey(key)) {
+			return Optional.ofNullable((T) updates.get(key));
+		}
+		return value(key);
+	}
+
+	private static void putIfNotNull(Map<String, Object> data, String key, Object value) {
+		if (value != null) {
+			data.put(key, value);
+		}
 	}
 
 }
\ No newline at end of file
@@ -1,10 +1,11 @@
 package io.eeaters.langgraph.example.workflow.nodes;
 
-import io.eeaters.langgraph.example.config.WorkflowConfig;
 import io.eeaters.langgraph.example.model.Party;
+import io.eeaters.langgraph.example.model.PartyContact;
 import io.eeaters.langgraph.example.model.Task;
 import io.eeaters.langgraph.example.model.TaskStatus;
 import io.eeaters.langgraph.example.service.TaskService;
+import io.eeaters.langgraph.example.workflow.WorkflowDefinition;
 import io.eeaters.langgraph.example.workflow.WorkflowState;
 import org.bsc.langgraph4j.action.AsyncNodeAction;
 import org.bsc.langgraph4j.action.NodeAction;
@@ -13,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Map;
 
 import static org.bsc.langgraph4j.action.AsyncNodeAction.node_async;
@@ -25,10 +27,13 @@ public class CreateTaskNode {
 	@Autowired
 	private TaskService taskService;
 
-	@Autowired
-	private WorkflowConfig workflowConfig;
-
-	public NodeAction<WorkflowState> createTask() {
+	/**
+	 * 首末两方取自本图的参与方列表，顺序流程据此查找收件人
+	 */
+	public NodeAction<WorkflowState> createTask(WorkflowDefinition definition) {
+		List<PartyContact> parties = definition.parties();
+		Party firstParty = parties.get(0).getRole();
+		Party secondParty = parties.get(parties.size() - 1).getRole();
 		return state -> {
 			logger.info("Creating new task in workflow");
 
@@ -38,8 +43,8 @@ public class CreateTaskNode {
 			}
 
 			task.setStatus(TaskStatus.CREATED);
-			task.setCurrentParty(workflowConfig.getFirstParty());
-			task.setNextParty(workflowConfig.getSecondParty());
+			task.setCurrentParty(firstParty);
+			task.setNextParty(secondParty);
 
 			Task savedTask = taskService.saveTask(task);
 
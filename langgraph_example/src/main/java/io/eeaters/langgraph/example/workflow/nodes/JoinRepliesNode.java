@@ -0,0 +1,148 @@
+package io.eeaters.langgraph.example.workflow.nodes;
+
+import io.eeaters.langgraph.example.model.EmailResponse;
+import io.eeaters.langgraph.example.model.PartyRequest;
+import io.eeaters.langgraph.example.model.Task;
+import io.eeaters.langgraph.example.model.TaskStatus;
+import io.eeaters.langgraph.example.service.ConfigService;
+import io.eeaters.langgraph.example.service.EmailService;
+import io.eeaters.langgraph.example.service.TaskService;
+import io.eeaters.langgraph.example.service.WorkflowExecutionService;
+import io.eeaters.langgraph.example.workflow.WorkflowState;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import org.bsc.langgraph4j.action.NodeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 汇合各并行分支：一次拉取所有未回复方的新邮件，按发件人匹配到参与方，统计同意数是否达到法定数。
+ */
+@Component
+public class JoinRepliesNode {
+
+	private static final Logger logger = LoggerFactory.getLogger(JoinRepliesNode.class);
+
+	@Autowired
+	private EmailService emailService;
+
+	@Autowired
+	private TaskService taskService;
+
+	@Autowired
+	private ConfigService configService;
+
+	@Autowired
+	private WorkflowExecutionService workflowExecutionService;
+
+	public NodeAction<WorkflowState> joinReplies() {
+		return state -> {
+			Task task = state.getTask();
+			if (task == null) {
+				throw new IllegalArgumentException("Task cannot be null");
+			}
+
+			List<PartyRequest> requests = state.getPartyRequests();
+			Map<String, EmailResponse> replies = new HashMap<>(state.getPartyReplies());
+			List<PartyRequest> pending = requests.stream()
+				.filter(request -> !replies.containsKey(request.getPartyId()))
+				.toList();
+
+			if (!pending.isEmpty()) {
+				List<EmailResponse> responses = emailService
+					.checkNewEmails(pending.stream().map(PartyRequest::getEmailId).toList());
+				for (EmailResponse response : responses) {
+					for (PartyRequest request : pending) {
+						if (isFrom(response, request.getEmail()) && isInThread(response, request.getEmailId())) {
+							replies.put(request.getPartyId(), response);
+						}
+					}
+				}
+			}
+
+			int quorum = configService.getReplyQuorum();
+			long accepted = replies.values().stream().filter(EmailResponse::isPositive).count();
+			long rejected = replies.size() - accepted;
+			boolean quorumReached = accepted >= quorum;
+			boolean quorumUnreachable = !quorumReached && requests.size() - rejected < quorum;
+
+			logger.info("Replies for task {}: {}/{} received, {} accepted, quorum {}", task.getId(), replies.size(),
+					requests.size(), accepted, quorum);
+
+			LocalDateTime proposedTime = !quorumReached ? null
+					: replies.values()
+						.stream()
+						.filter(response -> response.isPositive() && response.getProposedTime() != null)
+						.map(EmailResponse::getProposedTime)
+						.findFirst()
+						.orElse(null);
+			TaskStatus status = quorumReached ? TaskStatus.SECOND_REPLY_RECEIVED
+					: !replies.isEmpty() ? TaskStatus.FIRST_REPLY_RECEIVED : TaskStatus.AUTO_REPLY_SENT;
+
+			// 图状态中的任务版本可能已过期，基于存储中的最新版本写入
+			Task saved = taskService.updateTask(task.getId(), latest -> {
+				if (proposedTime != null) {
+					latest.setScheduledTime(proposedTime);
+					latest.setFinalConfirmedTime(proposedTime.format(DateTimeFormatter.ofPattern("yyyy年MM月dd日 HH:mm")));
+				}
+				latest.setStatus(status);
+				return latest;
+			});
+			if (saved == null) {
+				throw new IllegalStateException("Task not found: " + task.getId());
+			}
+
+			int retryCount = state.getRetryCount();
+			if (!quorumReached && !quorumUnreachable) {
+				// 线程 id 与任务 id 一致，调度器据此恢复同一个检查点
+				workflowExecutionService.createWaitingExecution(task.getId(), task.getId(), null, "JOIN_REPLIES");
+				retryCount++;
+			}
+
+			Map<String, Object> update = new HashMap<>();
+			update.put("task", saved);
+			update.put("currentStep", quorumReached ? "SEND_FINAL_AGREEMENT" : "JOIN_REPLIES");
+			update.put("partyReplies", replies);
+			update.put("quorumReached", quorumReached);
+			update.put("terminated", quorumUnreachable);
+			update.put("retryCount", retryCount);
+			return update;
+		};
+	}
+
+	/**
+	 * 收件箱里同一参与方可能同时回复多个任务，只接受引用了本次请求邮件的回复
+	 */
+	private boolean isInThread(EmailResponse response, String emailId) {
+		return emailId != null && response.getEmailThreadId() != null && response.getEmailThreadId().contains(emailId);
+	}
+
+	/**
+	 * 按解析出的地址比较，忽略大小写；不能用子串匹配，否则 bob@example.com 会匹配 notbob@example.com.cn
+	 */
+	private boolean isFrom(EmailResponse response, String email) {
+		if (email == null || response.getFrom() == null) {
+			return false;
+		}
+		try {
+			for (InternetAddress address : InternetAddress.parseHeader(response.getFrom(), false)) {
+				if (email.trim().equalsIgnoreCase(address.getAddress())) {
+					return true;
+				}
+			}
+		}
+		catch (AddressException e) {
+			logger.warn("Unparseable sender address: {}", response.getFrom());
+		}
+		return false;
+	}
+
+}
@@ -1,10 +1,11 @@
 package io.eeaters.langgraph.example.workflow.nodes;
 
-import io.eeaters.langgraph.example.config.WorkflowConfig;
 import io.eeaters.langgraph.example.model.Task;
 import io.eeaters.langgraph.example.model.TaskStatus;
 import io.eeaters.langgraph.example.service.EmailService;
+import io.eeaters.langgraph.example.service.TaskService;
 import io.eeaters.langgraph.example.util.EmailTemplate;
+import io.eeaters.langgraph.example.workflow.WorkflowDefinition;
 import io.eeaters.langgraph.example.workflow.WorkflowState;
 import org.bsc.langgraph4j.action.AsyncNodeAction;
 import org.bsc.langgraph4j.action.NodeAction;
@@ -24,30 +25,49 @@ public class SendAutoReplyNode {
 	private EmailService emailService;
 
 	@Autowired
-	private WorkflowConfig workflowConfig;
+	private TaskService taskService;
 
 	@Autowired
 	private EmailTemplate emailTemplate;
 
-	public NodeAction<WorkflowState> sendAutoReply() {
+	public NodeAction<WorkflowState> sendAutoReply(WorkflowDefinition definition) {
 		return state -> {
 			logger.info("Sending auto reply email");
 
-			Task task = state.getTask();
-			if (task == null) {
+			Task stateTask = state.getTask();
+			if (stateTask == null) {
 				throw new IllegalArgumentException("Task cannot be null");
 			}
 
-			String recipientEmail = getRecipientEmail(task.getCurrentParty());
-			String subject = "任务安排协调 - " + task.getTitle();
-			String content = emailTemplate.generateAutoReply(task, recipientEmail);
+			// 图状态中的任务可能已过期，以存储中的最新版本为准
+			Task task = taskService.getTask(stateTask.getId());
+			if (task == null) {
+				throw new IllegalStateException("Task not found: " + stateTask.getId());
+			}
 
-			String emailId = emailService.sendEmail(recipientEmail, subject, content);
+			// 上一次执行已发出邮件并写回（例如超过截止时间后才完成），重试时不再重复发送
+			if (task.getStatus() != TaskStatus.AUTO_REPLY_SENT) {
+				String recipientEmail = definition.contact(task.getCurrentParty()).getEmail();
+				String subject = "任务安排协调 - " + task.getTitle();
+				String content = emailTemplate.generateAutoReply(task, recipientEmail);
 
-			task.setEmailThreadId(emailId);
-			task.setStatus(TaskStatus.AUTO_REPLY_SENT);
+				String emailId = emailService.sendEmail(recipientEmail, subject, content);
 
-			logger.info("Auto reply sent successfully to: {}, emailId: {}", recipientEmail, emailId);
+				task = taskService.updateTask(task.getId(), latest -> {
+					latest.setEmailThreadId(emailId);
+					latest.setStatus(TaskStatus.AUTO_REPLY_SENT);
+					return latest;
+				});
+				if (task == null) {
+					throw new IllegalStateException("Task deleted while sending auto reply: " + stateTask.getId());
+				}
+
+				logger.info("Auto reply sent successfully to: {}, emailId: {}", recipientEmail, emailId);
+			}
+			else {
+				logger.info("Auto reply already sent for task: {}, skipping", task.getId());
+			}
+			String emailId = task.getEmailThreadId();
 
 			WorkflowState newState = new WorkflowState();
 			newState.setTask(task);
@@ -59,11 +79,4 @@ public class SendAutoReplyNode {
 		};
 	}
 
-	private String getRecipientEmail(io.eeaters.langgraph.example.model.Party party) {
-		return switch (party) {
-			case TRAILER_COMPANY -> workflowConfig.getTrailerCompanyEmail();
-			case WAREHOUSE -> workflowConfig.getWarehouseEmail();
-		};
-	}
-
 }
\ No newline at end of file
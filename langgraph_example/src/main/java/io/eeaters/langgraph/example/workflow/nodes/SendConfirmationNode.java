@@ -1,11 +1,12 @@
 package io.eeaters.langgraph.example.workflow.nodes;
 
-import io.eeaters.langgraph.example.config.WorkflowConfig;
 import io.eeaters.langgraph.example.model.Party;
 import io.eeaters.langgraph.example.model.Task;
 import io.eeaters.langgraph.example.model.TaskStatus;
 import io.eeaters.langgraph.example.service.EmailService;
+import io.eeaters.langgraph.example.service.TaskService;
 import io.eeaters.langgraph.example.util.EmailTemplate;
+import io.eeaters.langgraph.example.workflow.WorkflowDefinition;
 import io.eeaters.langgraph.example.workflow.WorkflowState;
 import org.bsc.langgraph4j.action.AsyncNodeAction;
 import org.bsc.langgraph4j.action.NodeAction;
@@ -25,32 +26,51 @@ public class SendConfirmationNode {
 	private EmailService emailService;
 
 	@Autowired
-	private WorkflowConfig workflowConfig;
+	private TaskService taskService;
 
 	@Autowired
 	private EmailTemplate emailTemplate;
 
-	public NodeAction<WorkflowState> sendConfirmation() {
+	public NodeAction<WorkflowState> sendConfirmation(WorkflowDefinition definition) {
 		return state -> {
 			logger.info("Sending confirmation email");
 
-			Task task = state.getTask();
-			if (task == null) {
+			Task stateTask = state.getTask();
+			if (stateTask == null) {
 				throw new IllegalArgumentException("Task cannot be null");
 			}
 
-			Party nextParty = task.getNextParty();
-			String recipientEmail = getRecipientEmail(nextParty);
-			String subject = "任务安排确认 - " + task.getTitle();
-			String content = emailTemplate.generateConfirmation(task, recipientEmail);
-
-			String emailId = emailService.sendEmail(recipientEmail, subject, content);
-
-			task.setCurrentParty(nextParty);
-			task.setEmailThreadId(emailId);
-			task.setStatus(TaskStatus.CONFIRMATION_SENT);
+			// 图状态中的任务可能已过期，以存储中的最新版本为准
+			Task task = taskService.getTask(stateTask.getId());
+			if (task == null) {
+				throw new IllegalStateException("Task not found: " + stateTask.getId());
+			}
 
-			logger.info("Confirmation sent successfully to: {}, emailId: {}", recipientEmail, emailId);
+			// 上一次执行已发出邮件并写回（例如超过截止时间后才完成），重试时不再重复发送
+			if (task.getStatus() != TaskStatus.CONFIRMATION_SENT) {
+				Party nextParty = task.getNextParty();
+				String recipientEmail = definition.contact(nextParty).getEmail();
+				String subject = "任务安排确认 - " + task.getTitle();
+				String content = emailTemplate.generateConfirmation(task, recipientEmail);
+
+				String emailId = emailService.sendEmail(recipientEmail, subject, content);
+
+				task = taskService.updateTask(task.getId(), latest -> {
+					latest.setCurrentParty(nextParty);
+					latest.setEmailThreadId(emailId);
+					latest.setStatus(TaskStatus.CONFIRMATION_SENT);
+					return latest;
+				});
+				if (task == null) {
+					throw new IllegalStateException("Task deleted while sending confirmation: " + stateTask.getId());
+				}
+
+				logger.info("Confirmation sent successfully to: {}, emailId: {}", recipientEmail, emailId);
+			}
+			else {
+				logger.info("Confirmation already sent for task: {}, skipping", task.getId());
+			}
+			String emailId = task.getEmailThreadId();
 
 			WorkflowState newState = new WorkflowState();
 			newState.setTask(task);
@@ -62,11 +82,4 @@ public class SendConfirmationNode {
 		};
 	}
 
-	private String getRecipientEmail(Party party) {
-		return switch (party) {
-			case TRAILER_COMPANY -> workflowConfig.getTrailerCompanyEmail();
-			case WAREHOUSE -> workflowConfig.getWarehouseEmail();
-		};
-	}
-
 }
\ No newline at end of file
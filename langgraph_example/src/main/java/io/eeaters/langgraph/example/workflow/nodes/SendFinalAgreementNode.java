@@ -1,10 +1,11 @@
 package io.eeaters.langgraph.example.workflow.nodes;
 
-import io.eeaters.langgraph.example.config.WorkflowConfig;
-import io.eeaters.langgraph.example.model.Party;
+import io.eeaters.langgraph.example.model.PartyContact;
 import io.eeaters.langgraph.example.model.Task;
 import io.eeaters.langgraph.example.model.TaskStatus;
+import io.eeaters.langgraph.example.service.ConfigService;
 import io.eeaters.langgraph.example.service.EmailService;
+import io.eeaters.langgraph.example.service.TaskService;
 import io.eeaters.langgraph.example.util.EmailTemplate;
 import io.eeaters.langgraph.example.workflow.WorkflowState;
 import org.bsc.langgraph4j.action.AsyncNodeAction;
@@ -25,7 +26,10 @@ public class SendFinalAgreementNode {
 	private EmailService emailService;
 
 	@Autowired
-	private WorkflowConfig workflowConfig;
+	private TaskService taskService;
+
+	@Autowired
+	private ConfigService configService;
 
 	@Autowired
 	private EmailTemplate emailTemplate;
@@ -34,24 +38,42 @@ public class SendFinalAgreementNode {
 		return state -> {
 			logger.info("Sending final agreement emails");
 
-			Task task = state.getTask();
-			if (task == null) {
+			Task stateTask = state.getTask();
+			if (stateTask == null) {
 				throw new IllegalArgumentException("Task cannot be null");
 			}
 
-			String subject = "最终任务安排确认 - " + task.getTitle();
-			String content = emailTemplate.generateFinalAgreement(task, "");
-
-			String trailerEmail = workflowConfig.getTrailerCompanyEmail();
-			String warehouseEmail = workflowConfig.getWarehouseEmail();
-
-			emailService.sendEmail(trailerEmail, subject, content);
-			emailService.sendEmail(warehouseEmail, subject, content);
-
-			task.setStatus(TaskStatus.FINAL_AGREEMENT_SENT);
-			task.setStatus(TaskStatus.COMPLETED);
+			// 图状态中的任务可能已过期，以存储中的最新版本为准
+			Task task = taskService.getTask(stateTask.getId());
+			if (task == null) {
+				throw new IllegalStateException("Task not found: " + stateTask.getId());
+			}
 
-			logger.info("Final agreement sent to both parties, task completed: {}", task.getId());
+			// 上一次执行已发出邮件并写回（例如超过截止时间后才完成），重试时不再重复发送
+			if (task.getStatus() != TaskStatus.COMPLETED) {
+				String subject = "最终任务安排确认 - " + task.getTitle();
+				String content = emailTemplate.generateFinalAgreement(task, "");
+
+				configService.getParties()
+					.stream()
+					.map(PartyContact::getEmail)
+					.distinct()
+					.forEach(email -> emailService.sendEmail(email, subject, content));
+
+				task = taskService.updateTask(task.getId(), latest -> {
+					latest.setStatus(TaskStatus.FINAL_AGREEMENT_SENT);
+					latest.setStatus(TaskStatus.COMPLETED);
+					return latest;
+				});
+				if (task == null) {
+					throw new IllegalStateException("Task deleted while sending final agreement: " + stateTask.getId());
+				}
+
+				logger.info("Final agreement sent to all parties, task completed: {}", task.getId());
+			}
+			else {
+				logger.info("Final agreement already sent for task: {}, skipping", task.getId());
+			}
 
 			WorkflowState newState = new WorkflowState();
 			newState.setTask(task);
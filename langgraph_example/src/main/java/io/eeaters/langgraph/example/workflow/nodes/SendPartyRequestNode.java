@@ -0,0 +1,87 @@
+package io.eeaters.langgraph.example.workflow.nodes;
+
+import io.eeaters.langgraph.example.model.PartyContact;
+import io.eeaters.langgraph.example.model.PartyRequest;
+import io.eeaters.langgraph.example.model.Task;
+import io.eeaters.langgraph.example.service.EmailService;
+import io.eeaters.langgraph.example.service.TaskService;
+import io.eeaters.langgraph.example.util.EmailTemplate;
+import io.eeaters.langgraph.example.workflow.WorkflowState;
+import org.bsc.langgraph4j.action.NodeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 并行分支中向单个参与方发送协调邮件。发出的邮件追加到 partyRequests，由汇合节点统一更新任务状态；同时记录到存储中的任务上，
+ * 某个分支失败后从检查点恢复时，已经发出邮件的参与方不再重复发送。
+ */
+@Component
+public class SendPartyRequestNode {
+
+	private static final Logger logger = LoggerFactory.getLogger(SendPartyRequestNode.class);
+
+	@Autowired
+	private EmailService emailService;
+
+	@Autowired
+	private TaskService taskService;
+
+	@Autowired
+	private EmailTemplate emailTemplate;
+
+	public NodeAction<WorkflowState> sendRequest(PartyContact contact) {
+		return state -> {
+			Task stateTask = state.getTask();
+			if (stateTask == null) {
+				throw new IllegalArgumentException("Task cannot be null");
+			}
+
+			// 并行分支的结果只在全部成功后写入检查点，已发送的记录以存储中的任务为准
+			Task task = taskService.getTask(stateTask.getId());
+			if (task == null) {
+				throw new IllegalStateException("Task not found: " + stateTask.getId());
+			}
+			PartyRequest sent = findRequest(task, contact);
+			if (sent != null) {
+				logger.info("Coordination request already sent to party: {}, emailId: {}, skipping", contact.getId(),
+						sent.getEmailId());
+				return Map.of("partyRequests", List.of(sent));
+			}
+
+			String subject = "任务安排协调 - " + task.getTitle();
+			String content = emailTemplate.generateAutoReply(task, contact.getEmail());
+			String emailId = emailService.sendEmail(contact.getEmail(), subject, content);
+			PartyRequest request = new PartyRequest(contact.getId(), contact.getEmail(), emailId);
+
+			// 各分支并发追加，updateTask 按版本比较交换，冲突时基于最新版本重试
+			Task updated = taskService.updateTask(task.getId(), latest -> {
+				if (findRequest(latest, contact) == null) {
+					latest.getPartyRequests().add(request);
+				}
+				return latest;
+			});
+			if (updated == null) {
+				throw new IllegalStateException("Task deleted while sending party request: " + task.getId());
+			}
+
+			logger.info("Coordination request sent to party: {} ({}), emailId: {}", contact.getId(), contact.getEmail(),
+					emailId);
+
+			return Map.of("partyRequests", List.of(request));
+		};
+	}
+
+	private static PartyRequest findRequest(Task task, PartyContact contact) {
+		return task.getPartyRequests()
+			.stream()
+			.filter(request -> contact.getId().equals(request.getPartyId()))
+			.findFirst()
+			.orElse(null);
+	}
+
+}
@@ -5,6 +5,7 @@ import io.eeaters.langgraph.example.model.Task;
 import io.eeaters.langgraph.example.model.TaskStatus;
 import io.eeaters.langgraph.example.model.WorkflowExecution;
 import io.eeaters.langgraph.example.service.EmailService;
+import io.eeaters.langgraph.example.service.TaskService;
 import io.eeaters.langgraph.example.service.WorkflowExecutionService;
 import io.eeaters.langgraph.example.workflow.WorkflowState;
 import org.bsc.langgraph4j.action.AsyncNodeAction;
@@ -28,6 +29,9 @@ public class WaitForReplyNode {
 	@Autowired
 	private EmailService emailService;
 
+	@Autowired
+	private TaskService taskService;
+
 	@Autowired
 	private WorkflowExecutionService workflowExecutionService;
 
@@ -50,10 +54,9 @@ public class WaitForReplyNode {
 			if (responses.isEmpty()) {
 				logger.info("No new emails received, persisting wait state for task: {}", task.getId());
 
-				// 创建持久化的等待状态
-				String threadId = java.util.UUID.randomUUID().toString();
-				WorkflowExecution execution = workflowExecutionService.createWaitingExecution(task.getId(), threadId,
-						lastEmailId);
+				// 创建持久化的等待状态，线程 id 与任务 id 一致，调度器据此恢复同一个检查点
+				WorkflowExecution execution = workflowExecutionService.createWaitingExecution(task.getId(),
+						task.getId(), lastEmailId);
 
 				newState.setCurrentStep("WAIT_FOR_REPLY");
 				newState.setRetryCount(state.getRetryCount() + 1);
@@ -67,31 +70,36 @@ public class WaitForReplyNode {
 			logger.info("Received email response: {}, isPositive: {}, proposedTime: {}", latestResponse.getSubject(),
 					latestResponse.isPositive(), latestResponse.getProposedTime());
 
-			Task updatedTask = task;
+			LocalDateTime proposedTime = latestResponse.getProposedTime();
+			boolean changed = latestResponse.isPositive() || proposedTime != null;
 			if (latestResponse.isPositive()) {
-				if (latestResponse.getProposedTime() != null) {
-					task.setScheduledTime(latestResponse.getProposedTime());
-					task.setFinalConfirmedTime(
-							latestResponse.getProposedTime().format(DateTimeFormatter.ofPattern("yyyy年MM月dd日 HH:mm")));
-				}
-
-				task.setStatus(TaskStatus.FIRST_REPLY_RECEIVED);
 				newState.setCurrentStep("SEND_CONFIRMATION");
 			}
+			else if (proposedTime != null) {
+				newState.setCurrentStep("SEND_AUTO_REPLY");
+			}
 			else {
-				if (latestResponse.getProposedTime() != null) {
-					task.setScheduledTime(latestResponse.getProposedTime());
-					task.setFinalConfirmedTime(
-							latestResponse.getProposedTime().format(DateTimeFormatter.ofPattern("yyyy年MM月dd日 HH:mm")));
-					task.setStatus(TaskStatus.FIRST_REPLY_RECEIVED);
-					newState.setCurrentStep("SEND_AUTO_REPLY");
-				}
-				else {
-					newState.setCurrentStep("WAIT_FOR_REPLY");
+				newState.setCurrentStep("WAIT_FOR_REPLY");
+			}
+
+			Task updatedTask = task;
+			if (changed) {
+				// 图状态中的任务版本可能已过期，基于存储中的最新版本写入
+				updatedTask = taskService.updateTask(task.getId(), latest -> {
+					if (proposedTime != null) {
+						latest.setScheduledTime(proposedTime);
+						latest.setFinalConfirmedTime(
+								proposedTime.format(DateTimeFormatter.ofPattern("yyyy年MM月dd日 HH:mm")));
+					}
+					latest.setStatus(TaskStatus.FIRST_REPLY_RECEIVED);
+					return latest;
+				});
+				if (updatedTask == null) {
+					throw new IllegalStateException("Task not found: " + task.getId());
 				}
 			}
 
-			newState.setTask(task);
+			newState.setTask(updatedTask);
 			return newState.toData();
 		};
 	}